@@ -0,0 +1,92 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.estimation;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.team2342.frc.subsystems.drive.Drive;
+import org.team2342.lib.util.SampleInterpolation;
+
+/**
+ * Measures the per-sample odometry integration path used by Drive: resampling four modules and the
+ * gyro onto a common time, then integrating the twist. The GC profiler should report a
+ * gc.alloc.rate.norm of zero bytes per operation. SwerveOdometryIntegratorTest checks the
+ * integration itself doesn't allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OdometryIntegrationBenchmark {
+  private static final int MODULES = 4;
+  private static final int SAMPLES = 5; // 250 Hz odometry in a 20 ms loop
+  private static final double PERIOD = 0.004;
+
+  private final double[][] moduleTimestamps = new double[MODULES][SAMPLES];
+  private final double[][] moduleDistances = new double[MODULES][SAMPLES];
+  private final double[][] moduleAngles = new double[MODULES][SAMPLES];
+  private final double[] gyroTimestamps = new double[SAMPLES];
+  private final double[] gyroYaws = new double[SAMPLES];
+
+  private final double[] sampleDistances = new double[MODULES];
+  private final double[] sampleAngles = new double[MODULES];
+
+  private SwerveOdometryIntegrator integrator;
+  private int sample = 0;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    integrator = new SwerveOdometryIntegrator(Drive.getModuleTranslations());
+
+    // Driving and turning, with each module's frames arriving up to a millisecond apart
+    for (int i = 0; i < SAMPLES; i++) {
+      for (int module = 0; module < MODULES; module++) {
+        moduleTimestamps[module][i] = i * PERIOD + module * 0.00025;
+        moduleDistances[module][i] = 4.0 * moduleTimestamps[module][i];
+        moduleAngles[module][i] = 0.3 + module + 2.0 * moduleTimestamps[module][i];
+      }
+      gyroTimestamps[i] = i * PERIOD + 0.0005;
+      gyroYaws[i] = 1.5 * gyroTimestamps[i];
+    }
+  }
+
+  @Benchmark
+  public double integrateSample() {
+    int i = sample;
+    sample = (sample + 1) % SAMPLES;
+
+    double timestamp = 0.0;
+    for (int module = 0; module < MODULES; module++) {
+      timestamp += moduleTimestamps[module][i] / MODULES;
+    }
+    for (int module = 0; module < MODULES; module++) {
+      sampleDistances[module] =
+          SampleInterpolation.interpolate(
+              moduleTimestamps[module],
+              moduleDistances[module],
+              SAMPLES,
+              Double.NaN,
+              0.0,
+              timestamp);
+      sampleAngles[module] =
+          SampleInterpolation.interpolateAngle(
+              moduleTimestamps[module], moduleAngles[module], SAMPLES, Double.NaN, 0.0, timestamp);
+    }
+    double gyroYaw =
+        SampleInterpolation.interpolateAngle(
+            gyroTimestamps, gyroYaws, SAMPLES, Double.NaN, 0.0, timestamp);
+
+    integrator.update(sampleDistances, sampleAngles, gyroYaw);
+    return integrator.getHeadingRad() + integrator.getDx() + integrator.getDy();
+  }
+}
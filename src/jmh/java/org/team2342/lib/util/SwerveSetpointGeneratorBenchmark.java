@@ -0,0 +1,121 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.util;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.team2342.frc.Constants.DriveConstants;
+import org.team2342.lib.util.PrimitiveSwerveSetpointGenerator.Setpoint;
+import org.team2342.lib.util.SwerveSetpointGenerator.ModuleLimits;
+import org.team2342.lib.util.SwerveSetpointGenerator.SwerveSetpoint;
+
+/**
+ * Measures one call of the setpoint generator, as Drive makes every loop, from a fixed previous
+ * setpoint towards a fixed desired speed, for both the original and the primitive generator. The
+ * scenarios cover the generator's main paths:
+ *
+ * <ul>
+ *   <li>IDLE: stopped and staying stopped, the early outs
+ *   <li>REVERSAL: full speed forward to full speed backward, which stops first since every module
+ *       would have to flip
+ *   <li>SPIN_WHILE_TRANSLATING: changing direction while starting to spin, which limits steering
+ *       and drive acceleration with root finding on every module
+ * </ul>
+ *
+ * The GC profiler reports the bytes allocated per call as gc.alloc.rate.norm. That the two
+ * generators match is checked by PrimitiveSwerveSetpointGeneratorTest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SwerveSetpointGeneratorBenchmark {
+  private static final double DT = 0.02;
+  private static final double MAX_SPEED = DriveConstants.MAX_LINEAR_SPEED;
+
+  public static enum Scenario {
+    IDLE(new ChassisSpeeds(), new ChassisSpeeds()),
+    REVERSAL(new ChassisSpeeds(MAX_SPEED, 0.0, 0.0), new ChassisSpeeds(-MAX_SPEED, 0.0, 0.0)),
+    SPIN_WHILE_TRANSLATING(new ChassisSpeeds(3.0, 1.0, 0.0), new ChassisSpeeds(1.0, 3.0, 4.0));
+
+    private final ChassisSpeeds previous;
+    private final ChassisSpeeds desired;
+
+    private Scenario(ChassisSpeeds previous, ChassisSpeeds desired) {
+      this.previous = previous;
+      this.desired = desired;
+    }
+  }
+
+  @Param public Scenario scenario;
+
+  private SwerveSetpointGenerator generator;
+  private ModuleLimits limits;
+  private SwerveSetpoint previousSetpoint;
+  private ChassisSpeeds desiredSpeeds;
+
+  private PrimitiveSwerveSetpointGenerator primitiveGenerator;
+  private final Setpoint primitivePreviousSetpoint = new Setpoint(4);
+  private final Setpoint primitiveSetpoint = new Setpoint(4);
+
+  @Setup(Level.Trial)
+  public void setup() {
+    SwerveDriveKinematics kinematics = new SwerveDriveKinematics(moduleTranslations());
+
+    generator = new SwerveSetpointGenerator(kinematics);
+    primitiveGenerator = new PrimitiveSwerveSetpointGenerator(moduleTranslations());
+    limits =
+        new ModuleLimits(
+            MAX_SPEED,
+            DriveConstants.MAX_LINEAR_ACCELERATION,
+            DriveConstants.MAX_MODULE_VELOCITY_RAD);
+    previousSetpoint =
+        new SwerveSetpoint(scenario.previous, kinematics.toSwerveModuleStates(scenario.previous));
+    desiredSpeeds = scenario.desired;
+    primitivePreviousSetpoint.set(
+        previousSetpoint.chassisSpeeds(), previousSetpoint.moduleStates());
+  }
+
+  @Benchmark
+  public SwerveSetpoint generateSetpoint() {
+    return generator.generateSetpoint(limits, previousSetpoint, desiredSpeeds, DT);
+  }
+
+  @Benchmark
+  public double generatePrimitiveSetpoint() {
+    primitiveGenerator.generateSetpoint(
+        limits,
+        primitivePreviousSetpoint,
+        desiredSpeeds.vxMetersPerSecond,
+        desiredSpeeds.vyMetersPerSecond,
+        desiredSpeeds.omegaRadiansPerSecond,
+        DT,
+        primitiveSetpoint);
+    return primitiveSetpoint.getVx() + primitiveSetpoint.getModuleAngle(0);
+  }
+
+  private static Translation2d[] moduleTranslations() {
+    double halfX = DriveConstants.TRACK_WIDTH_X / 2.0;
+    double halfY = DriveConstants.TRACK_WIDTH_Y / 2.0;
+    return new Translation2d[] {
+      new Translation2d(halfX, halfY),
+      new Translation2d(halfX, -halfY),
+      new Translation2d(-halfX, halfY),
+      new Translation2d(-halfX, -halfY)
+    };
+  }
+}
@@ -6,11 +6,13 @@
 
 package org.team2342.frc;
 
+import com.ctre.phoenix6.CANBus;
 import edu.wpi.first.math.geometry.Rotation3d;
 import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.math.util.Units;
 import org.team2342.lib.util.CameraParameters;
+import org.team2342.lib.util.DoubleRingBuffer.OverflowPolicy;
 
 public final class Constants {
   public static final Mode CURRENT_MODE = Mode.REAL;
@@ -41,10 +43,41 @@ public final class Constants {
     public static final CameraParameters LEFT_PARAMETERS =
         CameraParameters.loadFromName(CAMERA_NAME, 800, 600).withTransform(CAMERA_TRANSFORM);
 
+    // Parameters of each camera, in the same order as the vision IOs
+    public static final CameraParameters[] CAMERA_PARAMETERS = {LEFT_PARAMETERS};
+
+    // Solve camera poses on a thread per camera, polling for new results at this period (off until
+    // tested on the robot)
+    public static final boolean USE_CAMERA_WORKERS = false;
+    public static final double CAMERA_WORKER_PERIOD = 0.005; // Seconds
+
+    // Solve one pose from the tag corners of all cameras, using the newest frame from each camera
+    // within the window, instead of using each camera's own pose
+    public static final boolean USE_MULTI_CAMERA_FUSION = false;
+    public static final double FUSION_WINDOW = 0.04; // Seconds
+    public static final int FUSION_MIN_TAGS = 2;
+    public static final double FUSION_MAX_RESIDUAL = 3.0; // Pixels RMS
+
+    // Most tag and robot poses to log per camera each cycle, and whether to log only their counts
+    public static final int MAX_LOGGED_POSES = 32;
+    public static final boolean LOG_POSE_COUNTS_ONLY = false;
+
     // Basic filtering thresholds
     public static final double MAX_AMBIGUITY = 0.1;
     public static final double MAX_Z_ERROR = 0.75;
 
+    // Motion consistency gate, the error allowed from the fused pose is the tolerance plus
+    // (measured speed + margin) * time since the last consistent observation
+    public static final double MOTION_GATE_TOLERANCE = 0.5; // Meters
+    public static final double MOTION_GATE_SPEED_MARGIN = 1.0; // Meters per second
+    // Rejected observations in a row that agree with each other before the gate trusts them over
+    // the fused pose
+    public static final int MOTION_GATE_RECOVERY_COUNT = 10;
+
+    // Std dev scaling while rotating quickly, 1 + factor * (omega - threshold)
+    public static final double ROTATION_INFLATION_THRESHOLD = 1.0; // Radians per second
+    public static final double ROTATION_INFLATION_FACTOR = 1.0; // Per radian per second
+
     // Standard deviation baselines, for 1 meter distance and 1 tag
     // (Adjusted automatically based on distance and # of tags)
     public static final double LINEAR_STD_DEV_BASELINE = 0.06; // Meters
@@ -64,6 +97,23 @@ public final class Constants {
         0.5; // More stable than full 3D solve
     public static final double ANGULAR_STD_DEV_CONSTRAINED_FACTOR =
         Double.POSITIVE_INFINITY; // No rotation data available
+
+    // Simulate vision by adding noise to the true pose instead of rendering camera frames, also
+    // enabled by setting the SIM_FAST_VISION environment variable to true
+    public static final boolean SIM_FAST_VISION =
+        Boolean.parseBoolean(System.getenv("SIM_FAST_VISION"));
+    public static final double SIM_FPS = 60.0;
+    public static final double SIM_LATENCY = 0.035; // Seconds
+    public static final double SIM_LATENCY_STD_DEV = 0.007; // Seconds
+    public static final double SIM_MAX_TAG_DISTANCE = 6.0; // Meters
+    public static final double SIM_MAX_TAG_VIEW_ANGLE = Units.degreesToRadians(75.0);
+    public static final long SIM_NOISE_SEED = 2342;
+
+    // Noise standard deviations of fast simulated observations, for 1 meter distance and 1 tag
+    // (Scaled by distance squared over # of tags, like the std dev baselines)
+    public static final double SIM_LINEAR_NOISE_BASELINE = 0.02; // Meters
+    public static final double SIM_ANGULAR_NOISE_BASELINE = 0.04; // Radians
+    public static final double SIM_MAX_SINGLE_TAG_AMBIGUITY = 0.15;
   }
 
   public static final class DriveConstants {
@@ -100,13 +150,27 @@ public final class Constants {
     // Pitch, Roll, Yaw
     public static final double[] PIGEON_CALIBRATED_MOUNT_POSE = {0, 0, 0};
 
-    public static final boolean IS_CANFD = false;
-    public static final double ODOMETRY_FREQUENCY = IS_CANFD ? 250.0 : 100.0;
+    public static final double ODOMETRY_FREQUENCY_CANFD = 250.0;
+    public static final double ODOMETRY_FREQUENCY_CAN = 100.0;
+    public static final int ODOMETRY_THREAD_PRIORITY = 10;
+    public static final int ODOMETRY_THREAD_CPU = 1;
+
+    // Odometry samples buffered between main loop cycles, ~128 ms at 250 Hz before overflowing
+    public static final int ODOMETRY_QUEUE_CAPACITY = 32;
+    public static final OverflowPolicy ODOMETRY_OVERFLOW_POLICY = OverflowPolicy.GROW;
+
+    // Rate the simulated modules step their motors and closed loop control at, and the rate of the
+    // odometry samples they report (50 Hz for both steps once per loop)
+    public static final double SIM_SUBSTEP_FREQUENCY = 1000.0;
+    public static final double SIM_ODOMETRY_FREQUENCY = ODOMETRY_FREQUENCY_CANFD;
   }
 
   public static final class CANConstants {
     public static final int PDH_ID = 14;
 
+    public static final CANBus DRIVE_BUS = new CANBus("rio");
+    public static final CANBus PIGEON_BUS = new CANBus("rio");
+
     public static final int PIGEON_ID = 13;
     public static final int[] FL_IDS = {1, 5, 9};
     public static final int[] FR_IDS = {2, 6, 10};
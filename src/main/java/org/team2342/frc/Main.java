@@ -12,6 +12,10 @@ public final class Main {
   private Main() {}
 
   public static void main(String... args) {
+    if (MonteCarloAutos.ENABLED) {
+      MonteCarloAutos.run();
+      return;
+    }
     RobotBase.startRobot(Robot::new);
   }
 }
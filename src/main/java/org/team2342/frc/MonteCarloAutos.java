@@ -0,0 +1,254 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.frc;
+
+import com.pathplanner.lib.auto.AutoBuilder;
+import com.pathplanner.lib.commands.PathPlannerAuto;
+import com.pathplanner.lib.path.PathPlannerPath;
+import edu.wpi.first.hal.AllianceStationID;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.Commands;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.photonvision.PhotonPoseEstimator.PoseStrategy;
+import org.team2342.frc.Constants.DriveConstants;
+import org.team2342.frc.Constants.VisionConstants;
+import org.team2342.frc.subsystems.drive.Drive;
+import org.team2342.frc.subsystems.drive.DrivetrainSim;
+import org.team2342.frc.subsystems.vision.Vision;
+import org.team2342.frc.subsystems.vision.VisionIOSim;
+
+/**
+ * Runs every PathPlanner auto many times in simulation, each time on a robot with its own randomly
+ * off wheel radius, gyro drift and vision noise, and prints how far the robots ended from the end
+ * of the auto and from where they thought they were.
+ *
+ * <p>Each trial is a separate {@link DrivetrainSim}, {@link Drive} and {@link Vision} in the same
+ * program. WPILib and PathPlanner read time from the one FPGA clock, so the trials run in lockstep:
+ * every loop is stepped for all trials in parallel across the CPU cores, then the paused clock is
+ * advanced once. Trials are stepped outside the command scheduler, and follow the auto's paths with
+ * {@link Drive#followPath(PathPlannerPath)}, since AutoBuilder and the scheduler only work with a
+ * single robot. Commands between paths are skipped.
+ *
+ * <p>Enabled by setting the MONTE_CARLO environment variable to true (./gradlew simulateJava
+ * -PmonteCarlo sets it). Configured with environment variables:
+ *
+ * <ul>
+ *   <li>MONTE_CARLO_TRIALS: Number of trials per auto, 64 by default
+ *   <li>MONTE_CARLO_SEED: Seed for the randomized robots, so runs can be repeated
+ * </ul>
+ */
+public final class MonteCarloAutos {
+  public static final boolean ENABLED = Boolean.parseBoolean(System.getenv("MONTE_CARLO"));
+
+  private static final double LOOP_PERIOD = 0.02;
+  private static final double AUTO_TIME = 15.0;
+  private static final double SETTLE_TIME = 0.5;
+
+  // Standard deviations of the randomized robot parameters
+  private static final double WHEEL_RADIUS_STD_DEV = 0.01; // Fraction of the nominal radius
+  private static final double GYRO_DRIFT_STD_DEV = Units.degreesToRadians(0.25); // Per second
+
+  private MonteCarloAutos() {}
+
+  /** Runs every auto, prints the results, then exits. */
+  public static void run() {
+    int trialCount = getInt("MONTE_CARLO_TRIALS", 64);
+    Random random = new Random(getLong("MONTE_CARLO_SEED", 2342));
+
+    HAL.initialize(500, 0);
+    SimHooks.pauseTiming();
+    DriverStationSim.setAllianceStationId(AllianceStationID.Blue1);
+    DriverStationSim.setDsAttached(true);
+    DriverStationSim.setAutonomous(true);
+    DriverStationSim.setEnabled(true);
+    DriverStationSim.notifyNewData();
+
+    System.out.printf(
+        "Running %d trials per auto on %d cores%n",
+        trialCount, Runtime.getRuntime().availableProcessors());
+    for (String auto : AutoBuilder.getAllAutoNames()) {
+      List<PathPlannerPath> paths;
+      try {
+        paths = PathPlannerAuto.getPathGroupFromAutoFile(auto);
+      } catch (Exception e) {
+        System.out.printf("%s: Failed to load paths (%s)%n", auto, e.getMessage());
+        continue;
+      }
+      if (paths.isEmpty()) {
+        System.out.printf("%s: No paths to follow%n", auto);
+        continue;
+      }
+
+      Trial[] trials = new Trial[trialCount];
+      for (int i = 0; i < trialCount; i++) {
+        trials[i] = new Trial(paths, random);
+      }
+      runTrials(trials);
+      printResults(auto, trials);
+
+      for (Trial trial : trials) {
+        CommandScheduler.getInstance().unregisterSubsystem(trial.drive, trial.vision);
+        trial.vision.close();
+      }
+    }
+
+    System.exit(0);
+  }
+
+  private static void runTrials(Trial[] trials) {
+    for (Trial trial : trials) {
+      trial.command.initialize();
+    }
+
+    double time = 0.0;
+    double settleEnd = AUTO_TIME;
+    while (time < settleEnd) {
+      Arrays.stream(trials).parallel().forEach(Trial::step);
+      SimHooks.stepTiming(LOOP_PERIOD);
+      time += LOOP_PERIOD;
+
+      if (settleEnd == AUTO_TIME && Arrays.stream(trials).allMatch(trial -> trial.finished)) {
+        settleEnd = Math.min(AUTO_TIME, time + SETTLE_TIME);
+      }
+    }
+
+    for (Trial trial : trials) {
+      if (!trial.finished) {
+        trial.command.end(true);
+      }
+    }
+  }
+
+  private static void printResults(String auto, Trial[] trials) {
+    double[] endErrors = new double[trials.length];
+    double[] endHeadingErrors = new double[trials.length];
+    double[] estimateErrors = new double[trials.length];
+    double[] estimateHeadingErrors = new double[trials.length];
+    int unfinished = 0;
+    for (int i = 0; i < trials.length; i++) {
+      Trial trial = trials[i];
+      Pose2d truth = trial.sim.getPose();
+      Pose2d estimate = trial.drive.getPose();
+      endErrors[i] = truth.getTranslation().getDistance(trial.endPose.getTranslation());
+      endHeadingErrors[i] =
+          Math.abs(truth.getRotation().minus(trial.endPose.getRotation()).getDegrees());
+      estimateErrors[i] = truth.getTranslation().getDistance(estimate.getTranslation());
+      estimateHeadingErrors[i] =
+          Math.abs(truth.getRotation().minus(estimate.getRotation()).getDegrees());
+      if (!trial.finished) unfinished++;
+    }
+
+    System.out.printf("%s (%d unfinished)%n", auto, unfinished);
+    printStatistics("End error (m)", endErrors);
+    printStatistics("End heading error (deg)", endHeadingErrors);
+    printStatistics("Estimate error (m)", estimateErrors);
+    printStatistics("Estimate heading error (deg)", estimateHeadingErrors);
+  }
+
+  private static void printStatistics(String name, double[] values) {
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+    double mean = Arrays.stream(sorted).average().orElse(0.0);
+    double variance = Arrays.stream(sorted).map(v -> (v - mean) * (v - mean)).sum();
+    double stdDev = Math.sqrt(variance / Math.max(1, sorted.length - 1));
+    double p95 = sorted[Math.min(sorted.length - 1, (int) Math.ceil(0.95 * sorted.length) - 1)];
+    System.out.printf(
+        "  %-30s mean %.4f  std dev %.4f  p95 %.4f  max %.4f%n",
+        name, mean, stdDev, p95, sorted[sorted.length - 1]);
+  }
+
+  /** One simulated robot running an auto. */
+  private static class Trial {
+    private final DrivetrainSim sim;
+    private final Drive drive;
+    private final Vision vision;
+    private final Command command;
+    private final Pose2d endPose;
+    private boolean finished = false;
+
+    private Trial(List<PathPlannerPath> paths, Random random) {
+      sim =
+          new DrivetrainSim(
+              Drive.getModuleTranslations(),
+              DriveConstants.WHEEL_RADIUS * (1.0 + random.nextGaussian() * WHEEL_RADIUS_STD_DEV),
+              DriveConstants.SIM_SUBSTEP_FREQUENCY,
+              DriveConstants.SIM_ODOMETRY_FREQUENCY);
+      sim.setGyroDrift(random.nextGaussian() * GYRO_DRIFT_STD_DEV);
+
+      drive =
+          new Drive(
+              sim.getGyroIO(),
+              sim.getModuleIO(0),
+              sim.getModuleIO(1),
+              sim.getModuleIO(2),
+              sim.getModuleIO(3));
+      drive.setSimulationPoseResetCallback(sim::setPose);
+      vision =
+          new Vision(
+              drive::addVisionMeasurements,
+              drive::getTimestampedHeading,
+              new VisionIOSim(
+                  VisionConstants.LEFT_PARAMETERS,
+                  PoseStrategy.CONSTRAINED_SOLVEPNP,
+                  PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR,
+                  sim::getPose,
+                  true,
+                  random.nextLong()));
+      RobotContainer.configureVision(vision, drive);
+
+      // Start where the first path starts, and end where the last one ends
+      PathPlannerPath firstPath = paths.get(0);
+      drive.setPose(
+          firstPath
+              .getStartingHolonomicPose()
+              .orElseGet(() -> firstPath.getStartingDifferentialPose()));
+      PathPlannerPath lastPath = paths.get(paths.size() - 1);
+      List<Pose2d> lastPoses = lastPath.getPathPoses();
+      endPose =
+          new Pose2d(
+              lastPoses.get(lastPoses.size() - 1).getTranslation(),
+              lastPath.getGoalEndState().rotation());
+
+      Command[] pathCommands = new Command[paths.size()];
+      for (int i = 0; i < pathCommands.length; i++) {
+        pathCommands[i] = drive.followPath(paths.get(i));
+      }
+      command = Commands.sequence(pathCommands);
+    }
+
+    /** Runs one loop, in the same order as the command scheduler. */
+    private void step() {
+      drive.periodic();
+      vision.periodic();
+      if (!finished) {
+        command.execute();
+        if (command.isFinished()) {
+          command.end(false);
+          finished = true;
+        }
+      }
+    }
+  }
+
+  private static int getInt(String name, int defaultValue) {
+    String value = System.getenv(name);
+    return value != null ? Integer.parseInt(value) : defaultValue;
+  }
+
+  private static long getLong(String name, long defaultValue) {
+    String value = System.getenv(name);
+    return value != null ? Long.parseLong(value) : defaultValue;
+  }
+}
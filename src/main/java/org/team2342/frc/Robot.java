@@ -30,6 +30,7 @@ import org.littletonrobotics.junction.networktables.NT4Publisher;
 import org.littletonrobotics.junction.wpilog.WPILOGReader;
 import org.littletonrobotics.junction.wpilog.WPILOGWriter;
 // import org.team2342.frc.subsystems.CANdleSystem.CANdleSystem;
+import org.team2342.frc.util.HeadlessSim;
 import org.team2342.frc.util.PhoenixUtils;
 import org.team2342.lib.logging.ExecutionLogger;
 
@@ -39,6 +40,7 @@ public class Robot extends LoggedRobot {
   // private final CANdleSystem candle = new CANdleSystem(null);
 
   private final RobotContainer robotContainer;
+  private HeadlessSim headlessSim = null;
 
   public Robot() {
     // Record metadata
@@ -69,8 +71,14 @@ public class Robot extends LoggedRobot {
         break;
 
       case SIM:
-        // Running a physics simulator, log to NT
-        Logger.addDataReceiver(new NT4Publisher());
+        if (HeadlessSim.ENABLED) {
+          // Running a scripted match as fast as possible, log to a file
+          setUseTiming(false);
+          Logger.addDataReceiver(new WPILOGWriter(HeadlessSim.getLogPath()));
+        } else {
+          // Running a physics simulator, log to NT
+          Logger.addDataReceiver(new NT4Publisher());
+        }
         break;
 
       case REPLAY:
@@ -147,6 +155,10 @@ public class Robot extends LoggedRobot {
         .onCommandInterrupt((Command command) -> logCommandFunction.accept(command, false));
 
     robotContainer = new RobotContainer();
+
+    if (Constants.CURRENT_MODE == Constants.Mode.SIM && HeadlessSim.ENABLED) {
+      headlessSim = new HeadlessSim(0, HeadlessSim.FIGURE_EIGHT);
+    }
   }
 
   @Override
@@ -217,5 +229,9 @@ public class Robot extends LoggedRobot {
   public void simulationInit() {}
 
   @Override
-  public void simulationPeriodic() {}
+  public void simulationPeriodic() {
+    if (headlessSim != null) {
+      headlessSim.periodic();
+    }
+  }
 }
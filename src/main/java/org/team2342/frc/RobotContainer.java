@@ -30,11 +30,15 @@ import org.team2342.frc.commands.DriveCommands;
 import org.team2342.frc.commands.DriveToPose;
 import org.team2342.frc.commands.RotationLockedDrive;
 import org.team2342.frc.subsystems.drive.Drive;
+import org.team2342.frc.subsystems.drive.DrivetrainSim;
 import org.team2342.frc.subsystems.drive.GyroIO;
 import org.team2342.frc.subsystems.drive.GyroIOPigeon2;
 import org.team2342.frc.subsystems.drive.ModuleIO;
-import org.team2342.frc.subsystems.drive.ModuleIOSim;
 import org.team2342.frc.subsystems.drive.ModuleIOTalonFX;
+import org.team2342.frc.subsystems.drive.PhoenixOdometry;
+import org.team2342.frc.subsystems.vision.MotionConsistencyFilter;
+import org.team2342.frc.subsystems.vision.MultiCameraFusion;
+import org.team2342.frc.subsystems.vision.StdDevModel;
 import org.team2342.frc.subsystems.vision.Vision;
 import org.team2342.frc.subsystems.vision.VisionIO;
 import org.team2342.frc.subsystems.vision.VisionIOPhoton;
@@ -46,6 +50,9 @@ public class RobotContainer {
   @Getter private final Drive drive;
   @Getter private final Vision vision;
 
+  // Only in simulation
+  @Getter private DrivetrainSim drivetrainSim = null;
+
   private final LoggedDashboardChooser<Command> autoChooser;
 
   @Getter
@@ -58,16 +65,34 @@ public class RobotContainer {
   public RobotContainer() {
     switch (Constants.CURRENT_MODE) {
       case REAL:
+        PhoenixOdometry odometry = new PhoenixOdometry();
         drive =
             new Drive(
-                new GyroIOPigeon2(CANConstants.PIGEON_ID),
-                new ModuleIOTalonFX(CANConstants.FL_IDS, DriveConstants.ENCODER_OFFSETS[0]),
-                new ModuleIOTalonFX(CANConstants.FR_IDS, DriveConstants.ENCODER_OFFSETS[1]),
-                new ModuleIOTalonFX(CANConstants.BL_IDS, DriveConstants.ENCODER_OFFSETS[2]),
-                new ModuleIOTalonFX(CANConstants.BR_IDS, DriveConstants.ENCODER_OFFSETS[3]));
+                odometry,
+                new GyroIOPigeon2(CANConstants.PIGEON_ID, CANConstants.PIGEON_BUS, odometry),
+                new ModuleIOTalonFX(
+                    CANConstants.FL_IDS,
+                    DriveConstants.ENCODER_OFFSETS[0],
+                    CANConstants.DRIVE_BUS,
+                    odometry),
+                new ModuleIOTalonFX(
+                    CANConstants.FR_IDS,
+                    DriveConstants.ENCODER_OFFSETS[1],
+                    CANConstants.DRIVE_BUS,
+                    odometry),
+                new ModuleIOTalonFX(
+                    CANConstants.BL_IDS,
+                    DriveConstants.ENCODER_OFFSETS[2],
+                    CANConstants.DRIVE_BUS,
+                    odometry),
+                new ModuleIOTalonFX(
+                    CANConstants.BR_IDS,
+                    DriveConstants.ENCODER_OFFSETS[3],
+                    CANConstants.DRIVE_BUS,
+                    odometry));
         vision =
             new Vision(
-                drive::addVisionMeasurement,
+                drive::addVisionMeasurements,
                 drive::getTimestampedHeading,
                 new VisionIOPhoton(
                     VisionConstants.LEFT_PARAMETERS,
@@ -78,22 +103,24 @@ public class RobotContainer {
         break;
 
       case SIM:
+        drivetrainSim = new DrivetrainSim();
         drive =
             new Drive(
-                new GyroIO() {},
-                new ModuleIOSim(),
-                new ModuleIOSim(),
-                new ModuleIOSim(),
-                new ModuleIOSim());
+                drivetrainSim.getGyroIO(),
+                drivetrainSim.getModuleIO(0),
+                drivetrainSim.getModuleIO(1),
+                drivetrainSim.getModuleIO(2),
+                drivetrainSim.getModuleIO(3));
+        drive.setSimulationPoseResetCallback(drivetrainSim::setPose);
         vision =
             new Vision(
-                drive::addVisionMeasurement,
+                drive::addVisionMeasurements,
                 drive::getTimestampedHeading,
                 new VisionIOSim(
                     VisionConstants.LEFT_PARAMETERS,
                     PoseStrategy.CONSTRAINED_SOLVEPNP,
                     PoseStrategy.MULTI_TAG_PNP_ON_COPROCESSOR,
-                    drive::getRawOdometryPose));
+                    drivetrainSim::getPose));
 
         break;
 
@@ -107,7 +134,7 @@ public class RobotContainer {
                 new ModuleIO() {});
         vision =
             new Vision(
-                drive::addVisionMeasurement,
+                drive::addVisionMeasurements,
                 drive::getTimestampedHeading,
                 new VisionIO() {},
                 new VisionIO() {});
@@ -115,6 +142,8 @@ public class RobotContainer {
         break;
     }
 
+    drive.configurePathPlanner();
+    configureVision(vision, drive);
     configureNamedCommands();
 
     autoChooser = new LoggedDashboardChooser<>("Auto Choices", AutoBuilder.buildAutoChooser());
@@ -131,6 +160,33 @@ public class RobotContainer {
     configureBindings();
   }
 
+  /** Adds the observation filters, fusion and std dev models vision runs with. */
+  static void configureVision(Vision vision, Drive drive) {
+    MotionConsistencyFilter motionConsistencyFilter =
+        new MotionConsistencyFilter(
+            drive::samplePoseAt,
+            drive::getChassisSpeeds,
+            VisionConstants.MOTION_GATE_TOLERANCE,
+            VisionConstants.MOTION_GATE_SPEED_MARGIN,
+            VisionConstants.MOTION_GATE_RECOVERY_COUNT);
+    vision.addObservationFilter("MotionConsistency", motionConsistencyFilter);
+    drive.setPoseResetCallback(motionConsistencyFilter::reset);
+    if (VisionConstants.USE_MULTI_CAMERA_FUSION) {
+      vision.setFusion(
+          new MultiCameraFusion(
+              VisionConstants.CAMERA_PARAMETERS,
+              drive::samplePoseAt,
+              VisionConstants.FUSION_WINDOW,
+              VisionConstants.FUSION_MIN_TAGS,
+              VisionConstants.FUSION_MAX_RESIDUAL));
+    }
+    vision.addStdDevModel(
+        StdDevModel.inflateWhileRotating(
+            drive::getChassisSpeeds,
+            VisionConstants.ROTATION_INFLATION_THRESHOLD,
+            VisionConstants.ROTATION_INFLATION_FACTOR));
+  }
+
   private void configureNamedCommands() {
     NamedCommands.registerCommand("Named Command Test", Commands.print("Named Command Test"));
   }
@@ -6,13 +6,11 @@
 
 package org.team2342.frc.commands;
 
-import edu.wpi.first.math.controller.HolonomicDriveController;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.ProfiledPIDController;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.math.trajectory.Trajectory;
-import edu.wpi.first.math.trajectory.Trajectory.State;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.Timer;
@@ -20,7 +18,14 @@ import edu.wpi.first.wpilibj2.command.Command;
 import java.util.function.Supplier;
 import org.littletonrobotics.junction.Logger;
 import org.team2342.frc.subsystems.drive.Drive;
-
+import org.team2342.lib.util.FlatTrajectory;
+import org.team2342.lib.util.FlatTrajectory.Sample;
+
+/**
+ * Follows a trajectory with the same control law as {@link
+ * edu.wpi.first.math.controller.HolonomicDriveController}, computed inline from a reused {@link
+ * Sample} so following doesn't allocate.
+ */
 public class FollowTrajectory extends Command {
   private PIDController xController = new PIDController(4.0, 0.0, 0.02);
   private PIDController yController = new PIDController(4.0, 0.0, 0.02);
@@ -32,29 +37,37 @@ public class FollowTrajectory extends Command {
           new TrapezoidProfile.Constraints(
               Units.degreesToRadians(1080), Units.degreesToRadians(1260)));
 
-  private HolonomicDriveController controller =
-      new HolonomicDriveController(xController, yController, angleController);
+  // Same as HolonomicDriveController's default, so the end of the trajectory is held until
+  // interrupted
+  private double translationTolerance = 0.0;
+  private double rotationTolerance = 0.0;
 
   private final Drive drive;
   private final Supplier<Pose2d> robotPose;
-  private Trajectory trajectory;
+  private final FlatTrajectory trajectory;
+  private final Sample sample = new Sample();
+  private final ChassisSpeeds speeds = new ChassisSpeeds();
 
   private Timer timer = new Timer();
 
   private boolean isDone = false;
 
-  public FollowTrajectory(Drive drive, Trajectory trajectory, Supplier<Pose2d> robotPose) {
+  public FollowTrajectory(Drive drive, FlatTrajectory trajectory, Supplier<Pose2d> robotPose) {
     this.drive = drive;
     this.trajectory = trajectory;
     this.robotPose = robotPose;
 
-    // controller.setTolerance(new Pose2d(0.01, 0.01, new Rotation2d(0.01)));
+    // Like HolonomicDriveController, so headings near +-pi don't spin the long way around
+    angleController.enableContinuousInput(-Math.PI, Math.PI);
+
+    // translationTolerance = 0.01;
+    // rotationTolerance = 0.01;
 
     super.addRequirements(drive);
     setName("DriveToPose");
   }
 
-  public FollowTrajectory(Drive drive, Trajectory trajectory) {
+  public FollowTrajectory(Drive drive, FlatTrajectory trajectory) {
     this(drive, trajectory, drive::getPose);
   }
 
@@ -67,24 +80,43 @@ public class FollowTrajectory extends Command {
 
     timer.restart();
 
-    Logger.recordOutput("Odometry/Trajectory", trajectory);
+    Logger.recordOutput("Odometry/Trajectory", trajectory.getPoses());
     Logger.recordOutput("Trajectory/IsDone", false);
-    Logger.recordOutput(
-        "Odometry/TrajectorySetpoint",
-        trajectory.sample(trajectory.getTotalTimeSeconds()).poseMeters);
+    Logger.recordOutput("Odometry/TrajectorySetpoint", trajectory.getEndPose());
   }
 
   @Override
   public void execute() {
     Pose2d currentPosition = robotPose.get();
 
-    State nextState = trajectory.sample(timer.get());
-
-    ChassisSpeeds speeds =
-        controller.calculate(currentPosition, nextState, nextState.poseMeters.getRotation());
-
+    trajectory.sample(timer.get(), sample);
+
+    // Feedforward along the trajectory rotation, plus feedback on each axis
+    double currentRotation = currentPosition.getRotation().getRadians();
+    double vx =
+        sample.getVelocity() * Math.cos(sample.getRotation())
+            + xController.calculate(currentPosition.getX(), sample.getX());
+    double vy =
+        sample.getVelocity() * Math.sin(sample.getRotation())
+            + yController.calculate(currentPosition.getY(), sample.getY());
+    double omega = angleController.calculate(currentRotation, sample.getRotation());
+
+    // Convert from field relative to robot relative
+    double cos = Math.cos(currentRotation);
+    double sin = Math.sin(currentRotation);
+    speeds.vxMetersPerSecond = vx * cos + vy * sin;
+    speeds.vyMetersPerSecond = -vx * sin + vy * cos;
+    speeds.omegaRadiansPerSecond = omega;
     drive.runVelocity(speeds);
-    isDone = controller.atReference();
+
+    // Done once the error in the robot's frame is within tolerance
+    double dx = sample.getX() - currentPosition.getX();
+    double dy = sample.getY() - currentPosition.getY();
+    isDone =
+        Math.abs(dx * cos + dy * sin) < translationTolerance
+            && Math.abs(-dx * sin + dy * cos) < translationTolerance
+            && Math.abs(MathUtil.angleModulus(sample.getRotation() - currentRotation))
+                < rotationTolerance;
     Logger.recordOutput("Trajectory/IsDone", isDone);
   }
 
@@ -9,21 +9,20 @@ package org.team2342.frc.subsystems.drive;
 import static edu.wpi.first.units.Units.Volts;
 
 import com.pathplanner.lib.auto.AutoBuilder;
+import com.pathplanner.lib.commands.FollowPathCommand;
 import com.pathplanner.lib.config.ModuleConfig;
 import com.pathplanner.lib.config.PIDConstants;
 import com.pathplanner.lib.config.RobotConfig;
 import com.pathplanner.lib.controllers.PPHolonomicDriveController;
+import com.pathplanner.lib.path.PathPlannerPath;
 import com.pathplanner.lib.pathfinding.Pathfinding;
 import com.pathplanner.lib.util.PathPlannerLogging;
 import edu.wpi.first.math.Matrix;
-import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
-import edu.wpi.first.math.geometry.Twist2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N3;
@@ -38,21 +37,25 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.sysid.SysIdRoutine;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import lombok.Getter;
 import org.littletonrobotics.junction.AutoLogOutput;
 import org.littletonrobotics.junction.Logger;
 import org.team2342.frc.Constants.DriveConstants;
+import org.team2342.lib.estimation.DualTrackPoseEstimator;
+import org.team2342.lib.estimation.SwerveOdometryIntegrator;
+import org.team2342.lib.estimation.VisionMeasurementBatch;
 import org.team2342.lib.logging.ExecutionLogger;
 import org.team2342.lib.util.AllianceUtils;
 import org.team2342.lib.util.LocalADStarAK;
-import org.team2342.lib.util.SwerveSetpointGenerator;
+import org.team2342.lib.util.PrimitiveSwerveSetpointGenerator;
+import org.team2342.lib.util.PrimitiveSwerveSetpointGenerator.Setpoint;
+import org.team2342.lib.util.SampleInterpolation;
 import org.team2342.lib.util.SwerveSetpointGenerator.ModuleLimits;
-import org.team2342.lib.util.SwerveSetpointGenerator.SwerveSetpoint;
 import org.team2342.lib.util.Timestamped;
 
 public class Drive extends SubsystemBase {
+  private final PhoenixOdometry odometry;
   private final GyroIO gyroIO;
   private final GyroIOInputsAutoLogged gyroInputs = new GyroIOInputsAutoLogged();
 
@@ -64,44 +67,75 @@ public class Drive extends SubsystemBase {
       new Alert("Gyro disconnected, using fallback!", AlertType.kWarning);
 
   @Getter private final RobotConfig pathplannerConfig;
+  private final PPHolonomicDriveController pathController =
+      new PPHolonomicDriveController(
+          new PIDConstants(6.0, 0.0, 0.0), new PIDConstants(8.0, 0.0, 0.1));
   private final SysIdRoutine sysId;
 
-  protected static final Lock odometryLock = new ReentrantLock();
   private SwerveDriveKinematics kinematics = new SwerveDriveKinematics(getModuleTranslations());
   private Rotation2d rawGyroRotation = new Rotation2d();
 
   @AutoLogOutput(key = "Vision/Heading/Offset")
   private Rotation2d visionHeadingOffset = new Rotation2d();
 
-  private SwerveModulePosition[] lastModulePositions = // For delta tracking
-      new SwerveModulePosition[] {
-        new SwerveModulePosition(),
-        new SwerveModulePosition(),
-        new SwerveModulePosition(),
-        new SwerveModulePosition()
-      };
-  private SwerveDrivePoseEstimator poseEstimator =
-      new SwerveDrivePoseEstimator(kinematics, rawGyroRotation, lastModulePositions, new Pose2d());
-  private SwerveDrivePoseEstimator rawOdometry =
-      new SwerveDrivePoseEstimator(kinematics, rawGyroRotation, lastModulePositions, new Pose2d());
-
-  private final SwerveSetpointGenerator setpointGenerator;
-  private SwerveSetpoint previousSetpoint;
+  // Reused for every odometry sample, so integration doesn't allocate
+  private final SwerveOdometryIntegrator odometryIntegrator =
+      new SwerveOdometryIntegrator(getModuleTranslations());
+  private final double[] sampleDistances = new double[4];
+  private final double[] sampleAngles = new double[4];
+
+  // Gyro samples from this cycle in radians, and the last sample from the previous cycle
+  private double[] gyroYawSamples = new double[0];
+  private double previousGyroTimestamp = Double.NaN;
+  private double previousGyroYawRad = 0.0;
+
+  // Fused and raw odometry tracks, both fed by the same twists
+  private final DualTrackPoseEstimator poseEstimator =
+      new DualTrackPoseEstimator(new Pose2d(), 0.0);
+
+  // Each setpoint is generated from the previous one in place, then copied out for the modules
+  private final PrimitiveSwerveSetpointGenerator setpointGenerator =
+      new PrimitiveSwerveSetpointGenerator(getModuleTranslations());
+  private final Setpoint setpoint = new Setpoint(4);
+  private final SwerveModuleState[] setpointStates = {
+    new SwerveModuleState(),
+    new SwerveModuleState(),
+    new SwerveModuleState(),
+    new SwerveModuleState()
+  };
+  private final ChassisSpeeds setpointSpeeds = new ChassisSpeeds();
   private ModuleLimits moduleLimits;
 
+  private Consumer<Pose2d> simulationPoseResetCallback = pose -> {};
+  private Runnable poseResetCallback = () -> {};
+
   @Getter private double maxLinearSpeedMetersPerSec = DriveConstants.MAX_LINEAR_SPEED;
   @Getter private double maxAngularSpeedRadPerSec = DriveConstants.MAX_ANGULAR_SPEED;
   @Getter private double driveBaseRadius = DriveConstants.DRIVE_BASE_RADIUS;
 
+  /** Creates a drive with IOs that don't read from {@link PhoenixOdometry}. */
   public Drive(GyroIO gyro, ModuleIO fl, ModuleIO fr, ModuleIO bl, ModuleIO br) {
+    this(new PhoenixOdometry(), gyro, fl, fr, bl, br);
+  }
+
+  /**
+   * Creates a drive, starting the odometry threads its IOs registered their signals with.
+   *
+   * @param odometry Odometry shared with the IOs
+   */
+  public Drive(
+      PhoenixOdometry odometry, GyroIO gyro, ModuleIO fl, ModuleIO fr, ModuleIO bl, ModuleIO br) {
+    this.odometry = odometry;
     this.gyroIO = gyro;
     modules[0] = new Module(fl, 0);
     modules[1] = new Module(fr, 1);
     modules[2] = new Module(bl, 2);
     modules[3] = new Module(br, 3);
 
-    // Start odometry thread
-    PhoenixOdometry.getInstance().start();
+    // Start odometry threads, on their own core so they stay on schedule under load
+    odometry.setThreadPriority(
+        DriveConstants.ODOMETRY_THREAD_PRIORITY, DriveConstants.ODOMETRY_THREAD_CPU);
+    odometry.start();
 
     // Create PathPlanner config
     pathplannerConfig =
@@ -117,30 +151,6 @@ public class Drive extends SubsystemBase {
                 1),
             getModuleTranslations());
 
-    // Configure AutoBuilder for PathPlanner
-    AutoBuilder.configure(
-        this::getPose,
-        this::setPose,
-        this::getChassisSpeeds,
-        this::runVelocity,
-        new PPHolonomicDriveController(
-            new PIDConstants(6.0, 0.0, 0.0), new PIDConstants(8.0, 0.0, 0.1)),
-        pathplannerConfig,
-        () -> AllianceUtils.isRedAlliance(),
-        this);
-
-    // Logging callbacks for PathPlanner
-    Pathfinding.setPathfinder(new LocalADStarAK());
-    PathPlannerLogging.setLogActivePathCallback(
-        (activePath) -> {
-          Logger.recordOutput(
-              "Odometry/Trajectory", activePath.toArray(new Pose2d[activePath.size()]));
-        });
-    PathPlannerLogging.setLogTargetPoseCallback(
-        (targetPose) -> {
-          Logger.recordOutput("Odometry/TrajectorySetpoint", targetPose);
-        });
-
     // Configure SysId
     sysId =
         new SysIdRoutine(
@@ -153,8 +163,7 @@ public class Drive extends SubsystemBase {
                 (voltage) -> runCharacterization(voltage.in(Volts)), null, this));
 
     // Setup setpoint generator
-    setpointGenerator = new SwerveSetpointGenerator(kinematics);
-    previousSetpoint = new SwerveSetpoint(getChassisSpeeds(), getModuleStates());
+    setpoint.set(getChassisSpeeds(), getModuleStates());
     moduleLimits =
         new ModuleLimits(
             maxLinearSpeedMetersPerSec,
@@ -168,13 +177,13 @@ public class Drive extends SubsystemBase {
 
   @Override
   public void periodic() {
-    odometryLock.lock();
+    // Take all odometry frames published since the last cycle, without blocking the odometry thread
+    odometry.poll();
     gyroIO.updateInputs(gyroInputs);
     Logger.processInputs("Drive/Gyro", gyroInputs);
     for (var module : modules) {
       module.periodic();
     }
-    odometryLock.unlock();
 
     // Stop moving when disabled
     if (DriverStation.isDisabled()) {
@@ -189,39 +198,75 @@ public class Drive extends SubsystemBase {
       Logger.recordOutput("SwerveStates/SetpointsOptimized", new SwerveModuleState[] {});
     }
 
-    double[] sampleTimestamps =
-        modules[0].getOdometryTimestamps(); // All signals are sampled together
-    int sampleCount = sampleTimestamps.length;
+    // Modules and the gyro capture samples at slightly different times, so put every sample on a
+    // common time base (the average of the module capture times) before integrating
+    int sampleCount = modules[0].getOdometryTimestamps().length;
+    for (int moduleIndex = 1; moduleIndex < 4; moduleIndex++) {
+      sampleCount = Math.min(sampleCount, modules[moduleIndex].getOdometryTimestamps().length);
+    }
+    double[] gyroTimestamps = gyroInputs.odometryYawTimestamps;
+    int gyroSampleCount = Math.min(gyroTimestamps.length, gyroInputs.odometryYawPositions.length);
+    if (gyroYawSamples.length < gyroSampleCount) {
+      gyroYawSamples = new double[gyroSampleCount];
+    }
+    for (int i = 0; i < gyroSampleCount; i++) {
+      gyroYawSamples[i] = gyroInputs.odometryYawPositions[i].getRadians();
+    }
+
+    double maxTimestampSpread = 0.0;
     for (int i = 0; i < sampleCount; i++) {
-      // Read wheel positions and deltas from each module
-      SwerveModulePosition[] modulePositions = new SwerveModulePosition[4];
-      SwerveModulePosition[] moduleDeltas = new SwerveModulePosition[4];
+      double sampleTimestamp = 0.0;
+      double minTimestamp = Double.POSITIVE_INFINITY;
+      double maxTimestamp = Double.NEGATIVE_INFINITY;
+      for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++) {
+        double timestamp = modules[moduleIndex].getOdometryTimestamps()[i];
+        sampleTimestamp += timestamp / 4.0;
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+      }
+      maxTimestampSpread = Math.max(maxTimestampSpread, maxTimestamp - minTimestamp);
+
+      // Read wheel positions from each module
       for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++) {
-        modulePositions[moduleIndex] = modules[moduleIndex].getOdometryPositions()[i];
-        moduleDeltas[moduleIndex] =
-            new SwerveModulePosition(
-                modulePositions[moduleIndex].distanceMeters
-                    - lastModulePositions[moduleIndex].distanceMeters,
-                modulePositions[moduleIndex].angle);
-        lastModulePositions[moduleIndex] = modulePositions[moduleIndex];
+        sampleDistances[moduleIndex] =
+            modules[moduleIndex].getOdometryPositionMetersAt(sampleTimestamp);
+        sampleAngles[moduleIndex] = modules[moduleIndex].getOdometryAngleRadAt(sampleTimestamp);
       }
 
-      // Update gyro angle
-      if (gyroInputs.connected) {
-        // Use the real gyro angle
-        rawGyroRotation = gyroInputs.odometryYawPositions[i];
-      } else {
-        // Use the angle delta from the kinematics and module deltas
-        Twist2d twist = kinematics.toTwist2d(moduleDeltas);
-        rawGyroRotation = rawGyroRotation.plus(new Rotation2d(twist.dtheta));
+      // Update gyro angle, using the real gyro angle at the same time as the modules, or the angle
+      // delta from the kinematics and module deltas as a fallback
+      double gyroYawRad = Double.NaN;
+      if (gyroInputs.connected && gyroSampleCount > 0) {
+        gyroYawRad =
+            SampleInterpolation.interpolateAngle(
+                gyroTimestamps,
+                gyroYawSamples,
+                gyroSampleCount,
+                previousGyroTimestamp,
+                previousGyroYawRad,
+                sampleTimestamp);
       }
+      odometryIntegrator.update(sampleDistances, sampleAngles, gyroYawRad);
 
       // Apply update
-      poseEstimator.updateWithTime(sampleTimestamps[i], rawGyroRotation, modulePositions);
-      rawOdometry.updateWithTime(sampleTimestamps[i], rawGyroRotation, modulePositions);
+      poseEstimator.update(
+          sampleTimestamp,
+          odometryIntegrator.getDx(),
+          odometryIntegrator.getDy(),
+          odometryIntegrator.getHeadingRad());
+    }
+    if (sampleCount > 0) {
+      rawGyroRotation = new Rotation2d(odometryIntegrator.getHeadingRad());
+    }
+    Logger.recordOutput("Odometry/ModuleTimestampSpreadMS", maxTimestampSpread * 1000.0);
+
+    if (gyroSampleCount > 0) {
+      previousGyroTimestamp = gyroTimestamps[gyroSampleCount - 1];
+      previousGyroYawRad = gyroYawSamples[gyroSampleCount - 1];
     }
 
     gyroAlert.set(!gyroInputs.connected);
+    odometry.logStatistics();
 
     dashboardField.setRobotPose(getPose());
 
@@ -235,20 +280,32 @@ public class Drive extends SubsystemBase {
    */
   public void runVelocity(ChassisSpeeds speeds) {
     // Generate new setpoint, using previous setpoint
-    previousSetpoint =
-        setpointGenerator.generateSetpoint(moduleLimits, previousSetpoint, speeds, 0.02);
+    setpointGenerator.generateSetpoint(
+        moduleLimits,
+        setpoint,
+        speeds.vxMetersPerSecond,
+        speeds.vyMetersPerSecond,
+        speeds.omegaRadiansPerSecond,
+        0.02,
+        setpoint);
+    for (int i = 0; i < 4; i++) {
+      setpointStates[i].speedMetersPerSecond = setpoint.getModuleSpeed(i);
+      setpointStates[i].angle = new Rotation2d(setpoint.getModuleAngle(i));
+    }
+    setpoint.getChassisSpeeds(setpointSpeeds);
 
     // Log setpoint outputs
-    Logger.recordOutput("SwerveStates/Setpoints", previousSetpoint.moduleStates());
-    Logger.recordOutput("SwerveChassisSpeeds/Setpoints", previousSetpoint.chassisSpeeds());
+    Logger.recordOutput("SwerveStates/Setpoints", setpointStates);
+    Logger.recordOutput("SwerveChassisSpeeds/Setpoints", setpointSpeeds);
 
     for (int i = 0; i < 4; i++) {
-      // Run each module to the specified state
-      modules[i].runSetpoint(previousSetpoint.moduleStates()[i]);
+      // Run each module to the specified state, the optimized state is the next previous setpoint
+      modules[i].runSetpoint(setpointStates[i]);
+      setpoint.setModule(i, setpointStates[i]);
     }
 
     // Log mutated states
-    Logger.recordOutput("SwerveStates/SetpointsOptimized", previousSetpoint.moduleStates());
+    Logger.recordOutput("SwerveStates/SetpointsOptimized", setpointStates);
   }
 
   /** Runs the drive in a straight line with the specified drive output. */
@@ -276,6 +333,53 @@ public class Drive extends SubsystemBase {
     stop();
   }
 
+  /**
+   * Configures AutoBuilder, the pathfinder and PathPlanner logging to use this drive. They're
+   * shared by the whole program, so call this once, for the robot's drive.
+   */
+  public void configurePathPlanner() {
+    // Configure AutoBuilder for PathPlanner
+    AutoBuilder.configure(
+        this::getPose,
+        this::setPose,
+        this::getChassisSpeeds,
+        this::runVelocity,
+        pathController,
+        pathplannerConfig,
+        () -> AllianceUtils.isRedAlliance(),
+        this);
+
+    Pathfinding.setPathfinder(new LocalADStarAK());
+
+    // Logging callbacks for PathPlanner
+    PathPlannerLogging.setLogActivePathCallback(
+        (activePath) -> {
+          Logger.recordOutput(
+              "Odometry/Trajectory", activePath.toArray(new Pose2d[activePath.size()]));
+        });
+    PathPlannerLogging.setLogTargetPoseCallback(
+        (targetPose) -> {
+          Logger.recordOutput("Odometry/TrajectorySetpoint", targetPose);
+        });
+  }
+
+  /**
+   * Returns a command to follow a path with this drive, like {@link AutoBuilder#followPath}. Unlike
+   * AutoBuilder, which follows with the drive from {@link #configurePathPlanner()}, it can be used
+   * when several drives exist at once.
+   */
+  public Command followPath(PathPlannerPath path) {
+    return new FollowPathCommand(
+        path,
+        this::getPose,
+        this::getChassisSpeeds,
+        (speeds, feedforwards) -> runVelocity(speeds),
+        pathController,
+        pathplannerConfig,
+        () -> AllianceUtils.isRedAlliance(),
+        this);
+  }
+
   /** Returns a command to run a quasistatic test in the specified direction. */
   public Command sysIdQuasistatic(SysIdRoutine.Direction direction) {
     return run(() -> runCharacterization(0.0))
@@ -298,18 +402,9 @@ public class Drive extends SubsystemBase {
     return states;
   }
 
-  /** Returns the module positions (turn angles and drive positions) for all of the modules. */
-  private SwerveModulePosition[] getModulePositions() {
-    SwerveModulePosition[] states = new SwerveModulePosition[4];
-    for (int i = 0; i < 4; i++) {
-      states[i] = modules[i].getPosition();
-    }
-    return states;
-  }
-
   /** Returns the measured chassis speeds of the robot. */
   @AutoLogOutput(key = "SwerveChassisSpeeds/Measured")
-  private ChassisSpeeds getChassisSpeeds() {
+  public ChassisSpeeds getChassisSpeeds() {
     return kinematics.toChassisSpeeds(getModuleStates());
   }
 
@@ -340,7 +435,15 @@ public class Drive extends SubsystemBase {
   /** Returns the current odometry pose. */
   @AutoLogOutput(key = "Odometry/Raw")
   public Pose2d getRawOdometryPose() {
-    return rawOdometry.getEstimatedPosition();
+    return poseEstimator.getRawOdometryPose();
+  }
+
+  /**
+   * Writes the fused pose estimate at a past time to the array as (x, y, theta), returning false if
+   * there is no odometry history yet.
+   */
+  public boolean samplePoseAt(double timestampSeconds, double[] out) {
+    return poseEstimator.sampleAt(timestampSeconds, out);
   }
 
   /** Returns the current odometry rotation. */
@@ -350,7 +453,25 @@ public class Drive extends SubsystemBase {
 
   /** Resets the current odometry pose. */
   public void setPose(Pose2d pose) {
-    poseEstimator.resetPosition(rawGyroRotation, getModulePositions(), pose);
+    poseEstimator.resetPose(pose, odometryIntegrator.getHeadingRad());
+    simulationPoseResetCallback.accept(pose);
+    poseResetCallback.run();
+  }
+
+  /**
+   * Sets a callback for pose resets, so anything comparing vision to the old pose estimate can
+   * forget it.
+   */
+  public void setPoseResetCallback(Runnable callback) {
+    poseResetCallback = callback;
+  }
+
+  /**
+   * Sets a callback for pose resets, so a simulation can move the simulated robot to the pose the
+   * code now thinks it's at.
+   */
+  public void setSimulationPoseResetCallback(Consumer<Pose2d> callback) {
+    simulationPoseResetCallback = callback;
   }
 
   /** Adds a new timestamped vision measurement. */
@@ -362,6 +483,11 @@ public class Drive extends SubsystemBase {
         visionRobotPoseMeters, timestampSeconds, visionMeasurementStdDevs);
   }
 
+  /** Adds a cycle's vision measurements, applied together in timestamp order. */
+  public void addVisionMeasurements(VisionMeasurementBatch measurements) {
+    poseEstimator.addVisionMeasurements(measurements);
+  }
+
   public Timestamped<Rotation2d> getTimestampedHeading() {
     return new Timestamped<Rotation2d>(
         rawGyroRotation.minus(visionHeadingOffset), Timer.getFPGATimestamp());
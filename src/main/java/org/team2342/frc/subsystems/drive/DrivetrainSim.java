@@ -0,0 +1,404 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.frc.subsystems.drive;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.Timer;
+import java.util.Arrays;
+import org.team2342.frc.Constants.DriveConstants;
+
+/**
+ * Simulates the whole drivetrain at once: the eight motors, the tires and the robot moving on the
+ * field. Drive uses it through {@link #getModuleIO(int)} and {@link #getGyroIO()}.
+ *
+ * <p>Each 20 ms loop is split into substeps, run the first time any view is updated in a loop. Each
+ * substep runs the module closed loop controllers, steps the turn motors with the exact solution of
+ * the DC motor model, then works out each tire's force on the ground. A tire pushes with the force
+ * that would remove its slip (wheel surface speed against ground speed along the wheel, and
+ * sideways ground speed) within the substep, limited by {@link DriveConstants#WHEEL_COF} times its
+ * share of the robot's weight. The forces spin the wheels back and accelerate the robot, using
+ * {@link DriveConstants#ROBOT_MASS_KG} and {@link DriveConstants#ROBOT_MOI}.
+ *
+ * <p>Odometry samples are reported at the odometry frequency, and the gyro reports the true
+ * heading, plus any drift set with {@link #setGyroDrift(double)}. All state is kept in primitive
+ * arrays.
+ */
+public class DrivetrainSim {
+  private static final double LOOP_PERIOD = 0.02;
+  private static final double MAX_VOLTAGE = 12.0;
+  private static final double GRAVITY = 9.81;
+
+  private static final double DRIVE_MOI = 0.025;
+  private static final double TURN_MOI = 0.004;
+
+  // Same controllers as ModuleIOSim, the drive feedforward kV converted from rotations to radians
+  private static final double DRIVE_KP = 0.4;
+  private static final double DRIVE_KD = 0.000001;
+  private static final double DRIVE_KS = 0.006;
+  private static final double DRIVE_KV = 1.0 / Units.rotationsToRadians(1.0 / 0.80512);
+  private static final double TURN_KP = 10.0;
+
+  private final int moduleCount;
+  private final double[] moduleX;
+  private final double[] moduleY;
+  private final double wheelRadius;
+
+  private final int substeps;
+  private final double substepPeriod;
+  private final int odometryStride;
+  private final int sampleCount;
+
+  // Drive motors, as wheel torque = torquePerVolt * volts - torquePerVelocity * wheel velocity
+  private final DCMotor driveMotor = DCMotor.getKrakenX60(1);
+  private final double driveTorquePerVolt;
+  private final double driveTorquePerVelocity;
+  private final double maxTireForce;
+  private final double moduleMass;
+
+  // Turn motors, stepped exactly: velocity decays towards steadyStatePerVolt * volts
+  private final DCMotor turnMotor = DCMotor.getKrakenX60(1);
+  private final double turnDecay;
+  private final double turnDecayIntegral;
+  private final double turnSteadyStatePerVolt;
+
+  // Motor states, in mechanism radians and radians per second
+  private final double[] drivePositions;
+  private final double[] driveVelocities;
+  private final double[] turnPositions;
+  private final double[] turnVelocities;
+  private final double[] driveVolts;
+  private final double[] turnVolts;
+
+  // Closed loop targets, NaN when running open loop at the applied voltage
+  private final double[] driveVelocitySetpoints;
+  private final double[] driveFeedforwardVolts;
+  private final double[] drivePreviousErrors;
+  private final double[] turnPositionSetpoints;
+
+  // Robot pose and field relative velocity
+  private double x = 0.0;
+  private double y = 0.0;
+  private double heading = 0.0;
+  private double vx = 0.0;
+  private double vy = 0.0;
+  private double omega = 0.0;
+
+  // Gyro error, growing at the drift rate
+  private double gyroDrift = 0.0;
+  private double gyroOffset = 0.0;
+
+  // Odometry samples from the last loop
+  private final double[] odometryTimestamps;
+  private final double[][] odometryDrivePositions;
+  private final double[][] odometryTurnPositions;
+  private final double[] odometryYaws;
+
+  private double lastUpdateTimestamp = Double.NaN;
+
+  /**
+   * Creates a drivetrain with the robot's module positions and wheel radius, stepped at {@link
+   * DriveConstants#SIM_SUBSTEP_FREQUENCY} and reporting odometry at {@link
+   * DriveConstants#SIM_ODOMETRY_FREQUENCY}.
+   */
+  public DrivetrainSim() {
+    this(
+        Drive.getModuleTranslations(),
+        DriveConstants.WHEEL_RADIUS,
+        DriveConstants.SIM_SUBSTEP_FREQUENCY,
+        DriveConstants.SIM_ODOMETRY_FREQUENCY);
+  }
+
+  /**
+   * Creates a drivetrain.
+   *
+   * @param moduleTranslations Module positions relative to the robot center
+   * @param wheelRadius Actual wheel radius in meters
+   * @param substepFrequency Rate to step the physics and controllers at, in Hz
+   * @param odometryFrequency Rate to report odometry samples at, in Hz
+   */
+  public DrivetrainSim(
+      Translation2d[] moduleTranslations,
+      double wheelRadius,
+      double substepFrequency,
+      double odometryFrequency) {
+    moduleCount = moduleTranslations.length;
+    moduleX = new double[moduleCount];
+    moduleY = new double[moduleCount];
+    for (int i = 0; i < moduleCount; i++) {
+      moduleX[i] = moduleTranslations[i].getX();
+      moduleY[i] = moduleTranslations[i].getY();
+    }
+    this.wheelRadius = wheelRadius;
+
+    substeps = Math.max(1, (int) Math.round(LOOP_PERIOD * substepFrequency));
+    substepPeriod = LOOP_PERIOD / substeps;
+    odometryStride =
+        MathUtil.clamp((int) Math.round(substepFrequency / odometryFrequency), 1, substeps);
+    sampleCount = substeps / odometryStride;
+
+    double driveGearing = DriveConstants.DRIVE_GEARING;
+    driveTorquePerVolt = driveGearing * driveMotor.KtNMPerAmp / driveMotor.rOhms;
+    driveTorquePerVelocity =
+        driveGearing
+            * driveGearing
+            * driveMotor.KtNMPerAmp
+            / (driveMotor.KvRadPerSecPerVolt * driveMotor.rOhms);
+    moduleMass = DriveConstants.ROBOT_MASS_KG / moduleCount;
+    maxTireForce = DriveConstants.WHEEL_COF * moduleMass * GRAVITY;
+
+    double turnGearing = DriveConstants.TURN_GEARING;
+    double a =
+        -turnGearing
+            * turnGearing
+            * turnMotor.KtNMPerAmp
+            / (turnMotor.KvRadPerSecPerVolt * turnMotor.rOhms * TURN_MOI);
+    double b = turnGearing * turnMotor.KtNMPerAmp / (turnMotor.rOhms * TURN_MOI);
+    turnDecay = Math.exp(a * substepPeriod);
+    turnDecayIntegral = (turnDecay - 1.0) / a;
+    turnSteadyStatePerVolt = -b / a;
+
+    drivePositions = new double[moduleCount];
+    driveVelocities = new double[moduleCount];
+    turnPositions = new double[moduleCount];
+    turnVelocities = new double[moduleCount];
+    driveVolts = new double[moduleCount];
+    turnVolts = new double[moduleCount];
+    driveVelocitySetpoints = new double[moduleCount];
+    driveFeedforwardVolts = new double[moduleCount];
+    drivePreviousErrors = new double[moduleCount];
+    turnPositionSetpoints = new double[moduleCount];
+    Arrays.fill(driveVelocitySetpoints, Double.NaN);
+    Arrays.fill(turnPositionSetpoints, Double.NaN);
+
+    odometryTimestamps = new double[sampleCount];
+    odometryDrivePositions = new double[moduleCount][sampleCount];
+    odometryTurnPositions = new double[moduleCount][sampleCount];
+    odometryYaws = new double[sampleCount];
+  }
+
+  /** Returns the IO for a module, in the same order as the module translations. */
+  public ModuleIO getModuleIO(int module) {
+    return new ModuleView(module);
+  }
+
+  /** Returns the IO for a gyro that measures the robot's heading. */
+  public GyroIO getGyroIO() {
+    return new GyroView();
+  }
+
+  /** Returns the robot's true pose. */
+  public Pose2d getPose() {
+    return new Pose2d(x, y, new Rotation2d(heading));
+  }
+
+  /** Moves the robot to a pose and stops it. */
+  public void setPose(Pose2d pose) {
+    x = pose.getX();
+    y = pose.getY();
+    heading = pose.getRotation().getRadians();
+    vx = 0.0;
+    vy = 0.0;
+    omega = 0.0;
+  }
+
+  /**
+   * Sets how fast the gyro's measured heading drifts away from the true heading.
+   *
+   * @param driftRadPerSec Drift rate in radians per second
+   */
+  public void setGyroDrift(double driftRadPerSec) {
+    gyroDrift = driftRadPerSec;
+  }
+
+  /** Simulates the loop that just ended, once per loop. */
+  private void update() {
+    double now = Timer.getFPGATimestamp();
+    if (now == lastUpdateTimestamp) {
+      return;
+    }
+    lastUpdateTimestamp = now;
+
+    double loopStart = now - LOOP_PERIOD;
+    int sample = 0;
+    for (int step = 1; step <= substeps; step++) {
+      substep();
+      if (step % odometryStride == 0 && sample < sampleCount) {
+        odometryTimestamps[sample] = loopStart + step * substepPeriod;
+        for (int i = 0; i < moduleCount; i++) {
+          odometryDrivePositions[i][sample] = drivePositions[i];
+          odometryTurnPositions[i][sample] = turnPositions[i];
+        }
+        odometryYaws[sample] = heading + gyroOffset;
+        sample++;
+      }
+    }
+  }
+
+  private void substep() {
+    double h = substepPeriod;
+
+    // Robot relative chassis velocity
+    double cos = Math.cos(heading);
+    double sin = Math.sin(heading);
+    double robotVx = cos * vx + sin * vy;
+    double robotVy = -sin * vx + cos * vy;
+
+    double forceX = 0.0;
+    double forceY = 0.0;
+    double torque = 0.0;
+    for (int i = 0; i < moduleCount; i++) {
+      // Closed loop control, like a motor controller running it onboard
+      if (!Double.isNaN(driveVelocitySetpoints[i])) {
+        double error = driveVelocitySetpoints[i] - driveVelocities[i];
+        driveVolts[i] =
+            DRIVE_KP * error
+                + DRIVE_KD * (error - drivePreviousErrors[i]) / h
+                + driveFeedforwardVolts[i];
+        drivePreviousErrors[i] = error;
+      }
+      if (!Double.isNaN(turnPositionSetpoints[i])) {
+        turnVolts[i] = TURN_KP * MathUtil.angleModulus(turnPositionSetpoints[i] - turnPositions[i]);
+      }
+      driveVolts[i] = MathUtil.clamp(driveVolts[i], -MAX_VOLTAGE, MAX_VOLTAGE);
+      turnVolts[i] = MathUtil.clamp(turnVolts[i], -MAX_VOLTAGE, MAX_VOLTAGE);
+
+      // Turn motor, ignoring tire scrub
+      double steadyState = turnSteadyStatePerVolt * turnVolts[i];
+      double offset = turnVelocities[i] - steadyState;
+      turnPositions[i] += steadyState * h + offset * turnDecayIntegral;
+      turnVelocities[i] = steadyState + offset * turnDecay;
+
+      // Wheel spun up by the motor alone
+      double wheelTorque =
+          driveTorquePerVolt * driveVolts[i] - driveTorquePerVelocity * driveVelocities[i];
+      double wheelVelocity = driveVelocities[i] + h * wheelTorque / DRIVE_MOI;
+
+      // Ground velocity under the module, along and across the wheel
+      double ux = Math.cos(turnPositions[i]);
+      double uy = Math.sin(turnPositions[i]);
+      double groundVx = robotVx - omega * moduleY[i];
+      double groundVy = robotVy + omega * moduleX[i];
+      double slip = wheelVelocity * wheelRadius - (groundVx * ux + groundVy * uy);
+      double lateral = -groundVx * uy + groundVy * ux;
+
+      // Tire force that removes the slip within the substep, limited by friction
+      double longitudinalForce =
+          slip / (h * (wheelRadius * wheelRadius / DRIVE_MOI + 1.0 / moduleMass));
+      double lateralForce = -lateral * moduleMass / h;
+      double force = Math.hypot(longitudinalForce, lateralForce);
+      if (force > maxTireForce) {
+        longitudinalForce *= maxTireForce / force;
+        lateralForce *= maxTireForce / force;
+      }
+
+      driveVelocities[i] = wheelVelocity - h * longitudinalForce * wheelRadius / DRIVE_MOI;
+      drivePositions[i] += driveVelocities[i] * h;
+
+      double moduleForceX = longitudinalForce * ux - lateralForce * uy;
+      double moduleForceY = longitudinalForce * uy + lateralForce * ux;
+      forceX += moduleForceX;
+      forceY += moduleForceY;
+      torque += moduleX[i] * moduleForceY - moduleY[i] * moduleForceX;
+    }
+
+    // Accelerate the robot, then move it
+    vx += h * (cos * forceX - sin * forceY) / DriveConstants.ROBOT_MASS_KG;
+    vy += h * (sin * forceX + cos * forceY) / DriveConstants.ROBOT_MASS_KG;
+    omega += h * torque / DriveConstants.ROBOT_MOI;
+    x += vx * h;
+    y += vy * h;
+    heading += omega * h;
+    gyroOffset += gyroDrift * h;
+  }
+
+  /** One module of the simulated drivetrain. */
+  private class ModuleView implements ModuleIO {
+    private final int module;
+
+    private ModuleView(int module) {
+      this.module = module;
+    }
+
+    @Override
+    public void updateInputs(ModuleIOInputs inputs) {
+      update();
+
+      inputs.driveConnected = true;
+      inputs.drivePositionRad = drivePositions[module];
+      inputs.driveVelocityRadPerSec = driveVelocities[module];
+      inputs.driveAppliedVolts = driveVolts[module];
+      inputs.driveCurrentAmps =
+          Math.abs(
+              driveMotor.getCurrent(
+                  driveVelocities[module] * DriveConstants.DRIVE_GEARING, driveVolts[module]));
+
+      inputs.turnConnected = true;
+      inputs.encoderConnected = true;
+      inputs.turnAbsolutePosition = new Rotation2d(turnPositions[module]);
+      inputs.turnPosition = new Rotation2d(turnPositions[module]);
+      inputs.turnVelocityRadPerSec = turnVelocities[module];
+      inputs.turnAppliedVolts = turnVolts[module];
+      inputs.turnCurrentAmps =
+          Math.abs(
+              turnMotor.getCurrent(
+                  turnVelocities[module] * DriveConstants.TURN_GEARING, turnVolts[module]));
+
+      inputs.odometryTimestamps = odometryTimestamps.clone();
+      inputs.odometryDrivePositionsRad = odometryDrivePositions[module].clone();
+      inputs.odometryTurnPositions = new Rotation2d[sampleCount];
+      for (int i = 0; i < sampleCount; i++) {
+        inputs.odometryTurnPositions[i] = new Rotation2d(odometryTurnPositions[module][i]);
+      }
+    }
+
+    @Override
+    public void runDriveVelocity(double velocityRadPerSec) {
+      driveVelocitySetpoints[module] = velocityRadPerSec;
+      driveFeedforwardVolts[module] =
+          DRIVE_KS * Math.signum(velocityRadPerSec) + DRIVE_KV * velocityRadPerSec;
+    }
+
+    @Override
+    public void runDriveVoltage(double voltage) {
+      driveVelocitySetpoints[module] = Double.NaN;
+      driveVolts[module] = voltage;
+    }
+
+    @Override
+    public void setTurnPosition(Rotation2d rotation) {
+      turnPositionSetpoints[module] = rotation.getRadians();
+    }
+
+    @Override
+    public void runTurnVoltage(double voltage) {
+      turnPositionSetpoints[module] = Double.NaN;
+      turnVolts[module] = voltage;
+    }
+  }
+
+  /** A gyro measuring the simulated robot's heading, with drift. */
+  private class GyroView implements GyroIO {
+    @Override
+    public void updateInputs(GyroIOInputs inputs) {
+      update();
+
+      inputs.connected = true;
+      inputs.yawPosition = new Rotation2d(heading + gyroOffset);
+      inputs.yawVelocityRadPerSec = omega + gyroDrift;
+      inputs.odometryYawTimestamps = odometryTimestamps.clone();
+      inputs.odometryYawPositions = new Rotation2d[sampleCount];
+      for (int i = 0; i < sampleCount; i++) {
+        inputs.odometryYawPositions[i] = new Rotation2d(odometryYaws[i]);
+      }
+    }
+  }
+}
@@ -7,6 +7,7 @@
 package org.team2342.frc.subsystems.drive;
 
 import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.CANBus;
 import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.configs.MountPoseConfigs;
 import com.ctre.phoenix6.configs.Pigeon2Configuration;
@@ -16,8 +17,9 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.units.measure.Angle;
 import edu.wpi.first.units.measure.AngularVelocity;
-import java.util.Queue;
+import java.util.Arrays;
 import org.team2342.frc.Constants.DriveConstants;
+import org.team2342.frc.subsystems.drive.PhoenixOdometry.SampleQueue;
 import org.team2342.frc.util.PhoenixUtils;
 
 /** GyroIO implementation for the Pigeon 2. */
@@ -26,14 +28,17 @@ public class GyroIOPigeon2 implements GyroIO {
   private final StatusSignal<Angle> yaw;
   private final StatusSignal<AngularVelocity> yawVelocity;
 
-  private final Queue<Double> yawPositionQueue;
-  private final Queue<Double> yawTimestampQueue;
+  private final SampleQueue yawPositionQueue;
+
+  // Reused arrays to drain the odometry queues into
+  private double[] yawPositionSamples = new double[0];
+  private double[] yawTimestampSamples = new double[0];
 
   // Connection debouncer
   private final Debouncer gyroConnectedDebounce = new Debouncer(0.5);
 
-  public GyroIOPigeon2(int canID) {
-    pigeon = new Pigeon2(canID);
+  public GyroIOPigeon2(int canID, CANBus bus, PhoenixOdometry odometry) {
+    pigeon = new Pigeon2(canID, bus);
     yaw = pigeon.getYaw();
     yawVelocity = pigeon.getAngularVelocityZWorld();
 
@@ -50,9 +55,8 @@ public class GyroIOPigeon2 implements GyroIO {
     PhoenixUtils.tryUntilOk(5, () -> pigeon.getConfigurator().setYaw(0.0));
 
     // We want the yaw signal to run at a higher frequency for odometry
-    yaw.setUpdateFrequency(DriveConstants.ODOMETRY_FREQUENCY);
-    yawTimestampQueue = PhoenixOdometry.getInstance().makeTimestampQueue();
-    yawPositionQueue = PhoenixOdometry.getInstance().registerSignal(yaw.clone());
+    yaw.setUpdateFrequency(odometry.getFrequency(bus));
+    yawPositionQueue = odometry.registerSignal(bus, yaw.clone());
 
     yawVelocity.setUpdateFrequency(50.0);
 
@@ -70,13 +74,18 @@ public class GyroIOPigeon2 implements GyroIO {
     inputs.yawPosition = Rotation2d.fromDegrees(yaw.getValueAsDouble());
     inputs.yawVelocityRadPerSec = Units.degreesToRadians(yawVelocity.getValueAsDouble());
 
-    inputs.odometryYawTimestamps =
-        yawTimestampQueue.stream().mapToDouble((Double value) -> value).toArray();
-    inputs.odometryYawPositions =
-        yawPositionQueue.stream()
-            .map((Double value) -> Rotation2d.fromDegrees(value))
-            .toArray(Rotation2d[]::new);
-    yawTimestampQueue.clear();
-    yawPositionQueue.clear();
+    // Queues can grow if the main loop falls behind, so keep the drain arrays large enough
+    if (yawPositionSamples.length < yawPositionQueue.getCapacity()) {
+      yawPositionSamples = new double[yawPositionQueue.getCapacity()];
+      yawTimestampSamples = new double[yawPositionQueue.getCapacity()];
+    }
+
+    // Timestamps are when the Pigeon captured each sample, not when the frame was read
+    int sampleCount = yawPositionQueue.drainTo(yawPositionSamples, yawTimestampSamples);
+    inputs.odometryYawTimestamps = Arrays.copyOf(yawTimestampSamples, sampleCount);
+    inputs.odometryYawPositions = new Rotation2d[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      inputs.odometryYawPositions[i] = Rotation2d.fromDegrees(yawPositionSamples[i]);
+    }
   }
 }
@@ -12,10 +12,10 @@ import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.Alert;
 import edu.wpi.first.wpilibj.Alert.AlertType;
-import lombok.Getter;
 import org.littletonrobotics.junction.Logger;
 import org.team2342.frc.Constants.DriveConstants;
 import org.team2342.lib.logging.ExecutionLogger;
+import org.team2342.lib.util.SampleInterpolation;
 
 /** Class for controlling individual swerve modules */
 public class Module {
@@ -28,7 +28,12 @@ public class Module {
   private final Alert turnAlert;
   private final Alert encoderAlert;
 
-  @Getter private SwerveModulePosition[] odometryPositions = new SwerveModulePosition[] {};
+  // Samples from this cycle for resampling, and the last sample from the previous cycle
+  private double[] odometryDrivePositionsMeters = new double[0];
+  private double[] odometryTurnPositionsRad = new double[0];
+  private double previousOdometryTimestamp = Double.NaN;
+  private double previousDrivePositionMeters = 0.0;
+  private double previousTurnPositionRad = 0.0;
 
   public Module(ModuleIO io, int index) {
     this.io = io;
@@ -47,16 +52,27 @@ public class Module {
 
   /** Periodic function for modules. */
   public void periodic() {
+    // Keep the last sample of the previous cycle to interpolate from
+    int previousCount = inputs.odometryTimestamps.length;
+    if (previousCount > 0) {
+      previousOdometryTimestamp = inputs.odometryTimestamps[previousCount - 1];
+      previousDrivePositionMeters = odometryDrivePositionsMeters[previousCount - 1];
+      previousTurnPositionRad = odometryTurnPositionsRad[previousCount - 1];
+    }
+
     io.updateInputs(inputs);
     Logger.processInputs("Drive/Module" + Integer.toString(index), inputs);
 
     // Calculate positions for odometry
     int sampleCount = inputs.odometryTimestamps.length; // All signals are sampled together
-    odometryPositions = new SwerveModulePosition[sampleCount];
+    if (odometryDrivePositionsMeters.length < sampleCount) {
+      odometryDrivePositionsMeters = new double[sampleCount];
+      odometryTurnPositionsRad = new double[sampleCount];
+    }
     for (int i = 0; i < sampleCount; i++) {
-      double positionMeters = inputs.odometryDrivePositionsRad[i] * DriveConstants.WHEEL_RADIUS;
-      Rotation2d angle = inputs.odometryTurnPositions[i];
-      odometryPositions[i] = new SwerveModulePosition(positionMeters, angle);
+      odometryDrivePositionsMeters[i] =
+          inputs.odometryDrivePositionsRad[i] * DriveConstants.WHEEL_RADIUS;
+      odometryTurnPositionsRad[i] = inputs.odometryTurnPositions[i].getRadians();
     }
 
     driveAlert.set(!inputs.driveConnected);
@@ -120,6 +136,39 @@ public class Module {
     return inputs.odometryTimestamps;
   }
 
+  /**
+   * Returns the drive position in meters at the given time, interpolated between the samples
+   * received this cycle. Used to line up modules whose samples were captured at slightly different
+   * times.
+   *
+   * @param timestamp FPGA time in seconds, normally within this cycle's samples
+   */
+  public double getOdometryPositionMetersAt(double timestamp) {
+    return SampleInterpolation.interpolate(
+        inputs.odometryTimestamps,
+        odometryDrivePositionsMeters,
+        inputs.odometryTimestamps.length,
+        previousOdometryTimestamp,
+        previousDrivePositionMeters,
+        timestamp);
+  }
+
+  /**
+   * Returns the turn angle in radians at the given time, interpolated between the samples received
+   * this cycle. The angle isn't wrapped.
+   *
+   * @param timestamp FPGA time in seconds, normally within this cycle's samples
+   */
+  public double getOdometryAngleRadAt(double timestamp) {
+    return SampleInterpolation.interpolateAngle(
+        inputs.odometryTimestamps,
+        odometryTurnPositionsRad,
+        inputs.odometryTimestamps.length,
+        previousOdometryTimestamp,
+        previousTurnPositionRad,
+        timestamp);
+  }
+
   /** Returns the module position in radians. */
   public double getWheelRadiusCharacterizationPosition() {
     return inputs.drivePositionRad;
@@ -6,98 +6,194 @@
 
 package org.team2342.frc.subsystems.drive;
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.system.plant.DCMotor;
-import edu.wpi.first.math.system.plant.LinearSystemId;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.Timer;
-import edu.wpi.first.wpilibj.simulation.DCMotorSim;
 import org.team2342.frc.Constants.DriveConstants;
 
-/* ModuleIO implementation using WPILib simulation classes. */
+/**
+ * ModuleIO implementation using a simulated DC motor model.
+ *
+ * <p>Each 20 ms loop is split into substeps. Like a motor controller running its closed loop
+ * onboard, the drive velocity and turn position controllers run every substep, and the motors are
+ * stepped with the exact solution of the DC motor model for a constant voltage. An odometry sample
+ * is reported at the odometry frequency, so the multi-sample odometry path runs like on the robot.
+ */
 public class ModuleIOSim implements ModuleIO {
-  private final DCMotorSim driveSim;
-  private final DCMotorSim turnSim;
+  private static final double LOOP_PERIOD = 0.02;
+  private static final double MAX_VOLTAGE = 12.0;
 
-  private PIDController driveController = new PIDController(0.4, 0.0, 0.000001);
-  private PIDController turnController = new PIDController(10.0, 0.0, 0.0);
+  private final MotorModel driveMotor;
+  private final MotorModel turnMotor;
+
+  private final int substeps;
+  private final int odometryStride;
+  private final double substepPeriod;
+
+  private final PIDController driveController;
+  private final PIDController turnController;
 
   // Need to convert units for feedforward from rotations to radians
   private double kvRot = 0.80512;
   private double kvRad = 1.0 / Units.rotationsToRadians(1.0 / kvRot);
   private SimpleMotorFeedforward ff = new SimpleMotorFeedforward(0.006, kvRad);
 
-  private double driveAppliedVolts = 1.0;
-  private double turnAppliedVolts = 1.0;
+  // Closed loop targets, NaN when running open loop at the applied voltage
+  private double driveVelocitySetpoint = Double.NaN;
+  private double driveFeedforwardVolts = 0.0;
+  private double turnPositionSetpoint = Double.NaN;
 
+  private double driveAppliedVolts = 0.0;
+  private double turnAppliedVolts = 0.0;
+
+  /**
+   * Creates a module stepped at {@link DriveConstants#SIM_SUBSTEP_FREQUENCY}, reporting odometry at
+   * {@link DriveConstants#SIM_ODOMETRY_FREQUENCY}.
+   */
   public ModuleIOSim() {
-    // Create DCMotorSims for each motor
-    driveSim =
-        new DCMotorSim(
-            LinearSystemId.createDCMotorSystem(
-                DCMotor.getKrakenX60(1), 0.025, DriveConstants.DRIVE_GEARING),
-            DCMotor.getKrakenX60(1));
-
-    turnSim =
-        new DCMotorSim(
-            LinearSystemId.createDCMotorSystem(
-                DCMotor.getKrakenX60(1), 0.004, DriveConstants.TURN_GEARING),
-            DCMotor.getKrakenX60(1));
+    this(DriveConstants.SIM_SUBSTEP_FREQUENCY, DriveConstants.SIM_ODOMETRY_FREQUENCY);
+  }
 
+  /**
+   * Creates a module with the given rates, which are rounded to whole divisions of the loop.
+   *
+   * @param substepFrequency Rate to step the motors and controllers at, in Hz
+   * @param odometryFrequency Rate to report odometry samples at, in Hz
+   */
+  public ModuleIOSim(double substepFrequency, double odometryFrequency) {
+    substeps = Math.max(1, (int) Math.round(LOOP_PERIOD * substepFrequency));
+    substepPeriod = LOOP_PERIOD / substeps;
+    odometryStride =
+        MathUtil.clamp((int) Math.round(substepFrequency / odometryFrequency), 1, substeps);
+
+    driveMotor =
+        new MotorModel(DCMotor.getKrakenX60(1), 0.025, DriveConstants.DRIVE_GEARING, substepPeriod);
+    turnMotor =
+        new MotorModel(DCMotor.getKrakenX60(1), 0.004, DriveConstants.TURN_GEARING, substepPeriod);
+
+    driveController = new PIDController(0.4, 0.0, 0.000001, substepPeriod);
+    turnController = new PIDController(10.0, 0.0, 0.0, substepPeriod);
     turnController.enableContinuousInput(-Math.PI, Math.PI);
   }
 
   @Override
   public void updateInputs(ModuleIOInputs inputs) {
-    // Need to run update, otherwise the simulation won't change
-    driveSim.update(0.02);
-    turnSim.update(0.02);
+    int sampleCount = substeps / odometryStride;
+    double loopStart = Timer.getFPGATimestamp() - LOOP_PERIOD;
+    inputs.odometryTimestamps = new double[sampleCount];
+    inputs.odometryDrivePositionsRad = new double[sampleCount];
+    inputs.odometryTurnPositions = new Rotation2d[sampleCount];
+
+    // Step the motors through the loop, running the closed loop controllers every substep
+    int sample = 0;
+    for (int step = 1; step <= substeps; step++) {
+      if (!Double.isNaN(driveVelocitySetpoint)) {
+        driveAppliedVolts =
+            driveController.calculate(driveMotor.velocity, driveVelocitySetpoint)
+                + driveFeedforwardVolts;
+      }
+      if (!Double.isNaN(turnPositionSetpoint)) {
+        turnAppliedVolts = turnController.calculate(turnMotor.position, turnPositionSetpoint);
+      }
+      driveAppliedVolts = MathUtil.clamp(driveAppliedVolts, -MAX_VOLTAGE, MAX_VOLTAGE);
+      turnAppliedVolts = MathUtil.clamp(turnAppliedVolts, -MAX_VOLTAGE, MAX_VOLTAGE);
+      driveMotor.step(driveAppliedVolts);
+      turnMotor.step(turnAppliedVolts);
+
+      if (step % odometryStride == 0 && sample < sampleCount) {
+        inputs.odometryTimestamps[sample] = loopStart + step * substepPeriod;
+        inputs.odometryDrivePositionsRad[sample] = driveMotor.position;
+        inputs.odometryTurnPositions[sample] = new Rotation2d(turnMotor.position);
+        sample++;
+      }
+    }
 
     inputs.driveConnected = true;
-    inputs.drivePositionRad = driveSim.getAngularPositionRad();
-    inputs.driveVelocityRadPerSec = driveSim.getAngularVelocityRadPerSec();
+    inputs.drivePositionRad = driveMotor.position;
+    inputs.driveVelocityRadPerSec = driveMotor.velocity;
     inputs.driveAppliedVolts = driveAppliedVolts;
-    inputs.driveCurrentAmps = Math.abs(driveSim.getCurrentDrawAmps());
+    inputs.driveCurrentAmps = Math.abs(driveMotor.getCurrentAmps(driveAppliedVolts));
 
     inputs.turnConnected = true;
     inputs.encoderConnected = true;
-    inputs.turnAbsolutePosition = new Rotation2d(turnSim.getAngularPositionRad());
-    inputs.turnPosition = new Rotation2d(turnSim.getAngularPositionRad());
-    inputs.turnVelocityRadPerSec = turnSim.getAngularVelocityRadPerSec();
+    inputs.turnAbsolutePosition = new Rotation2d(turnMotor.position);
+    inputs.turnPosition = new Rotation2d(turnMotor.position);
+    inputs.turnVelocityRadPerSec = turnMotor.velocity;
     inputs.turnAppliedVolts = turnAppliedVolts;
-    inputs.turnCurrentAmps = Math.abs(turnSim.getCurrentDrawAmps());
-
-    inputs.odometryTimestamps = new double[] {Timer.getFPGATimestamp()};
-    inputs.odometryDrivePositionsRad = new double[] {inputs.drivePositionRad};
-    inputs.odometryTurnPositions = new Rotation2d[] {inputs.turnPosition};
+    inputs.turnCurrentAmps = Math.abs(turnMotor.getCurrentAmps(turnAppliedVolts));
   }
 
   @Override
   public void runDriveVelocity(double velocityRadPerSec) {
-    driveAppliedVolts =
-        driveController.calculate(driveSim.getAngularVelocityRadPerSec(), velocityRadPerSec)
-            + ff.calculate(velocityRadPerSec);
-    driveSim.setInputVoltage(driveAppliedVolts);
+    driveVelocitySetpoint = velocityRadPerSec;
+    driveFeedforwardVolts = ff.calculate(velocityRadPerSec);
   }
 
   @Override
   public void runDriveVoltage(double voltage) {
+    driveVelocitySetpoint = Double.NaN;
     driveAppliedVolts = voltage;
-    driveSim.setInputVoltage(voltage);
   }
 
   @Override
   public void setTurnPosition(Rotation2d rotation) {
-    turnAppliedVolts =
-        turnController.calculate(turnSim.getAngularPositionRad(), rotation.getRadians());
-    turnSim.setInputVoltage(turnAppliedVolts);
+    turnPositionSetpoint = rotation.getRadians();
   }
 
   @Override
   public void runTurnVoltage(double voltage) {
+    turnPositionSetpoint = Double.NaN;
     turnAppliedVolts = voltage;
-    turnSim.setInputVoltage(voltage);
+  }
+
+  /**
+   * A geared DC motor with an inertial load, the same model as {@link
+   * edu.wpi.first.math.system.plant.LinearSystemId#createDCMotorSystem(DCMotor, double, double)}.
+   * The velocity follows dv/dt = a * v + b * V, so over a step with constant voltage it decays
+   * exponentially towards -b * V / a, which is solved exactly instead of numerically integrated.
+   */
+  private static class MotorModel {
+    private final DCMotor motor;
+    private final double gearing;
+    private final double period;
+
+    // Per step: velocity decay, and the integral of it over the step
+    private final double decay;
+    private final double decayIntegral;
+    private final double steadyStatePerVolt;
+
+    private double position = 0.0; // Mechanism radians
+    private double velocity = 0.0; // Mechanism radians per second
+
+    private MotorModel(DCMotor motor, double moiKgMetersSquared, double gearing, double period) {
+      this.motor = motor;
+      this.gearing = gearing;
+      this.period = period;
+      double a =
+          -gearing
+              * gearing
+              * motor.KtNMPerAmp
+              / (motor.KvRadPerSecPerVolt * motor.rOhms * moiKgMetersSquared);
+      double b = gearing * motor.KtNMPerAmp / (motor.rOhms * moiKgMetersSquared);
+      decay = Math.exp(a * period);
+      decayIntegral = (decay - 1.0) / a;
+      steadyStatePerVolt = -b / a;
+    }
+
+    /** Step forward one period at a constant voltage. */
+    private void step(double volts) {
+      double steadyState = steadyStatePerVolt * volts;
+      double offset = velocity - steadyState;
+      position += steadyState * period + offset * decayIntegral;
+      velocity = steadyState + offset * decay;
+    }
+
+    private double getCurrentAmps(double volts) {
+      return motor.getCurrent(velocity * gearing, volts);
+    }
   }
 }
@@ -7,6 +7,7 @@
 package org.team2342.frc.subsystems.drive;
 
 import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.CANBus;
 import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.configs.CANcoderConfiguration;
 import com.ctre.phoenix6.configs.Slot0Configs;
@@ -28,10 +29,10 @@ import edu.wpi.first.units.measure.Angle;
 import edu.wpi.first.units.measure.AngularVelocity;
 import edu.wpi.first.units.measure.Current;
 import edu.wpi.first.units.measure.Voltage;
-import java.util.Queue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import org.team2342.frc.Constants.DriveConstants;
+import org.team2342.frc.subsystems.drive.PhoenixOdometry.SampleQueue;
 import org.team2342.frc.util.PhoenixUtils;
 
 /* ModuleIO implementation for dual TalonFX module with a CANcoder. */
@@ -60,9 +61,14 @@ public class ModuleIOTalonFX implements ModuleIO {
   private final StatusSignal<Current> turnCurrent;
 
   // High-frequency odometry queues
-  private final Queue<Double> timestampQueue;
-  private final Queue<Double> drivePositionQueue;
-  private final Queue<Double> turnPositionQueue;
+  private final SampleQueue drivePositionQueue;
+  private final SampleQueue turnPositionQueue;
+
+  // Reused arrays to drain the odometry queues into
+  private double[] drivePositionSamples = new double[0];
+  private double[] driveTimestampSamples = new double[0];
+  private double[] turnPositionSamples = new double[0];
+  private double[] turnTimestampSamples = new double[0];
 
   private final VoltageOut voltageRequest = new VoltageOut(0);
   private final VelocityVoltage driveRequest = new VelocityVoltage(0);
@@ -80,10 +86,11 @@ public class ModuleIOTalonFX implements ModuleIO {
   private final Debouncer turnConnectedDebounce = new Debouncer(0.5);
   private final Debouncer encoderConnectedDebounce = new Debouncer(0.5);
 
-  public ModuleIOTalonFX(int[] canIDArray, double encoderOffset) {
-    driveTalon = new TalonFX(canIDArray[0]);
-    turnTalon = new TalonFX(canIDArray[1]);
-    cancoder = new CANcoder(canIDArray[2]);
+  public ModuleIOTalonFX(
+      int[] canIDArray, double encoderOffset, CANBus bus, PhoenixOdometry odometry) {
+    driveTalon = new TalonFX(canIDArray[0], bus);
+    turnTalon = new TalonFX(canIDArray[1], bus);
+    cancoder = new CANcoder(canIDArray[2], bus);
     offset = encoderOffset;
 
     // Configure Drive
@@ -141,10 +148,9 @@ public class ModuleIOTalonFX implements ModuleIO {
 
     // Want position signals to run at higher frequency for odometry
     BaseStatusSignal.setUpdateFrequencyForAll(
-        DriveConstants.ODOMETRY_FREQUENCY, drivePosition, turnPosition);
-    timestampQueue = PhoenixOdometry.getInstance().makeTimestampQueue();
-    drivePositionQueue = PhoenixOdometry.getInstance().registerSignal(drivePosition.clone());
-    turnPositionQueue = PhoenixOdometry.getInstance().registerSignal(turnPosition.clone());
+        odometry.getFrequency(bus), drivePosition, turnPosition);
+    drivePositionQueue = odometry.registerSignal(bus, drivePosition.clone());
+    turnPositionQueue = odometry.registerSignal(bus, turnPosition.clone());
 
     BaseStatusSignal.setUpdateFrequencyForAll(
         50.0,
@@ -198,19 +204,27 @@ public class ModuleIOTalonFX implements ModuleIO {
     inputs.turnAppliedVolts = turnAppliedVolts.getValueAsDouble();
     inputs.turnCurrentAmps = turnCurrent.getValueAsDouble();
 
-    inputs.odometryTimestamps =
-        timestampQueue.stream().mapToDouble((Double value) -> value).toArray();
-    inputs.odometryDrivePositionsRad =
-        drivePositionQueue.stream()
-            .mapToDouble((Double value) -> Units.rotationsToRadians(value))
-            .toArray();
-    inputs.odometryTurnPositions =
-        turnPositionQueue.stream()
-            .map((Double value) -> Rotation2d.fromRotations(value))
-            .toArray(Rotation2d[]::new);
-    timestampQueue.clear();
-    drivePositionQueue.clear();
-    turnPositionQueue.clear();
+    // Queues can grow if the main loop falls behind, so keep the drain arrays large enough
+    int capacity = drivePositionQueue.getCapacity();
+    if (drivePositionSamples.length < capacity) {
+      drivePositionSamples = new double[capacity];
+      driveTimestampSamples = new double[capacity];
+      turnPositionSamples = new double[capacity];
+      turnTimestampSamples = new double[capacity];
+    }
+
+    // Both queues read from the same odometry frames, so they hold the same sample count
+    int sampleCount = drivePositionQueue.drainTo(drivePositionSamples, driveTimestampSamples);
+    turnPositionQueue.drainTo(turnPositionSamples, turnTimestampSamples);
+    inputs.odometryTimestamps = new double[sampleCount];
+    inputs.odometryDrivePositionsRad = new double[sampleCount];
+    inputs.odometryTurnPositions = new Rotation2d[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      // Drive and turn motors are on the same module, so treat them as captured together
+      inputs.odometryTimestamps[i] = (driveTimestampSamples[i] + turnTimestampSamples[i]) / 2.0;
+      inputs.odometryDrivePositionsRad[i] = Units.rotationsToRadians(drivePositionSamples[i]);
+      inputs.odometryTurnPositions[i] = Rotation2d.fromRotations(turnPositionSamples[i]);
+    }
   }
 
   @Override
@@ -7,109 +7,359 @@
 package org.team2342.frc.subsystems.drive;
 
 import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.CANBus;
 import edu.wpi.first.wpilibj.RobotController;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import org.littletonrobotics.junction.Logger;
 import org.team2342.frc.Constants.DriveConstants;
+import org.team2342.lib.logging.JitterHistogram;
+import org.team2342.lib.util.DoubleRingBuffer;
+import org.team2342.lib.util.ThreadUtils;
 
-/** Reads high-frequency measurements into queues for odometry. */
+/**
+ * Reads high-frequency measurements for odometry on separate threads, one per CAN bus.
+ *
+ * <p>Every time the signals on a bus update, that bus's worker publishes one frame holding a sample
+ * of each of its signals, along with the time each sample was captured, to a lock-free {@link
+ * DoubleRingBuffer}. Buses are read independently, so a slow bus never holds back a CAN FD bus. The
+ * main loop calls {@link #poll()} once per cycle to take all pending frames from every bus, then
+ * each IO reads its own signals out of them through a {@link SampleQueue}. Neither side ever waits
+ * on the other.
+ */
 @SuppressWarnings("unused")
-public class PhoenixOdometry extends Thread {
-  private final Lock signalLock = new ReentrantLock();
+public class PhoenixOdometry {
+  // Frame layout: average timestamp, timestamp spread, then a value and capture timestamp for each
+  // signal in registration order
+  private static final int FRAME_HEADER_SIZE = 2;
 
-  private BaseStatusSignal[] signals = new BaseStatusSignal[0];
+  private BusWorker[] workers = new BusWorker[0];
+  private boolean started = false;
 
-  private final List<Queue<Double>> measurementQueues = new ArrayList<>();
-  private final List<Queue<Double>> timestampQueues = new ArrayList<>();
+  // Applied by each worker when it starts, zero priority and negative CPU leave it unchanged
+  private int threadPriority = 0;
+  private int threadCpu = -1;
 
-  private static PhoenixOdometry instance = null;
+  /**
+   * Creates odometry with no buses. Each drivetrain owns one, shared with its IOs, so several
+   * drivetrains can run in the same program.
+   */
+  public PhoenixOdometry() {}
 
-  public static PhoenixOdometry getInstance() {
-    if (instance == null) instance = new PhoenixOdometry();
-    return instance;
+  /** Starts a worker thread for every bus with registered signals. */
+  public void start() {
+    if (started) return;
+    started = true;
+    for (BusWorker worker : workers) {
+      worker.priority = threadPriority;
+      worker.cpu = threadCpu;
+      worker.start();
+    }
   }
 
-  private PhoenixOdometry() {
-    setName("PhoenixOdometryThread");
-    setDaemon(true);
+  /**
+   * Requests real-time scheduling for every odometry worker, so they keep running on time while the
+   * main loop is busy. Only applies to the real robot. Must be called before {@link #start()}.
+   *
+   * @param priority Real-time priority from 1 (lowest) to 99 (highest)
+   * @param cpu Index of the CPU core to pin the workers to, or -1 to let them run on any core
+   */
+  public void setThreadPriority(int priority, int cpu) {
+    if (started) {
+      throw new IllegalStateException("Odometry thread priority must be set before starting");
+    }
+    threadPriority = priority;
+    threadCpu = cpu;
   }
 
-  @Override
-  public void start() {
-    if (timestampQueues.size() > 0) super.start();
+  /**
+   * Sets how often signals on a bus are read. Defaults to {@link
+   * DriveConstants#ODOMETRY_FREQUENCY_CANFD} for CAN FD buses and {@link
+   * DriveConstants#ODOMETRY_FREQUENCY_CAN} otherwise. Must be called before signals on the bus are
+   * registered, so their update frequency matches.
+   */
+  public void setFrequency(CANBus bus, double frequencyHz) {
+    getWorker(bus).frequency = frequencyHz;
+  }
+
+  /** Returns how often signals on a bus are read, in Hz. */
+  public double getFrequency(CANBus bus) {
+    return getWorker(bus).frequency;
+  }
+
+  /**
+   * Registers a signal to be read by the worker for its bus. The signal's update frequency should
+   * be set to {@link #getFrequency(CANBus)}.
+   */
+  public SampleQueue registerSignal(CANBus bus, BaseStatusSignal signal) {
+    return getWorker(bus).registerSignal(signal);
   }
 
-  /** Registers a signal to be read. */
-  public Queue<Double> registerSignal(BaseStatusSignal signal) {
-    Queue<Double> queue = new ArrayBlockingQueue<>(20);
-    signalLock.lock();
-    Drive.odometryLock.lock();
-    try {
-      BaseStatusSignal[] newSignals = new BaseStatusSignal[signals.length + 1];
-      System.arraycopy(signals, 0, newSignals, 0, signals.length);
-      newSignals[signals.length] = signal;
-      signals = newSignals;
-      measurementQueues.add(queue);
-    } finally {
-      signalLock.unlock();
-      Drive.odometryLock.unlock();
-    }
-    return queue;
+  /**
+   * Returns a new timestamp queue for a bus, holding the average capture time of all signals on the
+   * bus in each frame. Use {@link SampleQueue#drainTo(double[], double[])} to get the capture time
+   * of one signal.
+   */
+  public SampleQueue makeTimestampQueue(CANBus bus) {
+    return new SampleQueue(getWorker(bus), 0, 0);
   }
 
-  /** Returns a new timestamp queue. */
-  public Queue<Double> makeTimestampQueue() {
-    Queue<Double> queue = new ArrayBlockingQueue<>(20);
-    Drive.odometryLock.lock();
-    try {
-      timestampQueues.add(queue);
-    } finally {
-      Drive.odometryLock.unlock();
+  /**
+   * Takes every frame published on every bus since the last poll, making them available to the
+   * sample queues. Must be called once per cycle from the main loop, before any IO reads its
+   * samples.
+   */
+  public void poll() {
+    for (BusWorker worker : workers) {
+      worker.poll();
     }
-    return queue;
   }
 
-  @Override
-  public void run() {
-    while (true) {
+  /**
+   * Logs frame buffer statistics and the time spent handing frames between threads for each bus.
+   * Should be called from the main loop, since the logger isn't thread-safe.
+   */
+  public void logStatistics() {
+    for (BusWorker worker : workers) {
+      worker.logStatistics();
+    }
+  }
+
+  private BusWorker getWorker(CANBus bus) {
+    for (BusWorker worker : workers) {
+      if (worker.busName.equals(bus.getName())) {
+        return worker;
+      }
+    }
+    if (started) {
+      throw new IllegalStateException(
+          "Can't add odometry bus " + bus.getName() + " after odometry has started");
+    }
+
+    BusWorker[] newWorkers = new BusWorker[workers.length + 1];
+    System.arraycopy(workers, 0, newWorkers, 0, workers.length);
+    newWorkers[workers.length] = new BusWorker(bus);
+    workers = newWorkers;
+    return newWorkers[workers.length - 1];
+  }
+
+  private static DoubleRingBuffer makeFrameBuffer(int stride) {
+    return new DoubleRingBuffer(
+        DriveConstants.ODOMETRY_QUEUE_CAPACITY, stride, DriveConstants.ODOMETRY_OVERFLOW_POLICY);
+  }
+
+  /** Reads all registered signals on one CAN bus and publishes them as frames. */
+  private static class BusWorker extends Thread {
+    private final String busName;
+    private final boolean isCANFD;
+    private volatile double frequency;
+    private volatile int priority = 0;
+    private volatile int cpu = -1;
+    private volatile JitterHistogram jitter = null;
+
+    // Only guards registration against the worker thread, the main loop never takes it
+    private final Lock signalLock = new ReentrantLock();
+    private BaseStatusSignal[] signals = new BaseStatusSignal[0];
+
+    private volatile DoubleRingBuffer frames = makeFrameBuffer(FRAME_HEADER_SIZE);
+    private double[] frame = new double[FRAME_HEADER_SIZE];
+    private volatile double publishMicros = 0.0;
+
+    // Frames taken by the last poll, only used from the main loop
+    private double[] polledFrames = new double[0];
+    private int polledFrameCount = 0;
+    private int polledStride = FRAME_HEADER_SIZE;
+    private long pollCount = 0;
+    private double pollMicros = 0.0;
+    private double maxTimestampSpread = 0.0;
+
+    // Log keys, built once so logging doesn't concatenate strings every loop
+    private final String droppedFramesKey;
+    private final String highWaterMarkKey;
+    private final String drainRetriesKey;
+    private final String framesPerPollKey;
+    private final String pollMicrosKey;
+    private final String publishMicrosKey;
+    private final String maxTimestampSpreadKey;
+    private final String jitterKey;
+
+    private BusWorker(CANBus bus) {
+      busName = bus.getName();
+      String prefix = "PhoenixOdometry/" + busName + "/";
+      droppedFramesKey = prefix + "DroppedFrames";
+      highWaterMarkKey = prefix + "HighWaterMark";
+      drainRetriesKey = prefix + "DrainRetries";
+      framesPerPollKey = prefix + "FramesPerPoll";
+      pollMicrosKey = prefix + "PollMicros";
+      publishMicrosKey = prefix + "PublishMicros";
+      maxTimestampSpreadKey = prefix + "MaxTimestampSpreadMS";
+      jitterKey = prefix + "Jitter";
+      isCANFD = bus.isNetworkFD();
+      frequency =
+          isCANFD ? DriveConstants.ODOMETRY_FREQUENCY_CANFD : DriveConstants.ODOMETRY_FREQUENCY_CAN;
+      setName("PhoenixOdometry-" + busName);
+      setDaemon(true);
+    }
+
+    private SampleQueue registerSignal(BaseStatusSignal signal) {
       signalLock.lock();
       try {
-        if (DriveConstants.IS_CANFD && signals.length > 0) {
-          BaseStatusSignal.waitForAll(2.0 / DriveConstants.ODOMETRY_FREQUENCY, signals);
-        } else {
-          Thread.sleep((long) (1000.0 / DriveConstants.ODOMETRY_FREQUENCY));
-          if (signals.length > 0) BaseStatusSignal.refreshAll(signals);
-        }
-      } catch (Exception e) {
-        e.printStackTrace();
+        BaseStatusSignal[] newSignals = new BaseStatusSignal[signals.length + 1];
+        System.arraycopy(signals, 0, newSignals, 0, signals.length);
+        newSignals[signals.length] = signal;
+        signals = newSignals;
+
+        // Frames get wider, so start a new buffer. Signals are registered before the thread starts.
+        int stride = FRAME_HEADER_SIZE + signals.length * 2;
+        frames = makeFrameBuffer(stride);
+        frame = new double[stride];
+        return new SampleQueue(this, stride - 2, stride - 1);
       } finally {
         signalLock.unlock();
       }
+    }
+
+    @Override
+    public void start() {
+      if (signals.length > 0) {
+        // 20 us bins, covering two milliseconds early or late
+        jitter = new JitterHistogram(jitterKey, 1.0 / frequency, 20.0, 201);
+        super.start();
+      }
+    }
 
-      Drive.odometryLock.lock();
-      try {
-        double timestamp = RobotController.getFPGATime() / 1e6;
-        double totalLatency = 0.0;
-        for (BaseStatusSignal signal : signals) {
-          totalLatency += signal.getTimestamp().getLatency();
-        }
-        if (signals.length > 0) {
-          timestamp -= totalLatency / signals.length;
-        }
+    private void poll() {
+      long startNanos = System.nanoTime();
+      DoubleRingBuffer current = frames;
+      int size = current.getCapacity() * current.getStride();
+      if (polledFrames.length < size) {
+        // Buffer grew because the main loop fell behind
+        polledFrames = new double[size];
+      }
+      polledFrameCount = current.drainTo(polledFrames);
+      polledStride = current.getStride();
+      pollCount++;
+
+      maxTimestampSpread = 0.0;
+      for (int i = 0; i < polledFrameCount; i++) {
+        maxTimestampSpread = Math.max(maxTimestampSpread, polledFrames[i * polledStride + 1]);
+      }
+      pollMicros = (System.nanoTime() - startNanos) / 1e3;
+    }
+
+    private void logStatistics() {
+      DoubleRingBuffer current = frames;
+      Logger.recordOutput(droppedFramesKey, current.getDroppedCount());
+      Logger.recordOutput(highWaterMarkKey, current.getHighWaterMark());
+      Logger.recordOutput(drainRetriesKey, current.getRetryCount());
+      Logger.recordOutput(framesPerPollKey, polledFrameCount);
+      Logger.recordOutput(pollMicrosKey, pollMicros);
+      Logger.recordOutput(publishMicrosKey, publishMicros);
+      Logger.recordOutput(maxTimestampSpreadKey, maxTimestampSpread * 1000.0);
+      if (jitter != null) {
+        jitter.log();
+      }
+    }
+
+    @Override
+    public void run() {
+      // Scheduling can only be changed from the thread itself
+      if (priority > 0) ThreadUtils.setRealTimePriority(priority);
+      if (cpu >= 0) ThreadUtils.setAffinity(cpu);
+
+      while (true) {
+        signalLock.lock();
+        try {
+          // CAN FD buses can wait for the signals to arrive, others have to poll for them
+          if (isCANFD) {
+            BaseStatusSignal.waitForAll(2.0 / frequency, signals);
+          } else {
+            Thread.sleep((long) (1000.0 / frequency));
+            BaseStatusSignal.refreshAll(signals);
+          }
 
-        for (int i = 0; i < signals.length; i++) {
-          measurementQueues.get(i).offer(signals[i].getValueAsDouble());
+          long startNanos = System.nanoTime();
+          double now = RobotController.getFPGATime() / 1e6;
+          jitter.record(now);
+          double totalTimestamp = 0.0;
+          double minTimestamp = Double.POSITIVE_INFINITY;
+          double maxTimestamp = Double.NEGATIVE_INFINITY;
+          for (int i = 0; i < signals.length; i++) {
+            // Each device's frame arrives with its own latency
+            double timestamp = now - signals[i].getTimestamp().getLatency();
+            frame[FRAME_HEADER_SIZE + i * 2] = signals[i].getValueAsDouble();
+            frame[FRAME_HEADER_SIZE + i * 2 + 1] = timestamp;
+            totalTimestamp += timestamp;
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+          }
+          frame[0] = totalTimestamp / signals.length;
+          frame[1] = maxTimestamp - minTimestamp;
+          frames.offer(frame);
+          publishMicros = (System.nanoTime() - startNanos) / 1e3;
+        } catch (Exception e) {
+          e.printStackTrace();
+        } finally {
+          signalLock.unlock();
         }
-        for (int i = 0; i < timestampQueues.size(); i++) {
-          timestampQueues.get(i).offer(timestamp);
+      }
+    }
+  }
+
+  /** Reads the samples of one signal from the frames taken by the last {@link #poll()}. */
+  public static class SampleQueue {
+    private final BusWorker worker;
+    private final int valueColumn;
+    private final int timestampColumn;
+    private long lastReadPoll = 0;
+
+    private SampleQueue(BusWorker worker, int valueColumn, int timestampColumn) {
+      this.worker = worker;
+      this.valueColumn = valueColumn;
+      this.timestampColumn = timestampColumn;
+    }
+
+    /**
+     * Copy the samples from the last poll into the given array, oldest first. Each poll's samples
+     * are only returned once. Must only be called from the main loop.
+     *
+     * @param destination Caller-owned array to copy samples into, starting at index 0
+     * @return The number of samples copied
+     */
+    public int drainTo(double[] destination) {
+      return drainTo(destination, null);
+    }
+
+    /**
+     * Copy the samples from the last poll and the time each one was captured into the given arrays,
+     * oldest first. Each poll's samples are only returned once. Must only be called from the main
+     * loop.
+     *
+     * @param destination Caller-owned array to copy samples into, starting at index 0
+     * @param timestamps Caller-owned array to copy capture timestamps into, or null to skip them
+     * @return The number of samples copied
+     */
+    public int drainTo(double[] destination, double[] timestamps) {
+      if (lastReadPoll == worker.pollCount) {
+        return 0;
+      }
+      lastReadPoll = worker.pollCount;
+
+      double[] frames = worker.polledFrames;
+      int stride = worker.polledStride;
+      int count = Math.min(worker.polledFrameCount, destination.length);
+      for (int i = 0; i < count; i++) {
+        destination[i] = frames[i * stride + valueColumn];
+        if (timestamps != null) {
+          timestamps[i] = frames[i * stride + timestampColumn];
         }
-      } finally {
-        Drive.odometryLock.unlock();
       }
+      return count;
+    }
+
+    /** Returns the most samples a single poll can currently return. */
+    public int getCapacity() {
+      return worker.frames.getCapacity();
     }
   }
 }
@@ -0,0 +1,129 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.frc.subsystems.vision;
+
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import java.util.function.Supplier;
+
+/**
+ * Rejects observations the robot couldn't have reached from the fused pose estimate.
+ *
+ * <p>Each observation is compared to the estimate at the time it was taken. The estimate can only
+ * have drifted by as much as the robot has moved since vision last corrected it, so the allowed
+ * error is a fixed tolerance plus the measured speed (and a margin for motion the wheels don't see,
+ * like being pushed) times the time since the last observation this filter passed. Until an
+ * observation has passed, or while there is no pose history, everything passes.
+ *
+ * <p>If the estimate itself is wrong, for example after starting from the wrong pose, vision would
+ * never be let through to fix it. So once enough observations in a row fail while agreeing with
+ * each other, by the same allowed error, the last of them and any that keep agreeing pass until one
+ * is consistent with the estimate again. {@link #reset()} forgets the last passed observation, and
+ * should be called when the pose is reset.
+ */
+public class MotionConsistencyFilter implements ObservationFilter {
+  /** Lookup of the fused pose estimate at a past time. */
+  @FunctionalInterface
+  public static interface PoseHistory {
+    /** Writes the pose at the given time to out as (x, y, theta), returning false if unknown. */
+    public boolean sampleAt(double timestampSeconds, double[] out);
+  }
+
+  private final PoseHistory poseHistory;
+  private final Supplier<ChassisSpeeds> speeds;
+  private final double toleranceMeters;
+  private final double speedMarginMetersPerSec;
+  private final int recoveryCount;
+
+  private final double[] estimate = new double[3];
+  private double lastPassedTimestamp = Double.NaN;
+
+  // Rejected observations in a row that agree with each other, and the last of them
+  private int agreeingRejections = 0;
+  private double lastRejectedTimestamp = 0.0;
+  private double lastRejectedX = 0.0;
+  private double lastRejectedY = 0.0;
+
+  /**
+   * Create a new filter.
+   *
+   * @param poseHistory Fused pose estimate history
+   * @param speeds Measured robot-relative chassis speeds
+   * @param toleranceMeters Error always allowed, in meters
+   * @param speedMarginMetersPerSec Speed added to the measured speed for unmeasured motion
+   * @param recoveryCount Rejected observations in a row that agree with each other needed to pass
+   *     the last of them anyway
+   */
+  public MotionConsistencyFilter(
+      PoseHistory poseHistory,
+      Supplier<ChassisSpeeds> speeds,
+      double toleranceMeters,
+      double speedMarginMetersPerSec,
+      int recoveryCount) {
+    this.poseHistory = poseHistory;
+    this.speeds = speeds;
+    this.toleranceMeters = toleranceMeters;
+    this.speedMarginMetersPerSec = speedMarginMetersPerSec;
+    this.recoveryCount = recoveryCount;
+  }
+
+  /** Forget the last passed observation, so the next one passes. Call when the pose is reset. */
+  public void reset() {
+    lastPassedTimestamp = Double.NaN;
+    agreeingRejections = 0;
+  }
+
+  @Override
+  public void apply(ObservationBatch batch) {
+    if (batch.size() == 0) return;
+
+    ChassisSpeeds measured = speeds.get();
+    double speed =
+        Math.hypot(measured.vxMetersPerSecond, measured.vyMetersPerSecond)
+            + speedMarginMetersPerSec;
+
+    for (int i = 0; i < batch.size(); i++) {
+      if (batch.isRejected(i)) continue;
+
+      double timestamp = batch.getTimestamp(i);
+      if (!poseHistory.sampleAt(timestamp, estimate)) continue;
+
+      if (!Double.isNaN(lastPassedTimestamp)) {
+        double allowedError = toleranceMeters + speed * Math.abs(timestamp - lastPassedTimestamp);
+        double error = Math.hypot(batch.getX(i) - estimate[0], batch.getY(i) - estimate[1]);
+        if (error <= allowedError) {
+          agreeingRejections = 0;
+        } else if (!recovered(batch, i, speed)) {
+          batch.reject(i);
+          continue;
+        }
+      }
+      lastPassedTimestamp =
+          Double.isNaN(lastPassedTimestamp) ? timestamp : Math.max(lastPassedTimestamp, timestamp);
+    }
+  }
+
+  /**
+   * Counts an observation that failed the gate, returning true if enough in a row have agreed with
+   * each other that the estimate is more likely wrong than they are.
+   */
+  private boolean recovered(ObservationBatch batch, int i, double speed) {
+    double timestamp = batch.getTimestamp(i);
+    double x = batch.getX(i);
+    double y = batch.getY(i);
+    if (agreeingRejections > 0
+        && Math.hypot(x - lastRejectedX, y - lastRejectedY)
+            <= toleranceMeters + speed * Math.abs(timestamp - lastRejectedTimestamp)) {
+      agreeingRejections++;
+    } else {
+      agreeingRejections = 1;
+    }
+    lastRejectedTimestamp = timestamp;
+    lastRejectedX = x;
+    lastRejectedY = y;
+    return agreeingRejections >= recoveryCount;
+  }
+}
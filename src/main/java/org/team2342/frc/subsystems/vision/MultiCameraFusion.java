@@ -0,0 +1,431 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.frc.subsystems.vision;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.math.numbers.N3;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import org.photonvision.estimation.TargetModel;
+import org.team2342.frc.subsystems.vision.MotionConsistencyFilter.PoseHistory;
+import org.team2342.frc.subsystems.vision.VisionIO.PoseObservation;
+import org.team2342.frc.subsystems.vision.VisionIO.PoseObservationType;
+import org.team2342.lib.estimation.PoseMath;
+import org.team2342.lib.util.AllianceUtils;
+import org.team2342.lib.util.CameraParameters;
+
+/**
+ * Solves one robot pose from the tag corners seen by all cameras at about the same time.
+ *
+ * <p>The newest frame from each camera within a time window of the newest corners is used. The
+ * robot pose is constrained to the floor, and (x, y, heading) is found by Gauss-Newton on the
+ * reprojection error of every corner, through each camera's position on the robot, intrinsics and
+ * OpenCV distortion model. Robot motion between the frames is taken from the pose history, so the
+ * frames don't need to be synchronized. The fused pose estimate is used as the initial guess.
+ */
+public class MultiCameraFusion {
+  private static final int MAX_ITERATIONS = 10;
+  private static final double CONVERGENCE_TOLERANCE = 1e-7;
+  private static final double JACOBIAN_STEP = 1e-6;
+  private static final double MIN_DEPTH = 1e-3;
+
+  private final int cameraCount;
+  private final PoseHistory poseHistory;
+  private final double windowSeconds;
+  private final int minTags;
+  private final double maxResidualPixels;
+
+  // Per camera: position on the robot, robot-to-camera rotation matrix (row major), intrinsics
+  // (fx, fy, cx, cy) and distortion (k1, k2, p1, p2, k3, k4, k5, k6)
+  private final double[][] cameraTranslations;
+  private final double[][] cameraRotations;
+  private final double[][] intrinsics;
+  private final double[][] distortion;
+
+  // Field-frame corners of each tag, rebuilt when the tag's pose changes
+  private Pose3d[] cachedTagPoses = new Pose3d[0];
+  private double[][] tagCorners = new double[0][];
+
+  // Points used in the current solve
+  private int pointCount = 0;
+  private int[] pointCameras = new int[64];
+  private double[] fieldPoints = new double[64 * 3];
+  private double[] pixels = new double[64 * 2];
+
+  // Robot motion from the reference time to each camera's frame, as a robot-relative (x, y, theta)
+  private final double[][] frameOffsets;
+  private final double[] frameTimestamps;
+
+  // Frame used from each camera by the last successful solve, NaN if none
+  private final double[] usedFrameTimestamps;
+
+  private final double[] reference = new double[3];
+  private final double[] scratch = new double[3];
+  private final double[] pose = new double[3];
+  private final double[] trial = new double[3];
+  private final double[] projected = new double[2];
+  private final double[] cameraPoint = new double[3];
+
+  /**
+   * Create a new fusion stage.
+   *
+   * @param cameras Parameters of each camera, in the same order as the vision IOs
+   * @param poseHistory Fused pose estimate history, for the initial guess and motion between frames
+   * @param windowSeconds How far before the newest frame to use frames from other cameras
+   * @param minTags Fewest tags across all cameras to solve with
+   * @param maxResidualPixels Largest RMS reprojection error to accept a solution with
+   */
+  public MultiCameraFusion(
+      CameraParameters[] cameras,
+      PoseHistory poseHistory,
+      double windowSeconds,
+      int minTags,
+      double maxResidualPixels) {
+    this.cameraCount = cameras.length;
+    this.poseHistory = poseHistory;
+    this.windowSeconds = windowSeconds;
+    this.minTags = minTags;
+    this.maxResidualPixels = maxResidualPixels;
+
+    cameraTranslations = new double[cameraCount][3];
+    cameraRotations = new double[cameraCount][9];
+    intrinsics = new double[cameraCount][4];
+    distortion = new double[cameraCount][8];
+    frameOffsets = new double[cameraCount][3];
+    frameTimestamps = new double[cameraCount];
+    usedFrameTimestamps = new double[cameraCount];
+    Arrays.fill(usedFrameTimestamps, Double.NaN);
+    for (int c = 0; c < cameraCount; c++) {
+      Transform3d robotToCamera = cameras[c].getTransform();
+      cameraTranslations[c][0] = robotToCamera.getX();
+      cameraTranslations[c][1] = robotToCamera.getY();
+      cameraTranslations[c][2] = robotToCamera.getZ();
+      Matrix<N3, N3> rotation = robotToCamera.getRotation().toMatrix();
+      for (int i = 0; i < 9; i++) {
+        cameraRotations[c][i] = rotation.get(i / 3, i % 3);
+      }
+
+      Matrix<N3, N3> cameraMatrix = cameras[c].getCameraMatrix();
+      intrinsics[c][0] = cameraMatrix.get(0, 0);
+      intrinsics[c][1] = cameraMatrix.get(1, 1);
+      intrinsics[c][2] = cameraMatrix.get(0, 2);
+      intrinsics[c][3] = cameraMatrix.get(1, 2);
+      for (int i = 0; i < 8; i++) {
+        distortion[c][i] = cameras[c].getDistCoeffs().get(i, 0);
+      }
+    }
+  }
+
+  /**
+   * Solve a pose from this cycle's corners.
+   *
+   * @param inputs Inputs of each camera, in the same order as the camera parameters
+   * @return The fused observation, or an empty optional if there weren't enough tags or the solve
+   *     didn't converge to a good solution
+   */
+  public Optional<PoseObservation> fuse(VisionIO.VisionIOInputs[] inputs) {
+    Arrays.fill(usedFrameTimestamps, Double.NaN);
+    Optional<PoseObservation> observation = solve(inputs);
+    if (observation.isEmpty()) {
+      Arrays.fill(usedFrameTimestamps, Double.NaN);
+    }
+    return observation;
+  }
+
+  /**
+   * Returns the timestamp of the frame from a camera used by the last call to {@link
+   * #fuse(VisionIO.VisionIOInputs[])}, or NaN if that camera's corners weren't used or there was no
+   * solution. Matches the timestamp of the camera's own pose observation from the same frame.
+   */
+  public double getUsedFrameTimestamp(int camera) {
+    return camera >= 0 && camera < cameraCount ? usedFrameTimestamps[camera] : Double.NaN;
+  }
+
+  private Optional<PoseObservation> solve(VisionIO.VisionIOInputs[] inputs) {
+    int cameras = Math.min(cameraCount, inputs.length);
+
+    // Newest frame from any camera
+    double referenceTimestamp = Double.NEGATIVE_INFINITY;
+    for (int c = 0; c < cameras; c++) {
+      for (double timestamp : inputs[c].cornerTimestamps) {
+        referenceTimestamp = Math.max(referenceTimestamp, timestamp);
+      }
+    }
+    if (referenceTimestamp == Double.NEGATIVE_INFINITY
+        || !poseHistory.sampleAt(referenceTimestamp, reference)) {
+      return Optional.empty();
+    }
+
+    // Newest frame from each camera within the window
+    pointCount = 0;
+    int tagCount = 0;
+    for (int c = 0; c < cameras; c++) {
+      frameTimestamps[c] = Double.NEGATIVE_INFINITY;
+      for (double timestamp : inputs[c].cornerTimestamps) {
+        if (timestamp >= referenceTimestamp - windowSeconds) {
+          frameTimestamps[c] = Math.max(frameTimestamps[c], timestamp);
+        }
+      }
+      if (frameTimestamps[c] == Double.NEGATIVE_INFINITY) continue;
+
+      // Motion from the reference time to this frame
+      if (poseHistory.sampleAt(frameTimestamps[c], scratch)) {
+        PoseMath.transformBy(
+            0.0,
+            0.0,
+            0.0,
+            reference[0],
+            reference[1],
+            reference[2],
+            scratch[0],
+            scratch[1],
+            scratch[2],
+            frameOffsets[c]);
+      } else {
+        Arrays.fill(frameOffsets[c], 0.0);
+      }
+
+      for (int tag = 0; tag < inputs[c].cornerTagIds.length; tag++) {
+        if (inputs[c].cornerTimestamps[tag] != frameTimestamps[c]) continue;
+        double[] corners = getTagCorners(inputs[c].cornerTagIds[tag]);
+        if (corners == null) continue;
+        for (int corner = 0; corner < 4; corner++) {
+          addPoint(
+              c,
+              corners[corner * 3],
+              corners[corner * 3 + 1],
+              corners[corner * 3 + 2],
+              inputs[c].cornerPixels[tag * 8 + corner * 2],
+              inputs[c].cornerPixels[tag * 8 + corner * 2 + 1]);
+        }
+        usedFrameTimestamps[c] = frameTimestamps[c];
+        tagCount++;
+      }
+    }
+    if (tagCount < minTags) {
+      return Optional.empty();
+    }
+
+    // Gauss-Newton from the current estimate
+    System.arraycopy(reference, 0, pose, 0, 3);
+    double residual = Double.NaN;
+    for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+      residual = step();
+      if (Double.isNaN(residual)) {
+        return Optional.empty();
+      }
+      if (Math.abs(trial[0]) + Math.abs(trial[1]) + Math.abs(trial[2]) < CONVERGENCE_TOLERANCE) {
+        break;
+      }
+    }
+    residual = rmsResidual(pose);
+    if (Double.isNaN(residual) || residual > maxResidualPixels) {
+      return Optional.empty();
+    }
+
+    return Optional.of(
+        new PoseObservation(
+            referenceTimestamp,
+            new Pose3d(pose[0], pose[1], 0.0, new Rotation3d(0.0, 0.0, pose[2])),
+            0.0,
+            tagCount,
+            averageDistance(),
+            PoseObservationType.MULTI_CAMERA));
+  }
+
+  /**
+   * Take one Gauss-Newton step, updating the pose and leaving the step in {@link #trial}. Returns
+   * NaN if the normal equations are singular or a point is behind its camera.
+   */
+  private double step() {
+    // Normal equations J^T J and J^T r, upper triangle only
+    double a00 = 0, a01 = 0, a02 = 0, a11 = 0, a12 = 0, a22 = 0;
+    double b0 = 0, b1 = 0, b2 = 0;
+    double sumSquares = 0;
+    for (int p = 0; p < pointCount; p++) {
+      if (!project(p, pose[0], pose[1], pose[2])) return Double.NaN;
+      double ru = projected[0] - pixels[p * 2];
+      double rv = projected[1] - pixels[p * 2 + 1];
+      double u = projected[0];
+      double v = projected[1];
+      sumSquares += ru * ru + rv * rv;
+
+      // Forward differences for each parameter
+      if (!project(p, pose[0] + JACOBIAN_STEP, pose[1], pose[2])) return Double.NaN;
+      double ju0 = (projected[0] - u) / JACOBIAN_STEP;
+      double jv0 = (projected[1] - v) / JACOBIAN_STEP;
+      if (!project(p, pose[0], pose[1] + JACOBIAN_STEP, pose[2])) return Double.NaN;
+      double ju1 = (projected[0] - u) / JACOBIAN_STEP;
+      double jv1 = (projected[1] - v) / JACOBIAN_STEP;
+      if (!project(p, pose[0], pose[1], pose[2] + JACOBIAN_STEP)) return Double.NaN;
+      double ju2 = (projected[0] - u) / JACOBIAN_STEP;
+      double jv2 = (projected[1] - v) / JACOBIAN_STEP;
+
+      a00 += ju0 * ju0 + jv0 * jv0;
+      a01 += ju0 * ju1 + jv0 * jv1;
+      a02 += ju0 * ju2 + jv0 * jv2;
+      a11 += ju1 * ju1 + jv1 * jv1;
+      a12 += ju1 * ju2 + jv1 * jv2;
+      a22 += ju2 * ju2 + jv2 * jv2;
+      b0 += ju0 * ru + jv0 * rv;
+      b1 += ju1 * ru + jv1 * rv;
+      b2 += ju2 * ru + jv2 * rv;
+    }
+
+    // Solve (J^T J) step = -J^T r by Cramer's rule
+    double c00 = a11 * a22 - a12 * a12;
+    double c01 = a02 * a12 - a01 * a22;
+    double c02 = a01 * a12 - a02 * a11;
+    double determinant = a00 * c00 + a01 * c01 + a02 * c02;
+    if (Math.abs(determinant) < 1e-12) return Double.NaN;
+    double c11 = a00 * a22 - a02 * a02;
+    double c12 = a01 * a02 - a00 * a12;
+    double c22 = a00 * a11 - a01 * a01;
+    trial[0] = -(c00 * b0 + c01 * b1 + c02 * b2) / determinant;
+    trial[1] = -(c01 * b0 + c11 * b1 + c12 * b2) / determinant;
+    trial[2] = -(c02 * b0 + c12 * b1 + c22 * b2) / determinant;
+
+    pose[0] += trial[0];
+    pose[1] += trial[1];
+    pose[2] += trial[2];
+    return Math.sqrt(sumSquares / pointCount);
+  }
+
+  /** Returns the RMS reprojection error at a pose in pixels, or NaN if a point is behind. */
+  private double rmsResidual(double[] robotPose) {
+    double sumSquares = 0;
+    for (int p = 0; p < pointCount; p++) {
+      if (!project(p, robotPose[0], robotPose[1], robotPose[2])) return Double.NaN;
+      double ru = projected[0] - pixels[p * 2];
+      double rv = projected[1] - pixels[p * 2 + 1];
+      sumSquares += ru * ru + rv * rv;
+    }
+    return Math.sqrt(sumSquares / pointCount);
+  }
+
+  /** Returns the average distance from each point's camera to the point, in meters. */
+  private double averageDistance() {
+    double total = 0;
+    for (int p = 0; p < pointCount; p++) {
+      toCamera(p, pose[0], pose[1], pose[2]);
+      total +=
+          Math.sqrt(
+              cameraPoint[0] * cameraPoint[0]
+                  + cameraPoint[1] * cameraPoint[1]
+                  + cameraPoint[2] * cameraPoint[2]);
+    }
+    return total / pointCount;
+  }
+
+  /**
+   * Projects a point into its camera's image with the robot at the given pose at the reference
+   * time, writing the pixel to {@link #projected}. Returns false if the point is behind the camera.
+   */
+  private boolean project(int p, double x, double y, double theta) {
+    toCamera(p, x, y, theta);
+
+    // Camera frame is NWU (x forward, y left, z up), OpenCV is x right, y down, z forward
+    double depth = cameraPoint[0];
+    if (depth < MIN_DEPTH) return false;
+    double xn = -cameraPoint[1] / depth;
+    double yn = -cameraPoint[2] / depth;
+
+    // OpenCV distortion model with 8 coefficients
+    int c = pointCameras[p];
+    double[] d = distortion[c];
+    double r2 = xn * xn + yn * yn;
+    double r4 = r2 * r2;
+    double r6 = r4 * r2;
+    double radial =
+        (1 + d[0] * r2 + d[1] * r4 + d[4] * r6) / (1 + d[5] * r2 + d[6] * r4 + d[7] * r6);
+    double xd = xn * radial + 2 * d[2] * xn * yn + d[3] * (r2 + 2 * xn * xn);
+    double yd = yn * radial + d[2] * (r2 + 2 * yn * yn) + 2 * d[3] * xn * yn;
+
+    double[] k = intrinsics[c];
+    projected[0] = k[0] * xd + k[2];
+    projected[1] = k[1] * yd + k[3];
+    return true;
+  }
+
+  /** Moves a field point into its camera's NWU frame, writing it to {@link #cameraPoint}. */
+  private void toCamera(int p, double x, double y, double theta) {
+    // Robot pose when the point's frame was taken
+    int c = pointCameras[p];
+    double[] offset = frameOffsets[c];
+    double cos = Math.cos(theta);
+    double sin = Math.sin(theta);
+    double robotX = x + offset[0] * cos - offset[1] * sin;
+    double robotY = y + offset[0] * sin + offset[1] * cos;
+    double robotTheta = theta + offset[2];
+
+    // Field to robot
+    double robotCos = Math.cos(robotTheta);
+    double robotSin = Math.sin(robotTheta);
+    double dx = fieldPoints[p * 3] - robotX;
+    double dy = fieldPoints[p * 3 + 1] - robotY;
+    double bx = dx * robotCos + dy * robotSin;
+    double by = -dx * robotSin + dy * robotCos;
+    double bz = fieldPoints[p * 3 + 2];
+
+    // Robot to camera, with the transpose of the camera's rotation
+    double[] t = cameraTranslations[c];
+    double[] r = cameraRotations[c];
+    double px = bx - t[0];
+    double py = by - t[1];
+    double pz = bz - t[2];
+    cameraPoint[0] = r[0] * px + r[3] * py + r[6] * pz;
+    cameraPoint[1] = r[1] * px + r[4] * py + r[7] * pz;
+    cameraPoint[2] = r[2] * px + r[5] * py + r[8] * pz;
+  }
+
+  private void addPoint(int camera, double x, double y, double z, double u, double v) {
+    if (pointCount == pointCameras.length) {
+      int capacity = pointCameras.length * 2;
+      pointCameras = Arrays.copyOf(pointCameras, capacity);
+      fieldPoints = Arrays.copyOf(fieldPoints, capacity * 3);
+      pixels = Arrays.copyOf(pixels, capacity * 2);
+    }
+    pointCameras[pointCount] = camera;
+    fieldPoints[pointCount * 3] = x;
+    fieldPoints[pointCount * 3 + 1] = y;
+    fieldPoints[pointCount * 3 + 2] = z;
+    pixels[pointCount * 2] = u;
+    pixels[pointCount * 2 + 1] = v;
+    pointCount++;
+  }
+
+  /**
+   * Returns the field-frame corners of a tag as (x, y, z) triples, in the same order PhotonVision
+   * reports detected corners, or null if the field layout doesn't have the tag.
+   */
+  private double[] getTagCorners(int id) {
+    Pose3d tagPose = AllianceUtils.getTagPose(id);
+    if (tagPose == null) return null;
+
+    if (id >= cachedTagPoses.length) {
+      cachedTagPoses = Arrays.copyOf(cachedTagPoses, id + 1);
+      tagCorners = Arrays.copyOf(tagCorners, id + 1);
+    }
+    if (cachedTagPoses[id] != tagPose) {
+      List<Translation3d> vertices = TargetModel.kAprilTag36h11.getFieldVertices(tagPose);
+      double[] corners = new double[12];
+      for (int i = 0; i < 4; i++) {
+        corners[i * 3] = vertices.get(i).getX();
+        corners[i * 3 + 1] = vertices.get(i).getY();
+        corners[i * 3 + 2] = vertices.get(i).getZ();
+      }
+      cachedTagPoses[id] = tagPose;
+      tagCorners[id] = corners;
+    }
+    return tagCorners[id];
+  }
+}
@@ -0,0 +1,195 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.frc.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import java.util.Arrays;
+import org.team2342.frc.subsystems.vision.VisionIO.PoseObservation;
+import org.team2342.frc.subsystems.vision.VisionIO.PoseObservationType;
+
+/**
+ * One cycle's pose observations from all cameras, stored as parallel primitive arrays for {@link
+ * ObservationFilter}s and {@link StdDevModel}s to run over.
+ *
+ * <p>Each observation starts out accepted. Filters reject observations with {@link #reject(int)},
+ * which records the filter that rejected it first. The arrays are reused between cycles.
+ */
+public class ObservationBatch {
+  /** Value of {@link #getRejectedBy(int)} for an accepted observation. */
+  public static final int ACCEPTED = -1;
+
+  /** Camera index of observations fused from several cameras. */
+  public static final int FUSED = -1;
+
+  private int size = 0;
+  private Pose3d[] poses = new Pose3d[8];
+  private double[] timestamps = new double[8];
+  private double[] xs = new double[8];
+  private double[] ys = new double[8];
+  private double[] zs = new double[8];
+  private double[] yaws = new double[8];
+  private double[] ambiguities = new double[8];
+  private int[] tagCounts = new int[8];
+  private double[] averageTagDistances = new double[8];
+  private PoseObservationType[] types = new PoseObservationType[8];
+  private int[] cameraIndices = new int[8];
+  private int[] rejectedBy = new int[8];
+  private double[] linearStdDevs = new double[8];
+  private double[] angularStdDevs = new double[8];
+
+  private int currentFilter = 0;
+  private int rejectedCount = 0;
+
+  /**
+   * Add an observation.
+   *
+   * @param cameraIndex Index of the camera it came from, or {@link #FUSED}
+   * @param observation Observation to add
+   */
+  public void add(int cameraIndex, PoseObservation observation) {
+    if (size == timestamps.length) {
+      grow();
+    }
+    Pose3d pose = observation.pose();
+    poses[size] = pose;
+    timestamps[size] = observation.timestamp();
+    xs[size] = pose.getX();
+    ys[size] = pose.getY();
+    zs[size] = pose.getZ();
+    yaws[size] = pose.getRotation().getZ();
+    ambiguities[size] = observation.ambiguity();
+    tagCounts[size] = observation.tagCount();
+    averageTagDistances[size] = observation.averageTagDistance();
+    types[size] = observation.type();
+    cameraIndices[size] = cameraIndex;
+    rejectedBy[size] = ACCEPTED;
+    linearStdDevs[size] = Double.POSITIVE_INFINITY;
+    angularStdDevs[size] = Double.POSITIVE_INFINITY;
+    size++;
+  }
+
+  /** Remove all observations, keeping the storage. */
+  public void clear() {
+    size = 0;
+    rejectedCount = 0;
+  }
+
+  /** Returns the number of observations. */
+  public int size() {
+    return size;
+  }
+
+  /** Set which filter subsequent rejections are attributed to. */
+  void setCurrentFilter(int filterIndex) {
+    currentFilter = filterIndex;
+  }
+
+  /** Reject an observation, if it hasn't been rejected already. */
+  public void reject(int i) {
+    if (rejectedBy[i] == ACCEPTED) {
+      rejectedBy[i] = currentFilter;
+      rejectedCount++;
+    }
+  }
+
+  /** Returns whether the observation has been rejected. */
+  public boolean isRejected(int i) {
+    return rejectedBy[i] != ACCEPTED;
+  }
+
+  /** Returns the index of the filter that rejected the observation, or {@link #ACCEPTED}. */
+  public int getRejectedBy(int i) {
+    return rejectedBy[i];
+  }
+
+  /** Returns the number of rejected observations. */
+  public int getRejectedCount() {
+    return rejectedCount;
+  }
+
+  /**
+   * Set the standard deviations of an observation.
+   *
+   * @param linearStdDev Standard deviation of the x and y position in meters
+   * @param angularStdDev Standard deviation of the heading in radians
+   */
+  public void setStdDevs(int i, double linearStdDev, double angularStdDev) {
+    linearStdDevs[i] = linearStdDev;
+    angularStdDevs[i] = angularStdDev;
+  }
+
+  public Pose3d getPose(int i) {
+    return poses[i];
+  }
+
+  public double getTimestamp(int i) {
+    return timestamps[i];
+  }
+
+  public double getX(int i) {
+    return xs[i];
+  }
+
+  public double getY(int i) {
+    return ys[i];
+  }
+
+  public double getZ(int i) {
+    return zs[i];
+  }
+
+  /** Returns the heading of the observed pose in radians. */
+  public double getYaw(int i) {
+    return yaws[i];
+  }
+
+  public double getAmbiguity(int i) {
+    return ambiguities[i];
+  }
+
+  public int getTagCount(int i) {
+    return tagCounts[i];
+  }
+
+  public double getAverageTagDistance(int i) {
+    return averageTagDistances[i];
+  }
+
+  public PoseObservationType getType(int i) {
+    return types[i];
+  }
+
+  public int getCameraIndex(int i) {
+    return cameraIndices[i];
+  }
+
+  public double getLinearStdDev(int i) {
+    return linearStdDevs[i];
+  }
+
+  public double getAngularStdDev(int i) {
+    return angularStdDevs[i];
+  }
+
+  private void grow() {
+    int capacity = timestamps.length * 2;
+    poses = Arrays.copyOf(poses, capacity);
+    timestamps = Arrays.copyOf(timestamps, capacity);
+    xs = Arrays.copyOf(xs, capacity);
+    ys = Arrays.copyOf(ys, capacity);
+    zs = Arrays.copyOf(zs, capacity);
+    yaws = Arrays.copyOf(yaws, capacity);
+    ambiguities = Arrays.copyOf(ambiguities, capacity);
+    tagCounts = Arrays.copyOf(tagCounts, capacity);
+    averageTagDistances = Arrays.copyOf(averageTagDistances, capacity);
+    types = Arrays.copyOf(types, capacity);
+    cameraIndices = Arrays.copyOf(cameraIndices, capacity);
+    rejectedBy = Arrays.copyOf(rejectedBy, capacity);
+    linearStdDevs = Arrays.copyOf(linearStdDevs, capacity);
+    angularStdDevs = Arrays.copyOf(angularStdDevs, capacity);
+  }
+}
@@ -0,0 +1,62 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.frc.subsystems.vision;
+
+import org.team2342.lib.util.AllianceUtils;
+
+/**
+ * A check that vision observations must pass to be used for pose estimation.
+ *
+ * <p>Filters run over a whole {@link ObservationBatch} at once and call {@link
+ * ObservationBatch#reject(int)} on the observations that fail. Observations already rejected by an
+ * earlier filter can be skipped.
+ */
+@FunctionalInterface
+public interface ObservationFilter {
+  /** Reject the observations in the batch that fail this filter. */
+  public void apply(ObservationBatch batch);
+
+  /** Rejects observations that saw fewer than the given number of tags. */
+  public static ObservationFilter minTagCount(int minTagCount) {
+    return batch -> {
+      for (int i = 0; i < batch.size(); i++) {
+        if (batch.getTagCount(i) < minTagCount) batch.reject(i);
+      }
+    };
+  }
+
+  /** Rejects single-tag observations with more than the given pose ambiguity. */
+  public static ObservationFilter maxSingleTagAmbiguity(double maxAmbiguity) {
+    return batch -> {
+      for (int i = 0; i < batch.size(); i++) {
+        if (batch.getTagCount(i) == 1 && batch.getAmbiguity(i) > maxAmbiguity) batch.reject(i);
+      }
+    };
+  }
+
+  /** Rejects observations with the robot further than the given distance off the floor. */
+  public static ObservationFilter maxZError(double maxZError) {
+    return batch -> {
+      for (int i = 0; i < batch.size(); i++) {
+        if (Math.abs(batch.getZ(i)) > maxZError) batch.reject(i);
+      }
+    };
+  }
+
+  /** Rejects observations with the robot outside the field. */
+  public static ObservationFilter fieldBounds() {
+    return batch -> {
+      double fieldLength = AllianceUtils.getFieldLength();
+      double fieldWidth = AllianceUtils.getFieldWidth();
+      for (int i = 0; i < batch.size(); i++) {
+        double x = batch.getX(i);
+        double y = batch.getY(i);
+        if (x < 0.0 || x > fieldLength || y < 0.0 || y > fieldWidth) batch.reject(i);
+      }
+    };
+  }
+}
@@ -0,0 +1,97 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.frc.subsystems.vision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Runs a chain of {@link ObservationFilter}s and then a {@link StdDevModel} over each cycle's
+ * observations, and logs how many observations each filter rejected and how long it took.
+ */
+public class ObservationPipeline {
+  private final String prefix;
+  private final String stdDevMicrosKey;
+  private StdDevModel stdDevModel;
+  private final List<ObservationFilter> filters = new ArrayList<>();
+  private final List<String> rejectedKeys = new ArrayList<>();
+  private final List<String> totalRejectedKeys = new ArrayList<>();
+  private final List<String> microsKeys = new ArrayList<>();
+
+  private int[] rejected = new int[0];
+  private long[] totalRejected = new long[0];
+  private double[] micros = new double[0];
+
+  /**
+   * Create a new pipeline with no filters.
+   *
+   * @param prefix Log key prefix, without a trailing slash
+   * @param stdDevModel Model used to set the standard deviations of accepted observations
+   */
+  public ObservationPipeline(String prefix, StdDevModel stdDevModel) {
+    this.prefix = prefix;
+    stdDevMicrosKey = prefix + "/StdDevModelMicros";
+    this.stdDevModel = stdDevModel;
+  }
+
+  /**
+   * Add a filter to the end of the chain.
+   *
+   * @param name Name to log the filter's statistics under
+   * @param filter Filter to add
+   * @return This pipeline, for chaining
+   */
+  public ObservationPipeline addFilter(String name, ObservationFilter filter) {
+    filters.add(filter);
+    rejectedKeys.add(prefix + "/" + name + "/Rejected");
+    totalRejectedKeys.add(prefix + "/" + name + "/TotalRejected");
+    microsKeys.add(prefix + "/" + name + "/Micros");
+    rejected = new int[filters.size()];
+    totalRejected = Arrays.copyOf(totalRejected, filters.size());
+    micros = new double[filters.size()];
+    return this;
+  }
+
+  /**
+   * Add a standard deviation model to run after the current one, for example to scale its results.
+   *
+   * @param model Model to add
+   * @return This pipeline, for chaining
+   */
+  public ObservationPipeline addStdDevModel(StdDevModel model) {
+    stdDevModel = stdDevModel.andThen(model);
+    return this;
+  }
+
+  /**
+   * Run the filters and the standard deviation model over a batch, then log the filter statistics.
+   */
+  public void process(ObservationBatch batch) {
+    for (int f = 0; f < filters.size(); f++) {
+      int rejectedBefore = batch.getRejectedCount();
+      long startNanos = System.nanoTime();
+      batch.setCurrentFilter(f);
+      filters.get(f).apply(batch);
+      micros[f] = (System.nanoTime() - startNanos) / 1e3;
+      rejected[f] = batch.getRejectedCount() - rejectedBefore;
+      totalRejected[f] += rejected[f];
+    }
+
+    long startNanos = System.nanoTime();
+    stdDevModel.apply(batch);
+    double stdDevMicros = (System.nanoTime() - startNanos) / 1e3;
+
+    for (int f = 0; f < filters.size(); f++) {
+      Logger.recordOutput(rejectedKeys.get(f), rejected[f]);
+      Logger.recordOutput(totalRejectedKeys.get(f), totalRejected[f]);
+      Logger.recordOutput(microsKeys.get(f), micros[f]);
+    }
+    Logger.recordOutput(stdDevMicrosKey, stdDevMicros);
+  }
+}
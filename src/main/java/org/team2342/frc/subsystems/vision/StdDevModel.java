@@ -0,0 +1,96 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.frc.subsystems.vision;
+
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import java.util.function.Supplier;
+import org.team2342.frc.subsystems.vision.VisionIO.PoseObservationType;
+
+/**
+ * Decides how much to trust each vision observation, by setting its standard deviations with {@link
+ * ObservationBatch#setStdDevs(int, double, double)}. Runs after all {@link ObservationFilter}s, and
+ * only needs to handle accepted observations.
+ */
+@FunctionalInterface
+public interface StdDevModel {
+  /** Set the standard deviations of the accepted observations in the batch. */
+  public void apply(ObservationBatch batch);
+
+  /** Returns a model that runs this model and then the given one, which can scale the result. */
+  public default StdDevModel andThen(StdDevModel next) {
+    return batch -> {
+      apply(batch);
+      next.apply(batch);
+    };
+  }
+
+  /**
+   * Scales up the standard deviations of accepted observations while the robot is rotating faster
+   * than a threshold, since motion blur and timestamp error make those less reliable. Meant to run
+   * after a model that sets the standard deviations.
+   *
+   * @param speeds Measured robot-relative chassis speeds
+   * @param thresholdRadPerSec Angular velocity above which to start scaling, in radians per second
+   * @param factorPerRadPerSec How much to add to the scale for each radian per second above the
+   *     threshold
+   */
+  public static StdDevModel inflateWhileRotating(
+      Supplier<ChassisSpeeds> speeds, double thresholdRadPerSec, double factorPerRadPerSec) {
+    return batch -> {
+      if (batch.size() == 0) return;
+      double excess = Math.abs(speeds.get().omegaRadiansPerSecond) - thresholdRadPerSec;
+      if (excess <= 0.0) return;
+
+      double scale = 1.0 + factorPerRadPerSec * excess;
+      for (int i = 0; i < batch.size(); i++) {
+        if (batch.isRejected(i)) continue;
+        batch.setStdDevs(i, batch.getLinearStdDev(i) * scale, batch.getAngularStdDev(i) * scale);
+      }
+    };
+  }
+
+  /**
+   * Standard deviations that grow with the square of the average tag distance and shrink with the
+   * number of tags.
+   *
+   * @param linearBaseline Linear standard deviation for one tag at one meter, in meters
+   * @param angularBaseline Angular standard deviation for one tag at one meter, in radians
+   * @param linearConstrainedFactor Multiplier for MegaTag 2 and constrained PnP linear std devs
+   * @param angularConstrainedFactor Multiplier for MegaTag 2 and constrained PnP angular std devs
+   * @param cameraFactors Multiplier for each camera, cameras past the end and fused observations
+   *     use 1.0
+   */
+  public static StdDevModel distanceSquared(
+      double linearBaseline,
+      double angularBaseline,
+      double linearConstrainedFactor,
+      double angularConstrainedFactor,
+      double[] cameraFactors) {
+    return batch -> {
+      for (int i = 0; i < batch.size(); i++) {
+        if (batch.isRejected(i)) continue;
+
+        double distance = batch.getAverageTagDistance(i);
+        double stdDevFactor = distance * distance / batch.getTagCount(i);
+        double linearStdDev = linearBaseline * stdDevFactor;
+        double angularStdDev = angularBaseline * stdDevFactor;
+        PoseObservationType type = batch.getType(i);
+        if (type == PoseObservationType.MEGATAG_2
+            || type == PoseObservationType.PHOTONVISION_CONSTRAINED) {
+          linearStdDev *= linearConstrainedFactor;
+          angularStdDev *= angularConstrainedFactor;
+        }
+        int cameraIndex = batch.getCameraIndex(i);
+        if (cameraIndex >= 0 && cameraIndex < cameraFactors.length) {
+          linearStdDev *= cameraFactors[cameraIndex];
+          angularStdDev *= cameraFactors[cameraIndex];
+        }
+        batch.setStdDevs(i, linearStdDev, angularStdDev);
+      }
+    };
+  }
+}
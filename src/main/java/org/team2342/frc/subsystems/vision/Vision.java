@@ -7,23 +7,17 @@
 
 package org.team2342.frc.subsystems.vision;
 
-import edu.wpi.first.math.Matrix;
-import edu.wpi.first.math.VecBuilder;
-import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.math.numbers.N1;
-import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.wpilibj.Alert;
 import edu.wpi.first.wpilibj.Alert.AlertType;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.function.Supplier;
 import org.littletonrobotics.junction.Logger;
 import org.team2342.frc.Constants.VisionConstants;
-import org.team2342.frc.subsystems.vision.VisionIO.PoseObservationType;
+import org.team2342.lib.estimation.VisionMeasurementBatch;
 import org.team2342.lib.logging.ExecutionLogger;
+import org.team2342.lib.logging.PoseLogBuffer;
 import org.team2342.lib.util.AllianceUtils;
 import org.team2342.lib.util.Timestamped;
 
@@ -33,6 +27,42 @@ public class Vision extends SubsystemBase {
   private final VisionIOInputsAutoLogged[] inputs;
   private final Alert[] disconnectedAlerts;
 
+  // Observations from all cameras, and the accepted ones, reused every cycle
+  private final ObservationBatch observations = new ObservationBatch();
+  private final VisionMeasurementBatch measurements = new VisionMeasurementBatch();
+
+  private final ObservationPipeline pipeline =
+      new ObservationPipeline(
+              "Vision/Filters",
+              StdDevModel.distanceSquared(
+                  VisionConstants.LINEAR_STD_DEV_BASELINE,
+                  VisionConstants.ANGULAR_STD_DEV_BASELINE,
+                  VisionConstants.LINEAR_STD_DEV_CONSTRAINED_FACTOR,
+                  VisionConstants.ANGULAR_STD_DEV_CONSTRAINED_FACTOR,
+                  VisionConstants.CAMERA_STD_DEV_FACTORS))
+          .addFilter("TagCount", ObservationFilter.minTagCount(1))
+          .addFilter(
+              "Ambiguity", ObservationFilter.maxSingleTagAmbiguity(VisionConstants.MAX_AMBIGUITY))
+          .addFilter("ZError", ObservationFilter.maxZError(VisionConstants.MAX_Z_ERROR))
+          .addFilter("FieldBounds", ObservationFilter.fieldBounds());
+
+  // Log keys and pose buffers, built once so logging doesn't allocate
+  private final String[] inputKeys;
+  private final PoseLogBuffer[] tagPoses;
+  private final PoseLogBuffer[] robotPoses;
+  private final PoseLogBuffer[] robotPosesAccepted;
+  private final PoseLogBuffer[] robotPosesRejected;
+  private final PoseLogBuffer allTagPoses;
+  private final PoseLogBuffer allRobotPoses;
+  private final PoseLogBuffer allRobotPosesAccepted;
+  private final PoseLogBuffer allRobotPosesRejected;
+
+  // Optional multi-camera solve, and its log buffers
+  private MultiCameraFusion fusion = null;
+  private final PoseLogBuffer fusedRobotPoses;
+  private final PoseLogBuffer fusedRobotPosesAccepted;
+  private final PoseLogBuffer fusedRobotPosesRejected;
+
   private final Supplier<Timestamped<Rotation2d>> timestampedHeading;
 
   public Vision(
@@ -57,6 +87,68 @@ public class Vision extends SubsystemBase {
           new Alert(
               "Vision camera " + Integer.toString(i) + " is disconnected.", AlertType.kWarning);
     }
+
+    // Initialize logging
+    int capacity = VisionConstants.MAX_LOGGED_POSES;
+    this.inputKeys = new String[io.length];
+    this.tagPoses = new PoseLogBuffer[io.length];
+    this.robotPoses = new PoseLogBuffer[io.length];
+    this.robotPosesAccepted = new PoseLogBuffer[io.length];
+    this.robotPosesRejected = new PoseLogBuffer[io.length];
+    for (int i = 0; i < io.length; i++) {
+      inputKeys[i] = "Vision/Camera" + Integer.toString(i);
+      tagPoses[i] = new PoseLogBuffer(inputKeys[i] + "/TagPoses", capacity);
+      robotPoses[i] = new PoseLogBuffer(inputKeys[i] + "/RobotPoses", capacity);
+      robotPosesAccepted[i] = new PoseLogBuffer(inputKeys[i] + "/RobotPosesAccepted", capacity);
+      robotPosesRejected[i] = new PoseLogBuffer(inputKeys[i] + "/RobotPosesRejected", capacity);
+    }
+    int summaryCapacity = capacity * Math.max(io.length, 1);
+    this.allTagPoses = new PoseLogBuffer("Vision/Summary/TagPoses", summaryCapacity);
+    this.allRobotPoses = new PoseLogBuffer("Vision/Summary/RobotPoses", summaryCapacity);
+    this.allRobotPosesAccepted =
+        new PoseLogBuffer("Vision/Summary/RobotPosesAccepted", summaryCapacity);
+    this.allRobotPosesRejected =
+        new PoseLogBuffer("Vision/Summary/RobotPosesRejected", summaryCapacity);
+    this.fusedRobotPoses = new PoseLogBuffer("Vision/Fused/RobotPoses", 1);
+    this.fusedRobotPosesAccepted = new PoseLogBuffer("Vision/Fused/RobotPosesAccepted", 1);
+    this.fusedRobotPosesRejected = new PoseLogBuffer("Vision/Fused/RobotPosesRejected", 1);
+  }
+
+  /**
+   * Solve one pose from the tag corners of all cameras each cycle. When the solve succeeds, it
+   * replaces the cameras' own observations from the frames it used.
+   *
+   * @param fusion Fusion stage to use
+   */
+  public void setFusion(MultiCameraFusion fusion) {
+    this.fusion = fusion;
+  }
+
+  /**
+   * Add a filter that observations must pass, after the default filters.
+   *
+   * @param name Name to log the filter's statistics under
+   * @param filter Filter to add
+   */
+  public void addObservationFilter(String name, ObservationFilter filter) {
+    pipeline.addFilter(name, filter);
+  }
+
+  /**
+   * Add a standard deviation model to run after the default one, for example to scale its results.
+   *
+   * @param model Model to add
+   */
+  public void addStdDevModel(StdDevModel model) {
+    pipeline.addStdDevModel(model);
+  }
+
+  /** Closes every camera IO and alert, for simulations that create many robots. */
+  public void close() {
+    for (int i = 0; i < io.length; i++) {
+      io[i].close();
+      disconnectedAlerts[i].close();
+    }
   }
 
   /**
@@ -76,113 +168,131 @@ public class Vision extends SubsystemBase {
 
     for (int i = 0; i < io.length; i++) {
       io[i].updateInputs(inputs[i], heading);
-      Logger.processInputs("Vision/Camera" + Integer.toString(i), inputs[i]);
+      Logger.processInputs(inputKeys[i], inputs[i]);
     }
 
     // Initialize logging values
-    List<Pose3d> allTagPoses = new LinkedList<>();
-    List<Pose3d> allRobotPoses = new LinkedList<>();
-    List<Pose3d> allRobotPosesAccepted = new LinkedList<>();
-    List<Pose3d> allRobotPosesRejected = new LinkedList<>();
+    allTagPoses.clear();
+    allRobotPoses.clear();
+    allRobotPosesAccepted.clear();
+    allRobotPosesRejected.clear();
+    measurements.clear();
+
+    // Solve one pose from all cameras
+    observations.clear();
+    if (fusion != null) {
+      var fused = fusion.fuse(inputs);
+      if (fused.isPresent()) {
+        observations.add(ObservationBatch.FUSED, fused.get());
+      }
+    }
 
-    // Loop over cameras
+    // Collect tag poses and observations from all cameras
     for (int cameraIndex = 0; cameraIndex < io.length; cameraIndex++) {
       // Update disconnected alert
       disconnectedAlerts[cameraIndex].set(!inputs[cameraIndex].connected);
 
       // Initialize logging values
-      List<Pose3d> tagPoses = new LinkedList<>();
-      List<Pose3d> robotPoses = new LinkedList<>();
-      List<Pose3d> robotPosesAccepted = new LinkedList<>();
-      List<Pose3d> robotPosesRejected = new LinkedList<>();
+      tagPoses[cameraIndex].clear();
+      robotPoses[cameraIndex].clear();
+      robotPosesAccepted[cameraIndex].clear();
+      robotPosesRejected[cameraIndex].clear();
 
       // Add tag poses
       for (int tagId : inputs[cameraIndex].tagIds) {
-        var tagPose = AllianceUtils.getFieldLayout().getTagPose(tagId);
-        if (tagPose.isPresent()) {
-          tagPoses.add(tagPose.get());
+        Pose3d tagPose = AllianceUtils.getTagPose(tagId);
+        if (tagPose != null) {
+          tagPoses[cameraIndex].add(tagPose);
         }
       }
 
-      // Loop over pose observations
       for (var observation : inputs[cameraIndex].poseObservations) {
-        // Check whether to reject pose
-        boolean rejectPose =
-            observation.tagCount() == 0 // Must have at least one tag
-                || (observation.tagCount() == 1
-                    && observation.ambiguity()
-                        > VisionConstants.MAX_AMBIGUITY) // Cannot be high ambiguity
-                || Math.abs(observation.pose().getZ())
-                    > VisionConstants.MAX_Z_ERROR // Must have realistic Z coordinate
-
-                // Must be within the field boundaries
-                || observation.pose().getX() < 0.0
-                || observation.pose().getX() > AllianceUtils.getFieldLayout().getFieldLength()
-                || observation.pose().getY() < 0.0
-                || observation.pose().getY() > AllianceUtils.getFieldLayout().getFieldWidth();
-
-        // Add pose to log
-        robotPoses.add(observation.pose());
-        if (rejectPose) {
-          robotPosesRejected.add(observation.pose());
-          // Skip if rejected
-          continue;
-        } else {
-          robotPosesAccepted.add(observation.pose());
-        }
+        observations.add(cameraIndex, observation);
+      }
+    }
 
-        // Calculate standard deviations
-        double stdDevFactor =
-            Math.pow(observation.averageTagDistance(), 2.0) / observation.tagCount();
-        double linearStdDev = VisionConstants.LINEAR_STD_DEV_BASELINE * stdDevFactor;
-        double angularStdDev = VisionConstants.ANGULAR_STD_DEV_BASELINE * stdDevFactor;
-        if (observation.type() == PoseObservationType.MEGATAG_2
-            || observation.type() == PoseObservationType.PHOTONVISION_CONSTRAINED) {
-          linearStdDev *= VisionConstants.LINEAR_STD_DEV_CONSTRAINED_FACTOR;
-          angularStdDev *= VisionConstants.ANGULAR_STD_DEV_CONSTRAINED_FACTOR;
-        }
-        if (cameraIndex < VisionConstants.CAMERA_STD_DEV_FACTORS.length) {
-          linearStdDev *= VisionConstants.CAMERA_STD_DEV_FACTORS[cameraIndex];
-          angularStdDev *= VisionConstants.CAMERA_STD_DEV_FACTORS[cameraIndex];
-        }
+    // Reject bad observations and calculate standard deviations
+    pipeline.process(observations);
 
-        // Send vision observation
-        consumer.accept(
-            observation.pose().toPose2d(),
-            observation.timestamp(),
-            VecBuilder.fill(linearStdDev, linearStdDev, angularStdDev));
+    // The fused observation is always first when there is one
+    boolean fusedAccepted =
+        observations.size() > 0
+            && observations.getCameraIndex(0) == ObservationBatch.FUSED
+            && !observations.isRejected(0);
+
+    // Loop over pose observations
+    fusedRobotPoses.clear();
+    fusedRobotPosesAccepted.clear();
+    fusedRobotPosesRejected.clear();
+    for (int i = 0; i < observations.size(); i++) {
+      int cameraIndex = observations.getCameraIndex(i);
+      Pose3d pose = observations.getPose(i);
+      boolean fused = cameraIndex == ObservationBatch.FUSED;
+
+      // Skip frames the accepted fused solve already used, so they aren't counted twice
+      if (fusedAccepted
+          && !fused
+          && observations.getTimestamp(i) == fusion.getUsedFrameTimestamp(cameraIndex)) {
+        robotPoses[cameraIndex].add(pose);
+        continue;
+      }
+
+      PoseLogBuffer posesLog = fused ? fusedRobotPoses : robotPoses[cameraIndex];
+      PoseLogBuffer acceptedLog = fused ? fusedRobotPosesAccepted : robotPosesAccepted[cameraIndex];
+      PoseLogBuffer rejectedLog = fused ? fusedRobotPosesRejected : robotPosesRejected[cameraIndex];
+
+      // Add pose to log
+      posesLog.add(pose);
+      if (observations.isRejected(i)) {
+        rejectedLog.add(pose);
+        // Skip if rejected
+        continue;
+      } else {
+        acceptedLog.add(pose);
       }
 
-      // Log camera data
-      Logger.recordOutput(
-          "Vision/Camera" + Integer.toString(cameraIndex) + "/TagPoses",
-          tagPoses.toArray(new Pose3d[tagPoses.size()]));
-      Logger.recordOutput(
-          "Vision/Camera" + Integer.toString(cameraIndex) + "/RobotPoses",
-          robotPoses.toArray(new Pose3d[robotPoses.size()]));
-      Logger.recordOutput(
-          "Vision/Camera" + Integer.toString(cameraIndex) + "/RobotPosesAccepted",
-          robotPosesAccepted.toArray(new Pose3d[robotPosesAccepted.size()]));
-      Logger.recordOutput(
-          "Vision/Camera" + Integer.toString(cameraIndex) + "/RobotPosesRejected",
-          robotPosesRejected.toArray(new Pose3d[robotPosesRejected.size()]));
-      allTagPoses.addAll(tagPoses);
-      allRobotPoses.addAll(robotPoses);
-      allRobotPosesAccepted.addAll(robotPosesAccepted);
-      allRobotPosesRejected.addAll(robotPosesRejected);
+      // Queue vision observation
+      measurements.add(
+          observations.getTimestamp(i),
+          observations.getX(i),
+          observations.getY(i),
+          observations.getYaw(i),
+          observations.getLinearStdDev(i),
+          observations.getLinearStdDev(i),
+          observations.getAngularStdDev(i));
+    }
+
+    // Log camera data
+    for (int cameraIndex = 0; cameraIndex < io.length; cameraIndex++) {
+      tagPoses[cameraIndex].log(VisionConstants.LOG_POSE_COUNTS_ONLY);
+      robotPoses[cameraIndex].log(VisionConstants.LOG_POSE_COUNTS_ONLY);
+      robotPosesAccepted[cameraIndex].log(VisionConstants.LOG_POSE_COUNTS_ONLY);
+      robotPosesRejected[cameraIndex].log(VisionConstants.LOG_POSE_COUNTS_ONLY);
+      allTagPoses.addAll(tagPoses[cameraIndex]);
+      allRobotPoses.addAll(robotPoses[cameraIndex]);
+      allRobotPosesAccepted.addAll(robotPosesAccepted[cameraIndex]);
+      allRobotPosesRejected.addAll(robotPosesRejected[cameraIndex]);
+    }
+    if (fusion != null) {
+      fusedRobotPoses.log(VisionConstants.LOG_POSE_COUNTS_ONLY);
+      fusedRobotPosesAccepted.log(VisionConstants.LOG_POSE_COUNTS_ONLY);
+      fusedRobotPosesRejected.log(VisionConstants.LOG_POSE_COUNTS_ONLY);
+      allRobotPoses.addAll(fusedRobotPoses);
+      allRobotPosesAccepted.addAll(fusedRobotPosesAccepted);
+      allRobotPosesRejected.addAll(fusedRobotPosesRejected);
     }
 
     // Log summary data
-    Logger.recordOutput(
-        "Vision/Summary/TagPoses", allTagPoses.toArray(new Pose3d[allTagPoses.size()]));
-    Logger.recordOutput(
-        "Vision/Summary/RobotPoses", allRobotPoses.toArray(new Pose3d[allRobotPoses.size()]));
-    Logger.recordOutput(
-        "Vision/Summary/RobotPosesAccepted",
-        allRobotPosesAccepted.toArray(new Pose3d[allRobotPosesAccepted.size()]));
-    Logger.recordOutput(
-        "Vision/Summary/RobotPosesRejected",
-        allRobotPosesRejected.toArray(new Pose3d[allRobotPosesRejected.size()]));
+    allTagPoses.log(VisionConstants.LOG_POSE_COUNTS_ONLY);
+    allRobotPoses.log(VisionConstants.LOG_POSE_COUNTS_ONLY);
+    allRobotPosesAccepted.log(VisionConstants.LOG_POSE_COUNTS_ONLY);
+    allRobotPosesRejected.log(VisionConstants.LOG_POSE_COUNTS_ONLY);
+
+    // Send all cameras' observations at once, so the estimator only replays its history once
+    Logger.recordOutput("Vision/Summary/MeasurementCount", measurements.size());
+    if (measurements.size() > 0) {
+      consumer.accept(measurements);
+    }
 
     // Record cycle time
     ExecutionLogger.log("Vision");
@@ -190,9 +300,6 @@ public class Vision extends SubsystemBase {
 
   @FunctionalInterface
   public static interface VisionConsumer {
-    public void accept(
-        Pose2d visionRobotPoseMeters,
-        double timestampSeconds,
-        Matrix<N3, N1> visionMeasurementStdDevs);
+    public void accept(VisionMeasurementBatch measurements);
   }
 }
@@ -12,7 +12,7 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import org.littletonrobotics.junction.AutoLog;
 import org.team2342.lib.util.Timestamped;
 
-public interface VisionIO {
+public interface VisionIO extends AutoCloseable {
   @AutoLog
   public static class VisionIOInputs {
     public boolean connected = false;
@@ -20,6 +20,11 @@ public interface VisionIO {
         new TargetObservation(new Rotation2d(), new Rotation2d());
     public PoseObservation[] poseObservations = new PoseObservation[0];
     public int[] tagIds = new int[0];
+
+    // Detected tag corners for multi-camera fusion, one entry per tag per frame
+    public double[] cornerTimestamps = new double[0];
+    public int[] cornerTagIds = new int[0];
+    public double[] cornerPixels = new double[0]; // 8 per tag, x then y of each corner
   }
 
   /** Represents the angle to a simple target, not used for pose estimation. */
@@ -38,8 +43,13 @@ public interface VisionIO {
     MEGATAG_1,
     MEGATAG_2,
     PHOTONVISION,
-    PHOTONVISION_CONSTRAINED
+    PHOTONVISION_CONSTRAINED,
+    MULTI_CAMERA
   }
 
   public default void updateInputs(VisionIOInputs inputs, Timestamped<Rotation2d> heading) {}
+
+  /** Releases the camera and anything else the IO holds. */
+  @Override
+  public default void close() {}
 }
@@ -8,24 +8,42 @@ package org.team2342.frc.subsystems.vision;
 
 import edu.wpi.first.apriltag.AprilTagFieldLayout;
 import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.math.numbers.N8;
 import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Notifier;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 import org.photonvision.EstimatedRobotPose;
 import org.photonvision.PhotonCamera;
 import org.photonvision.PhotonPoseEstimator;
 import org.photonvision.PhotonPoseEstimator.ConstrainedSolvepnpParams;
 import org.photonvision.PhotonPoseEstimator.PoseStrategy;
 import org.photonvision.targeting.PhotonTrackedTarget;
+import org.photonvision.targeting.TargetCorner;
+import org.team2342.frc.Constants.VisionConstants;
 import org.team2342.lib.util.CameraParameters;
 import org.team2342.lib.util.Timestamped;
 
-/** IO implementation for real PhotonVision hardware. */
+/**
+ * IO implementation for real PhotonVision hardware.
+ *
+ * <p>Solving poses from camera results can take several milliseconds. In worker mode, each camera
+ * reads and solves its results on its own thread, and {@link #updateInputs} only collects the
+ * finished observations. Either way the observations are passed through the inputs, so replay
+ * doesn't depend on thread timing.
+ */
 public class VisionIOPhoton implements VisionIO {
   protected final PhotonCamera camera;
   protected final CameraParameters parameters;
@@ -36,17 +54,47 @@ public class VisionIOPhoton implements VisionIO {
 
   private boolean hasEnabled = false;
 
+  // Calibration passed to every pose estimator update, only used by the solving thread
+  private Optional<Matrix<N3, N3>> cameraMatrix = null;
+  private Optional<Matrix<N8, N1>> distCoeffs = null;
+
+  // Finished results, written by whichever thread solves poses and read by the main thread
+  private final Queue<CameraResult> mailbox = new ConcurrentLinkedQueue<>();
+
+  // Only used in worker mode
+  private final Notifier worker;
+  private final AtomicReference<Timestamped<Rotation2d>> latestHeading = new AtomicReference<>();
+  private Timestamped<Rotation2d> lastWorkerHeading = null;
+
   public static final Optional<ConstrainedSolvepnpParams> CONSTRAINED_SOLVEPNP_PARAMETERS =
       Optional.of(new ConstrainedSolvepnpParams(false, 0.5));
 
   /**
-   * Creates a new VisionIOPhotonVision.
+   * Creates a new VisionIOPhotonVision, in worker mode if {@link
+   * VisionConstants#USE_CAMERA_WORKERS} is set.
    *
-   * @param name The configured name of the camera.
-   * @param robotToCamera The 3D position of the camera relative to the robot.
+   * @param parameters The camera's name, calibration and position relative to the robot.
+   * @param primaryStrategy The pose strategy to use once the robot has been enabled.
+   * @param disabledStrategy The pose strategy to use before the robot has been enabled.
    */
   public VisionIOPhoton(
       CameraParameters parameters, PoseStrategy primaryStrategy, PoseStrategy disabledStrategy) {
+    this(parameters, primaryStrategy, disabledStrategy, VisionConstants.USE_CAMERA_WORKERS);
+  }
+
+  /**
+   * Creates a new VisionIOPhotonVision.
+   *
+   * @param parameters The camera's name, calibration and position relative to the robot.
+   * @param primaryStrategy The pose strategy to use once the robot has been enabled.
+   * @param disabledStrategy The pose strategy to use before the robot has been enabled.
+   * @param useWorker Whether to solve poses on a separate thread for this camera.
+   */
+  public VisionIOPhoton(
+      CameraParameters parameters,
+      PoseStrategy primaryStrategy,
+      PoseStrategy disabledStrategy,
+      boolean useWorker) {
     camera = new PhotonCamera(parameters.getCameraName());
     this.robotToCamera = parameters.getTransform();
     this.parameters = parameters;
@@ -56,10 +104,108 @@ public class VisionIOPhoton implements VisionIO {
             disabledStrategy,
             robotToCamera);
     this.primaryStrategy = primaryStrategy;
+
+    if (useWorker) {
+      worker = new Notifier(this::runWorker);
+      worker.setName("Vision " + parameters.getCameraName());
+      worker.startPeriodic(VisionConstants.CAMERA_WORKER_PERIOD);
+    } else {
+      worker = null;
+    }
   }
 
   @Override
   public void updateInputs(VisionIOInputs inputs, Timestamped<Rotation2d> heading) {
+    inputs.connected = camera.isConnected();
+
+    if (worker != null) {
+      latestHeading.set(heading);
+    } else {
+      readResults(heading);
+    }
+
+    // Collect finished camera observations
+    Set<Short> tagIds = new HashSet<>();
+    List<PoseObservation> poseObservations = new LinkedList<>();
+    List<CameraResult> cornerResults = new LinkedList<>();
+    int cornerTagCount = 0;
+    CameraResult result;
+    while ((result = mailbox.poll()) != null) {
+      inputs.latestTargetObservation = result.targetObservation();
+      if (result.poseObservation() != null) {
+        poseObservations.add(result.poseObservation());
+      }
+      for (short id : result.tagIds()) {
+        tagIds.add(id);
+      }
+      if (result.cornerTagIds().length > 0) {
+        cornerResults.add(result);
+        cornerTagCount += result.cornerTagIds().length;
+      }
+    }
+
+    // Save detected corners to inputs object
+    inputs.cornerTimestamps = new double[cornerTagCount];
+    inputs.cornerTagIds = new int[cornerTagCount];
+    inputs.cornerPixels = new double[cornerTagCount * 8];
+    int tag = 0;
+    for (CameraResult cornerResult : cornerResults) {
+      System.arraycopy(
+          cornerResult.cornerPixels(),
+          0,
+          inputs.cornerPixels,
+          tag * 8,
+          cornerResult.cornerPixels().length);
+      for (int id : cornerResult.cornerTagIds()) {
+        inputs.cornerTimestamps[tag] = cornerResult.timestamp();
+        inputs.cornerTagIds[tag] = id;
+        tag++;
+      }
+    }
+
+    // Save pose observations to inputs object
+    inputs.poseObservations = new PoseObservation[poseObservations.size()];
+    for (int i = 0; i < poseObservations.size(); i++) {
+      inputs.poseObservations[i] = poseObservations.get(i);
+    }
+
+    // Save tag IDs to inputs objects
+    inputs.tagIds = new int[tagIds.size()];
+    int i = 0;
+    for (int id : tagIds) {
+      inputs.tagIds[i++] = id;
+    }
+  }
+
+  @Override
+  public void close() {
+    if (worker != null) {
+      worker.close();
+    }
+    camera.close();
+  }
+
+  /** Reads new results on the worker thread, once the main thread has provided a heading. */
+  private void runWorker() {
+    Timestamped<Rotation2d> heading = latestHeading.get();
+    if (heading == null) {
+      return;
+    }
+    if (heading == lastWorkerHeading) {
+      heading = null; // Already added to the pose estimator
+    } else {
+      lastWorkerHeading = heading;
+    }
+    readResults(heading);
+  }
+
+  /**
+   * Solves poses for all unread camera results and posts them to the mailbox. Only ever called from
+   * one thread, which owns the pose estimator.
+   *
+   * @param heading New heading to give the pose estimator, or null if there isn't one
+   */
+  private void readResults(Timestamped<Rotation2d> heading) {
     if (!hasEnabled) {
       if (DriverStation.isEnabled()) {
         poseEstimator.setPrimaryStrategy(primaryStrategy);
@@ -67,75 +213,107 @@ public class VisionIOPhoton implements VisionIO {
       }
     }
 
-    inputs.connected = camera.isConnected();
+    if (cameraMatrix == null) {
+      cameraMatrix = Optional.of(parameters.getCameraMatrix());
+      distCoeffs = Optional.of(parameters.getDistCoeffs());
+    }
 
-    poseEstimator.addHeadingData(heading.getTimestamp(), heading.get());
+    if (heading != null) {
+      poseEstimator.addHeadingData(heading.getTimestamp(), heading.get());
+    }
 
     // Read new camera observations
-    Set<Short> tagIds = new HashSet<>();
-    List<PoseObservation> poseObservations = new LinkedList<>();
     for (var result : camera.getAllUnreadResults()) {
       if (!result.hasTargets()) {
         continue;
       }
 
-      Optional<EstimatedRobotPose> optional =
-          poseEstimator.update(
-              result,
-              Optional.of(parameters.getCameraMatrix()),
-              Optional.of(parameters.getDistCoeffs()),
-              CONSTRAINED_SOLVEPNP_PARAMETERS);
-      if (optional.isEmpty()) {
-        continue;
+      TargetObservation targetObservation =
+          new TargetObservation(
+              Rotation2d.fromDegrees(result.getBestTarget().getYaw()),
+              Rotation2d.fromDegrees(result.getBestTarget().getPitch()));
+
+      // Keep the corners of every tag for multi-camera fusion
+      int[] cornerTagIds = new int[0];
+      double[] cornerPixels = new double[0];
+      if (VisionConstants.USE_MULTI_CAMERA_FUSION) {
+        List<PhotonTrackedTarget> targets = result.getTargets();
+        cornerTagIds = new int[targets.size()];
+        cornerPixels = new double[targets.size() * 8];
+        int tagCount = 0;
+        for (PhotonTrackedTarget target : targets) {
+          List<TargetCorner> corners = target.getDetectedCorners();
+          if (target.fiducialId < 0 || corners.size() != 4) continue;
+          for (int i = 0; i < 4; i++) {
+            cornerPixels[tagCount * 8 + i * 2] = corners.get(i).x;
+            cornerPixels[tagCount * 8 + i * 2 + 1] = corners.get(i).y;
+          }
+          cornerTagIds[tagCount++] = target.fiducialId;
+        }
+        cornerTagIds = Arrays.copyOf(cornerTagIds, tagCount);
+        cornerPixels = Arrays.copyOf(cornerPixels, tagCount * 8);
       }
 
-      EstimatedRobotPose poseEstimate = optional.get();
+      PoseObservation poseObservation = null;
+      short[] tagIds = new short[0];
+      Optional<EstimatedRobotPose> optional =
+          poseEstimator.update(result, cameraMatrix, distCoeffs, CONSTRAINED_SOLVEPNP_PARAMETERS);
+      if (optional.isPresent()) {
+        EstimatedRobotPose poseEstimate = optional.get();
 
-      double distance = 0;
-      double ambiguity = 0;
-      int tagCount = poseEstimate.targetsUsed.size();
+        double distance = 0;
+        double ambiguity = 0;
+        int tagCount = poseEstimate.targetsUsed.size();
+        tagIds = new short[tagCount];
 
-      for (PhotonTrackedTarget target : poseEstimate.targetsUsed) {
-        distance += target.getBestCameraToTarget().getTranslation().getNorm();
-        ambiguity += target.poseAmbiguity;
-        tagIds.add((short) target.fiducialId);
-      }
+        for (int i = 0; i < tagCount; i++) {
+          PhotonTrackedTarget target = poseEstimate.targetsUsed.get(i);
+          distance += target.getBestCameraToTarget().getTranslation().getNorm();
+          ambiguity += target.poseAmbiguity;
+          tagIds[i] = (short) target.fiducialId;
+        }
 
-      distance /= tagCount;
-      ambiguity /= tagCount;
+        distance /= tagCount;
+        ambiguity /= tagCount;
 
-      inputs.latestTargetObservation =
-          new TargetObservation(
-              Rotation2d.fromDegrees(result.getBestTarget().getYaw()),
-              Rotation2d.fromDegrees(result.getBestTarget().getPitch()));
+        PoseObservationType type = PoseObservationType.PHOTONVISION;
+        if (poseEstimate.strategy == PoseStrategy.CONSTRAINED_SOLVEPNP) {
+          type = PoseObservationType.PHOTONVISION_CONSTRAINED;
+        }
 
-      PoseObservationType type = PoseObservationType.PHOTONVISION;
-      if (poseEstimate.strategy == PoseStrategy.CONSTRAINED_SOLVEPNP) {
-        type = PoseObservationType.PHOTONVISION_CONSTRAINED;
+        poseObservation =
+            new PoseObservation(
+                result.getTimestampSeconds(), // Timestamp
+                poseEstimate.estimatedPose, // 3D pose estimate
+                ambiguity, // Ambiguity
+                tagCount, // Tag count
+                distance, // Average tag distance
+                type); // Observation type
+      } else if (cornerTagIds.length == 0) {
+        continue;
       }
 
       // Add observation
-      poseObservations.add(
-          new PoseObservation(
-              result.getTimestampSeconds(), // Timestamp
-              poseEstimate.estimatedPose, // 3D pose estimate
-              ambiguity, // Ambiguity
-              tagCount, // Tag count
-              distance, // Average tag distance
-              type)); // Observation type
-    }
-
-    // Save pose observations to inputs object
-    inputs.poseObservations = new PoseObservation[poseObservations.size()];
-    for (int i = 0; i < poseObservations.size(); i++) {
-      inputs.poseObservations[i] = poseObservations.get(i);
-    }
-
-    // Save tag IDs to inputs objects
-    inputs.tagIds = new int[tagIds.size()];
-    int i = 0;
-    for (int id : tagIds) {
-      inputs.tagIds[i++] = id;
+      mailbox.offer(
+          new CameraResult(
+              result.getTimestampSeconds(),
+              poseObservation,
+              targetObservation,
+              tagIds,
+              cornerTagIds,
+              cornerPixels));
     }
   }
+
+  /**
+   * A solved camera result, handed from the solving thread to the main thread. The pose observation
+   * is null if no pose could be solved.
+   */
+  private static record CameraResult(
+      double timestamp,
+      PoseObservation poseObservation,
+      TargetObservation targetObservation,
+      short[] tagIds,
+      int[] cornerTagIds,
+      double[] cornerPixels) {}
 }
@@ -6,28 +6,59 @@
 
 package org.team2342.frc.subsystems.vision;
 
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.math.interpolation.TimeInterpolatableBuffer;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.wpilibj.Timer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import java.util.function.Supplier;
 import org.photonvision.PhotonPoseEstimator.PoseStrategy;
 import org.photonvision.simulation.PhotonCameraSim;
 import org.photonvision.simulation.SimCameraProperties;
 import org.photonvision.simulation.VisionSystemSim;
+import org.team2342.frc.Constants.VisionConstants;
 import org.team2342.lib.util.AllianceUtils;
 import org.team2342.lib.util.CameraParameters;
 import org.team2342.lib.util.Timestamped;
 
-/** IO implementation for physics sim using PhotonVision simulator. */
+/**
+ * IO implementation for physics sim using PhotonVision simulator.
+ *
+ * <p>In fast mode, no frames are rendered or solved. Each simulated frame instead checks which tags
+ * are in view of the true robot pose, and reports that pose with noise that grows with the square
+ * of the average tag distance and shrinks with the number of tags. Fast mode doesn't report tag
+ * corners, so it can't be used with multi-camera fusion.
+ */
 public class VisionIOSim extends VisionIOPhoton {
   private static VisionSystemSim visionSim;
 
   private final Supplier<Pose2d> poseSupplier;
   private final PhotonCameraSim cameraSim;
 
+  // Only used in fast mode
+  private final boolean fastMode;
+  private final TimeInterpolatableBuffer<Pose2d> poseHistory =
+      TimeInterpolatableBuffer.createBuffer(1.0);
+  private final Random random;
+  private Pose3d[] tagPoses;
+  private int[] tagIds;
+  private double fx, fy, cx, cy;
+  private double nextFrameTimestamp = Double.NaN;
+
   /**
-   * Creates a new VisionIOPhotonVisionSim.
+   * Creates a new VisionIOSim, in fast mode if {@link VisionConstants#SIM_FAST_VISION} is set.
    *
-   * @param name The name of the camera.
+   * @param parameters The camera's name, calibration and position relative to the robot.
+   * @param primaryStrategy The pose strategy to use once the robot has been enabled.
+   * @param disabledStrategy The pose strategy to use before the robot has been enabled.
    * @param poseSupplier Supplier for the robot pose to use in simulation.
    */
   public VisionIOSim(
@@ -35,8 +66,79 @@ public class VisionIOSim extends VisionIOPhoton {
       PoseStrategy primaryStrategy,
       PoseStrategy disabledStrategy,
       Supplier<Pose2d> poseSupplier) {
-    super(parameters, primaryStrategy, disabledStrategy);
+    this(
+        parameters,
+        primaryStrategy,
+        disabledStrategy,
+        poseSupplier,
+        VisionConstants.SIM_FAST_VISION);
+  }
+
+  /**
+   * Creates a new VisionIOSim.
+   *
+   * @param parameters The camera's name, calibration and position relative to the robot.
+   * @param primaryStrategy The pose strategy to use once the robot has been enabled.
+   * @param disabledStrategy The pose strategy to use before the robot has been enabled.
+   * @param poseSupplier Supplier for the robot pose to use in simulation.
+   * @param fastMode Whether to generate observations from the pose instead of rendering frames.
+   */
+  public VisionIOSim(
+      CameraParameters parameters,
+      PoseStrategy primaryStrategy,
+      PoseStrategy disabledStrategy,
+      Supplier<Pose2d> poseSupplier,
+      boolean fastMode) {
+    this(
+        parameters,
+        primaryStrategy,
+        disabledStrategy,
+        poseSupplier,
+        fastMode,
+        VisionConstants.SIM_NOISE_SEED ^ parameters.getCameraName().hashCode());
+  }
+
+  /**
+   * Creates a new VisionIOSim.
+   *
+   * @param parameters The camera's name, calibration and position relative to the robot.
+   * @param primaryStrategy The pose strategy to use once the robot has been enabled.
+   * @param disabledStrategy The pose strategy to use before the robot has been enabled.
+   * @param poseSupplier Supplier for the robot pose to use in simulation.
+   * @param fastMode Whether to generate observations from the pose instead of rendering frames.
+   * @param noiseSeed Seed for the noise and latency of fast mode observations.
+   */
+  public VisionIOSim(
+      CameraParameters parameters,
+      PoseStrategy primaryStrategy,
+      PoseStrategy disabledStrategy,
+      Supplier<Pose2d> poseSupplier,
+      boolean fastMode,
+      long noiseSeed) {
+    // Solve inline, so results line up with the simulated pose they were rendered from
+    super(parameters, primaryStrategy, disabledStrategy, false);
     this.poseSupplier = poseSupplier;
+    this.fastMode = fastMode;
+    random = new Random(noiseSeed);
+
+    if (fastMode) {
+      cameraSim = null;
+
+      List<AprilTag> tags = AllianceUtils.getFieldLayout().getTags();
+      tagPoses = new Pose3d[tags.size()];
+      tagIds = new int[tags.size()];
+      for (int i = 0; i < tags.size(); i++) {
+        tagPoses[i] = tags.get(i).pose;
+        tagIds[i] = tags.get(i).ID;
+      }
+
+      Matrix<N3, N3> cameraMatrix = parameters.getCameraMatrix();
+      fx = cameraMatrix.get(0, 0);
+      fy = cameraMatrix.get(1, 1);
+      cx = cameraMatrix.get(0, 2);
+      cy = cameraMatrix.get(1, 2);
+      return;
+    }
 
     if (visionSim == null) {
       visionSim = new VisionSystemSim("main");
@@ -51,9 +153,9 @@ public class VisionIOSim extends VisionIOPhoton {
         parameters.getCameraMatrix(),
         parameters.getDistCoeffs());
     properties.setCalibError(parameters.getAvgErrorPx(), parameters.getErrorStdDevPx());
-    properties.setFPS(60.0);
-    properties.setAvgLatencyMs(35);
-    properties.setLatencyStdDevMs(7);
+    properties.setFPS(VisionConstants.SIM_FPS);
+    properties.setAvgLatencyMs(VisionConstants.SIM_LATENCY * 1000.0);
+    properties.setLatencyStdDevMs(VisionConstants.SIM_LATENCY_STD_DEV * 1000.0);
 
     cameraSim = new PhotonCameraSim(camera, properties, AllianceUtils.getFieldLayout());
     visionSim.addCamera(cameraSim, robotToCamera);
@@ -61,7 +163,140 @@ public class VisionIOSim extends VisionIOPhoton {
 
   @Override
   public void updateInputs(VisionIOInputs inputs, Timestamped<Rotation2d> heading) {
+    if (fastMode) {
+      updateFastInputs(inputs);
+      return;
+    }
     visionSim.update(poseSupplier.get());
     super.updateInputs(inputs, heading);
   }
+
+  @Override
+  public void close() {
+    if (cameraSim != null) {
+      visionSim.removeCamera(cameraSim);
+      cameraSim.close();
+    }
+    super.close();
+  }
+
+  /** Generates an observation for every frame the camera would have published since last cycle. */
+  private void updateFastInputs(VisionIOInputs inputs) {
+    double now = Timer.getFPGATimestamp();
+    Pose2d pose = poseSupplier.get();
+    poseHistory.addSample(now, pose);
+    if (Double.isNaN(nextFrameTimestamp)) {
+      nextFrameTimestamp = now;
+    }
+
+    inputs.connected = true;
+    inputs.cornerTimestamps = new double[0];
+    inputs.cornerTagIds = new int[0];
+    inputs.cornerPixels = new double[0];
+
+    int frameCount = 0;
+    PoseObservation[] observations = new PoseObservation[0];
+    boolean[] seen = new boolean[tagIds.length];
+    while (nextFrameTimestamp <= now) {
+      double latency =
+          Math.max(
+              0.0,
+              VisionConstants.SIM_LATENCY
+                  + random.nextGaussian() * VisionConstants.SIM_LATENCY_STD_DEV);
+      double captureTimestamp = nextFrameTimestamp - latency;
+      nextFrameTimestamp += 1.0 / VisionConstants.SIM_FPS;
+
+      Pose2d capturePose = poseHistory.getSample(captureTimestamp).orElse(pose);
+      PoseObservation observation = simulateFrame(captureTimestamp, capturePose, inputs, seen);
+      if (observation != null) {
+        if (frameCount == observations.length) {
+          observations = Arrays.copyOf(observations, Math.max(2, frameCount * 2));
+        }
+        observations[frameCount++] = observation;
+      }
+    }
+    inputs.poseObservations = Arrays.copyOf(observations, frameCount);
+
+    int seenCount = 0;
+    for (boolean tagSeen : seen) {
+      if (tagSeen) seenCount++;
+    }
+    inputs.tagIds = new int[seenCount];
+    int j = 0;
+    for (int i = 0; i < seen.length; i++) {
+      if (seen[i]) inputs.tagIds[j++] = tagIds[i];
+    }
+  }
+
+  /**
+   * Simulates one frame taken from a robot pose, marking the tags in view as seen.
+   *
+   * @return The noisy observation, or null if no tags were in view
+   */
+  private PoseObservation simulateFrame(
+      double timestamp, Pose2d robotPose, VisionIOInputs inputs, boolean[] seen) {
+    Pose3d cameraPose = new Pose3d(robotPose).transformBy(robotToCamera);
+
+    int tagCount = 0;
+    double totalDistance = 0.0;
+    double closestDistance = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < tagPoses.length; i++) {
+      // Tag center in the camera frame, x forward, y left, z up
+      Translation3d tagInCamera = tagPoses[i].relativeTo(cameraPose).getTranslation();
+      double distance = tagInCamera.getNorm();
+      if (tagInCamera.getX() <= 0.0 || distance > VisionConstants.SIM_MAX_TAG_DISTANCE) continue;
+
+      // Must project into the image
+      double u = cx - fx * tagInCamera.getY() / tagInCamera.getX();
+      double v = cy - fy * tagInCamera.getZ() / tagInCamera.getX();
+      if (u < 0.0 || u >= parameters.getResWidth() || v < 0.0 || v >= parameters.getResHeight()) {
+        continue;
+      }
+
+      // Must face the camera, the tag's x axis points out of its face
+      Translation3d cameraInTag = cameraPose.relativeTo(tagPoses[i]).getTranslation();
+      if (cameraInTag.getX() <= distance * Math.cos(VisionConstants.SIM_MAX_TAG_VIEW_ANGLE)) {
+        continue;
+      }
+
+      seen[i] = true;
+      tagCount++;
+      totalDistance += distance;
+      if (distance < closestDistance) {
+        closestDistance = distance;
+        inputs.latestTargetObservation =
+            new TargetObservation(
+                new Rotation2d(-Math.atan2(tagInCamera.getY(), tagInCamera.getX())),
+                new Rotation2d(Math.atan2(tagInCamera.getZ(), tagInCamera.getX())));
+      }
+    }
+    if (tagCount == 0) {
+      return null;
+    }
+
+    double averageDistance = totalDistance / tagCount;
+    double noiseFactor = averageDistance * averageDistance / tagCount;
+    double linearNoise = VisionConstants.SIM_LINEAR_NOISE_BASELINE * noiseFactor;
+    double angularNoise = VisionConstants.SIM_ANGULAR_NOISE_BASELINE * noiseFactor;
+    double ambiguity =
+        tagCount == 1 ? random.nextDouble() * VisionConstants.SIM_MAX_SINGLE_TAG_AMBIGUITY : 0.0;
+
+    Pose3d noisyPose =
+        new Pose3d(
+            robotPose.getX() + random.nextGaussian() * linearNoise,
+            robotPose.getY() + random.nextGaussian() * linearNoise,
+            random.nextGaussian() * linearNoise,
+            new Rotation3d(
+                0.0,
+                0.0,
+                robotPose.getRotation().getRadians() + random.nextGaussian() * angularNoise));
+
+    return new PoseObservation(
+        timestamp,
+        noisyPose,
+        ambiguity,
+        tagCount,
+        averageDistance,
+        PoseObservationType.PHOTONVISION);
+  }
 }
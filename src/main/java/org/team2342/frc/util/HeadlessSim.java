@@ -0,0 +1,144 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.frc.util;
+
+import edu.wpi.first.hal.AllianceStationID;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj.simulation.XboxControllerSim;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Runs a scripted match in simulation without a GUI or driver station, as fast as the CPU allows.
+ *
+ * <p>The FPGA clock is paused, and stepped one loop period at the end of every loop, so the code
+ * sees the same times as a real-time run no matter how fast the loops run. The robot is disabled
+ * for a second, runs autonomous, then teleop with scripted driver inputs, then is disabled for a
+ * second before the log is closed and the program exits.
+ *
+ * <p>Enabled by setting the HEADLESS_SIM environment variable to true (./gradlew simulateJava
+ * -PheadlessSim sets it), with the robot in SIM mode. Configured with environment variables:
+ *
+ * <ul>
+ *   <li>HEADLESS_SIM_AUTO: Name of the auto to run, otherwise the default choice
+ *   <li>HEADLESS_SIM_AUTO_TIME: Length of autonomous in seconds, 15 by default
+ *   <li>HEADLESS_SIM_TELEOP_TIME: Length of teleop in seconds, 135 by default
+ *   <li>HEADLESS_SIM_RED: Whether to run on the red alliance
+ *   <li>HEADLESS_SIM_LOG: Folder or file to write the log to, logs/headless by default
+ * </ul>
+ */
+public class HeadlessSim {
+  public static final boolean ENABLED = Boolean.parseBoolean(System.getenv("HEADLESS_SIM"));
+
+  private static final double LOOP_PERIOD = 0.02;
+  private static final double DISABLED_TIME = 1.0;
+
+  /** Scripted driver inputs for teleop. */
+  @FunctionalInterface
+  public static interface DriverScript {
+    /**
+     * Set the controller's inputs.
+     *
+     * @param teleopTime Seconds since teleop started
+     * @param controller The driver controller
+     */
+    public void apply(double teleopTime, XboxControllerSim controller);
+  }
+
+  /** Drives a figure eight while slowly turning back and forth. */
+  public static final DriverScript FIGURE_EIGHT =
+      (time, controller) -> {
+        double phase = 2.0 * Math.PI * time / 8.0;
+        controller.setLeftY(-0.6 * Math.sin(phase));
+        controller.setLeftX(-0.6 * Math.sin(2.0 * phase));
+        controller.setRightX(0.3 * Math.sin(0.5 * phase));
+      };
+
+  private final XboxControllerSim controller;
+  private final DriverScript driverScript;
+  private final StringPublisher autoPublisher;
+
+  private final double autoEnd;
+  private final double teleopEnd;
+  private final double end;
+  private double time = 0.0;
+
+  /**
+   * Pauses the clock and sets up the driver station for a match.
+   *
+   * @param driverPort Port of the driver controller
+   * @param driverScript Driver inputs during teleop
+   */
+  public HeadlessSim(int driverPort, DriverScript driverScript) {
+    this.driverScript = driverScript;
+    controller = new XboxControllerSim(driverPort);
+
+    autoEnd = DISABLED_TIME + getDouble("HEADLESS_SIM_AUTO_TIME", 15.0);
+    teleopEnd = autoEnd + getDouble("HEADLESS_SIM_TELEOP_TIME", 135.0);
+    end = teleopEnd + DISABLED_TIME;
+
+    // Select the auto the same way the dashboard does
+    String auto = System.getenv("HEADLESS_SIM_AUTO");
+    if (auto != null) {
+      autoPublisher =
+          NetworkTableInstance.getDefault()
+              .getStringTopic("/SmartDashboard/Auto Choices/selected")
+              .publish();
+      autoPublisher.set(auto);
+    } else {
+      autoPublisher = null;
+    }
+
+    SimHooks.pauseTiming();
+    DriverStationSim.setAllianceStationId(
+        Boolean.parseBoolean(System.getenv("HEADLESS_SIM_RED"))
+            ? AllianceStationID.Red1
+            : AllianceStationID.Blue1);
+    DriverStationSim.setDsAttached(true);
+    DriverStationSim.setEnabled(false);
+    DriverStationSim.notifyNewData();
+  }
+
+  /** Returns where to write the log. */
+  public static String getLogPath() {
+    String path = System.getenv("HEADLESS_SIM_LOG");
+    return path != null ? path : "logs/headless";
+  }
+
+  /** Advances the script and the clock by one loop. Call at the end of every loop. */
+  public void periodic() {
+    time += LOOP_PERIOD;
+    if (time >= end) {
+      Logger.end();
+      System.exit(0);
+    }
+
+    boolean autonomous = time >= DISABLED_TIME && time < autoEnd;
+    boolean teleop = time >= autoEnd && time < teleopEnd;
+    DriverStationSim.setEnabled(autonomous || teleop);
+    DriverStationSim.setAutonomous(autonomous);
+    DriverStationSim.setMatchTime(autonomous ? autoEnd - time : teleop ? teleopEnd - time : -1.0);
+
+    if (teleop) {
+      driverScript.apply(time - autoEnd, controller);
+    } else {
+      controller.setLeftX(0.0);
+      controller.setLeftY(0.0);
+      controller.setRightX(0.0);
+    }
+    DriverStationSim.notifyNewData();
+
+    SimHooks.stepTiming(LOOP_PERIOD);
+  }
+
+  private static double getDouble(String name, double defaultValue) {
+    String value = System.getenv(name);
+    return value != null ? Double.parseDouble(value) : defaultValue;
+  }
+}
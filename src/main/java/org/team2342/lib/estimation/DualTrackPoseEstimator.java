@@ -0,0 +1,454 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.estimation;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Pose estimator that keeps a raw wheel odometry track and a vision-fused track from the same
+ * odometry twists.
+ *
+ * <p>The fused track follows the same algorithm as WPILib's {@link
+ * edu.wpi.first.math.estimator.PoseEstimator}: odometry poses are kept in a history buffer, and
+ * each vision measurement is blended with the estimate at its timestamp, then carried forward to
+ * the present by the odometry since then. The raw track integrates the same twists but never sees
+ * vision or pose resets, so both come from one kinematics solve and one history buffer.
+ *
+ * <p>The history is a {@link PoseHistoryBuffer}, vision updates are kept in arrays sorted by
+ * timestamp, and all pose math is done on primitives, so odometry updates and lookups don't
+ * allocate and looking up a pose from hundreds of milliseconds ago is a binary search.
+ */
+public class DualTrackPoseEstimator {
+  /** Default length of the odometry history in seconds. */
+  public static final double DEFAULT_HISTORY_SECONDS = 1.5;
+
+  /** Default number of samples in the odometry history, enough for the default at 250 Hz. */
+  public static final int DEFAULT_HISTORY_CAPACITY = 512;
+
+  private final double historySeconds;
+
+  // Odometry variances, and the diagonal of the Kalman gain reused for each vision measurement
+  private final double[] q = new double[3];
+  private final double[] visionK = new double[3];
+
+  private final PoseHistoryBuffer odometryPoseBuffer;
+  private final VisionUpdateHistory visionUpdates = new VisionUpdateHistory();
+
+  // Fused track's odometry, reset along with the estimate
+  private double odometryX;
+  private double odometryY;
+  private double odometryTheta;
+  private double gyroOffset;
+
+  // Raw track, never reset
+  private double rawX = 0.0;
+  private double rawY = 0.0;
+  private double rawTheta = 0.0;
+  private final double rawGyroOffset;
+
+  private double previousGyroAngle;
+  private final double[] poseEstimate = new double[3];
+
+  // Scratch poses, so lookups don't allocate
+  private final double[] odometrySample = new double[3];
+  private final double[] estimateSample = new double[3];
+  private final double[] scratch = new double[3];
+
+  /**
+   * Create a new estimator with the default state standard deviations of 0.1 meters and 0.1
+   * radians, and the default history length.
+   *
+   * @param initialPose Starting pose of the fused track. The raw track starts at the origin.
+   * @param gyroAngleRad Current gyro angle in radians
+   */
+  public DualTrackPoseEstimator(Pose2d initialPose, double gyroAngleRad) {
+    this(
+        initialPose,
+        gyroAngleRad,
+        VecBuilder.fill(0.1, 0.1, 0.1),
+        DEFAULT_HISTORY_SECONDS,
+        DEFAULT_HISTORY_CAPACITY);
+  }
+
+  /**
+   * Create a new estimator.
+   *
+   * @param initialPose Starting pose of the fused track. The raw track starts at the origin.
+   * @param gyroAngleRad Current gyro angle in radians
+   * @param stateStdDevs Standard deviations of the odometry pose in meters and radians. Increase to
+   *     trust vision more.
+   * @param historySeconds How long to keep odometry history. Vision measurements older than this
+   *     are ignored.
+   * @param historyCapacity Most odometry samples to keep, should cover the history at the odometry
+   *     rate
+   */
+  public DualTrackPoseEstimator(
+      Pose2d initialPose,
+      double gyroAngleRad,
+      Matrix<N3, N1> stateStdDevs,
+      double historySeconds,
+      int historyCapacity) {
+    for (int i = 0; i < 3; i++) {
+      q[i] = stateStdDevs.get(i, 0) * stateStdDevs.get(i, 0);
+    }
+    this.historySeconds = historySeconds;
+    odometryPoseBuffer = new PoseHistoryBuffer(historySeconds, historyCapacity);
+    rawGyroOffset = -gyroAngleRad;
+    resetOdometry(initialPose, gyroAngleRad);
+  }
+
+  /**
+   * Reset the fused track to the given pose, forgetting all odometry history and vision
+   * measurements. The raw track isn't changed.
+   *
+   * @param pose New pose
+   * @param gyroAngleRad Current gyro angle in radians
+   */
+  public void resetPose(Pose2d pose, double gyroAngleRad) {
+    resetOdometry(pose, gyroAngleRad);
+    odometryPoseBuffer.clear();
+    visionUpdates.clear();
+  }
+
+  /** Returns the vision-fused pose estimate. */
+  public Pose2d getEstimatedPosition() {
+    return new Pose2d(poseEstimate[0], poseEstimate[1], new Rotation2d(poseEstimate[2]));
+  }
+
+  /** Returns the pose from wheel odometry and the gyro alone, starting at the origin. */
+  public Pose2d getRawOdometryPose() {
+    return new Pose2d(rawX, rawY, new Rotation2d(rawTheta));
+  }
+
+  /**
+   * Returns the fused pose estimate at the given time, or an empty optional if there is no odometry
+   * history yet. Times outside the history are clamped to it.
+   *
+   * @param timestampSeconds Time in seconds, on the same time base as the updates
+   */
+  public Optional<Pose2d> sampleAt(double timestampSeconds) {
+    if (!sampleEstimate(timestampSeconds, scratch)) {
+      return Optional.empty();
+    }
+    return Optional.of(new Pose2d(scratch[0], scratch[1], new Rotation2d(scratch[2])));
+  }
+
+  /**
+   * Writes the fused pose estimate at the given time to the array as (x, y, theta), without
+   * allocating. Times outside the history are clamped to it.
+   *
+   * @param timestampSeconds Time in seconds, on the same time base as the updates
+   * @param out Caller-owned array of length 3
+   * @return False if there is no odometry history yet and nothing was written
+   */
+  public boolean sampleAt(double timestampSeconds, double[] out) {
+    return sampleEstimate(timestampSeconds, out);
+  }
+
+  /**
+   * Add a vision measurement, blending it into the fused track at the time it was taken.
+   *
+   * @param visionRobotPoseMeters Robot pose measured by vision
+   * @param timestampSeconds Time the measurement was taken, on the same time base as the updates
+   * @param visionMeasurementStdDevs Standard deviations of the measurement in meters and radians
+   */
+  public void addVisionMeasurement(
+      Pose2d visionRobotPoseMeters,
+      double timestampSeconds,
+      Matrix<N3, N1> visionMeasurementStdDevs) {
+    cleanUpVisionUpdates();
+    if (!applyVisionMeasurement(
+        timestampSeconds,
+        visionRobotPoseMeters.getX(),
+        visionRobotPoseMeters.getY(),
+        visionRobotPoseMeters.getRotation().getRadians(),
+        visionMeasurementStdDevs.get(0, 0),
+        visionMeasurementStdDevs.get(1, 0),
+        visionMeasurementStdDevs.get(2, 0))) {
+      return;
+    }
+
+    // Later updates were based on the old estimate, so they no longer apply
+    visionUpdates.removeAfter(timestampSeconds);
+
+    visionUpdates.getNewest().compensate(odometryX, odometryY, odometryTheta, poseEstimate);
+  }
+
+  /**
+   * Add a cycle's worth of vision measurements in one pass. This gives the same result as adding
+   * them one at a time in timestamp order, but later updates are only discarded and the estimate
+   * only carried forward to the present once, instead of once per measurement. The batch is sorted
+   * in place.
+   *
+   * @param measurements Measurements to add, in any order
+   */
+  public void addVisionMeasurements(VisionMeasurementBatch measurements) {
+    if (measurements.size() == 0) {
+      return;
+    }
+    measurements.sort();
+    cleanUpVisionUpdates();
+
+    boolean applied = false;
+    for (int i = 0; i < measurements.size(); i++) {
+      double timestampSeconds = measurements.getTimestamp(i);
+      if (!applyVisionMeasurement(
+          timestampSeconds,
+          measurements.getX(i),
+          measurements.getY(i),
+          measurements.getTheta(i),
+          measurements.getXStdDev(i),
+          measurements.getYStdDev(i),
+          measurements.getThetaStdDev(i))) {
+        continue;
+      }
+      if (!applied) {
+        // The rest of the batch is newer, so only updates from earlier cycles need discarding
+        visionUpdates.removeAfter(timestampSeconds);
+        applied = true;
+      }
+    }
+
+    if (applied) {
+      visionUpdates.getNewest().compensate(odometryX, odometryY, odometryTheta, poseEstimate);
+    }
+  }
+
+  /**
+   * Add an odometry sample to both tracks.
+   *
+   * @param timestampSeconds Time of the sample in seconds
+   * @param dx Robot-relative x displacement since the last sample in meters
+   * @param dy Robot-relative y displacement since the last sample in meters
+   * @param gyroAngleRad Gyro angle at the sample in radians
+   */
+  public void update(double timestampSeconds, double dx, double dy, double gyroAngleRad) {
+    double dtheta = MathUtil.angleModulus(gyroAngleRad - previousGyroAngle);
+    previousGyroAngle = gyroAngleRad;
+
+    // Integrate the twist along an arc, then take the heading from the gyro
+    PoseMath.exp(odometryX, odometryY, odometryTheta, dx, dy, dtheta, scratch);
+    odometryX = scratch[0];
+    odometryY = scratch[1];
+    odometryTheta = MathUtil.angleModulus(gyroAngleRad + gyroOffset);
+
+    PoseMath.exp(rawX, rawY, rawTheta, dx, dy, dtheta, scratch);
+    rawX = scratch[0];
+    rawY = scratch[1];
+    rawTheta = MathUtil.angleModulus(gyroAngleRad + rawGyroOffset);
+
+    odometryPoseBuffer.addSample(timestampSeconds, odometryX, odometryY, odometryTheta);
+    if (visionUpdates.isEmpty()) {
+      poseEstimate[0] = odometryX;
+      poseEstimate[1] = odometryY;
+      poseEstimate[2] = odometryTheta;
+    } else {
+      visionUpdates.getNewest().compensate(odometryX, odometryY, odometryTheta, poseEstimate);
+    }
+  }
+
+  /** Writes the fused estimate at the given time to the array, returning false with no history. */
+  private boolean sampleEstimate(double timestampSeconds, double[] out) {
+    if (odometryPoseBuffer.isEmpty()) {
+      return false;
+    }
+    timestampSeconds =
+        MathUtil.clamp(
+            timestampSeconds,
+            odometryPoseBuffer.getOldestTimestamp(),
+            odometryPoseBuffer.getNewestTimestamp());
+    odometryPoseBuffer.sample(timestampSeconds, out);
+
+    // Apply the latest vision update before the time to the odometry at that time
+    VisionUpdate visionUpdate = visionUpdates.getAtOrBefore(timestampSeconds);
+    if (visionUpdate != null) {
+      visionUpdate.compensate(out[0], out[1], out[2], out);
+    }
+    return true;
+  }
+
+  /**
+   * Blends one vision measurement with the estimate at its timestamp and stores the update,
+   * returning false if it's older than the history. Doesn't discard later updates or update the
+   * current estimate.
+   */
+  private boolean applyVisionMeasurement(
+      double timestampSeconds,
+      double x,
+      double y,
+      double theta,
+      double xStdDev,
+      double yStdDev,
+      double thetaStdDev) {
+    // Measurements older than the history can't be applied
+    if (odometryPoseBuffer.isEmpty()
+        || odometryPoseBuffer.getNewestTimestamp() - historySeconds > timestampSeconds) {
+      return false;
+    }
+
+    // Pose from odometry alone, and the current estimate, at the time of the measurement
+    odometryPoseBuffer.sample(timestampSeconds, odometrySample);
+    sampleEstimate(timestampSeconds, estimateSample);
+
+    // Move part of the way from the estimate at that time to the measurement
+    visionK[0] = gain(q[0], xStdDev);
+    visionK[1] = gain(q[1], yStdDev);
+    visionK[2] = gain(q[2], thetaStdDev);
+    PoseMath.minus(estimateSample[0], estimateSample[1], estimateSample[2], x, y, theta, scratch);
+    PoseMath.plus(
+        estimateSample[0],
+        estimateSample[1],
+        estimateSample[2],
+        scratch[0] * visionK[0],
+        scratch[1] * visionK[1],
+        scratch[2] * visionK[2],
+        scratch);
+
+    visionUpdates.put(
+        timestampSeconds,
+        new VisionUpdate(
+            scratch[0],
+            scratch[1],
+            scratch[2],
+            odometrySample[0],
+            odometrySample[1],
+            odometrySample[2]));
+    return true;
+  }
+
+  /**
+   * Kalman gain for one state, from its odometry variance and the measurement standard deviation.
+   */
+  private static double gain(double q, double stdDev) {
+    double r = stdDev * stdDev;
+    return q == 0.0 ? 0.0 : q / (q + Math.sqrt(q * r));
+  }
+
+  private void resetOdometry(Pose2d pose, double gyroAngleRad) {
+    odometryX = pose.getX();
+    odometryY = pose.getY();
+    odometryTheta = pose.getRotation().getRadians();
+    gyroOffset = odometryTheta - gyroAngleRad;
+    previousGyroAngle = gyroAngleRad;
+    poseEstimate[0] = odometryX;
+    poseEstimate[1] = odometryY;
+    poseEstimate[2] = odometryTheta;
+  }
+
+  /** Removes vision updates older than the odometry history, keeping one to apply from. */
+  private void cleanUpVisionUpdates() {
+    if (odometryPoseBuffer.isEmpty() || visionUpdates.isEmpty()) {
+      return;
+    }
+    visionUpdates.removeBeforeNewestAtOrBefore(odometryPoseBuffer.getOldestTimestamp());
+  }
+
+  /**
+   * Vision updates in timestamp order, in parallel arrays so lookups by a primitive timestamp don't
+   * box it. Only changed when vision measurements are added, a few times per cycle at most.
+   */
+  private static class VisionUpdateHistory {
+    private double[] timestamps = new double[16];
+    private VisionUpdate[] updates = new VisionUpdate[16];
+    private int size = 0;
+
+    private boolean isEmpty() {
+      return size == 0;
+    }
+
+    /** Returns the newest update, or null if there are none. */
+    private VisionUpdate getNewest() {
+      return size == 0 ? null : updates[size - 1];
+    }
+
+    /** Returns the newest update at or before the time, or null if there are none. */
+    private VisionUpdate getAtOrBefore(double timestamp) {
+      int index = indexAfter(timestamp) - 1;
+      return index >= 0 ? updates[index] : null;
+    }
+
+    /** Adds an update, replacing any at the same time. */
+    private void put(double timestamp, VisionUpdate update) {
+      int index = indexAfter(timestamp);
+      if (index > 0 && timestamps[index - 1] == timestamp) {
+        updates[index - 1] = update;
+        return;
+      }
+      if (size == timestamps.length) {
+        timestamps = Arrays.copyOf(timestamps, size * 2);
+        updates = Arrays.copyOf(updates, size * 2);
+      }
+      System.arraycopy(timestamps, index, timestamps, index + 1, size - index);
+      System.arraycopy(updates, index, updates, index + 1, size - index);
+      timestamps[index] = timestamp;
+      updates[index] = update;
+      size++;
+    }
+
+    /** Removes every update after the time. */
+    private void removeAfter(double timestamp) {
+      int newSize = indexAfter(timestamp);
+      Arrays.fill(updates, newSize, size, null);
+      size = newSize;
+    }
+
+    /** Removes every update before the newest one at or before the time. */
+    private void removeBeforeNewestAtOrBefore(double timestamp) {
+      int keep = indexAfter(timestamp) - 1;
+      if (keep <= 0) {
+        return;
+      }
+      System.arraycopy(timestamps, keep, timestamps, 0, size - keep);
+      System.arraycopy(updates, keep, updates, 0, size - keep);
+      Arrays.fill(updates, size - keep, size, null);
+      size -= keep;
+    }
+
+    private void clear() {
+      Arrays.fill(updates, 0, size, null);
+      size = 0;
+    }
+
+    /** Returns the index of the first update after the time, or the size if there are none. */
+    private int indexAfter(double timestamp) {
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (timestamps[mid] <= timestamp) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+
+  /** A vision-corrected pose and the odometry pose at the same time. */
+  private record VisionUpdate(
+      double visionX,
+      double visionY,
+      double visionTheta,
+      double odometryX,
+      double odometryY,
+      double odometryTheta) {
+    /** Applies the odometry since this update to the vision pose, writing the result to out. */
+    public void compensate(double x, double y, double theta, double[] out) {
+      PoseMath.transformBy(
+          visionX, visionY, visionTheta, odometryX, odometryY, odometryTheta, x, y, theta, out);
+    }
+  }
+}
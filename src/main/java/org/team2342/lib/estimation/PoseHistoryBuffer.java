@@ -0,0 +1,172 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.estimation;
+
+/**
+ * Time-indexed history of robot poses, for looking up where the robot was when a delayed
+ * measurement was taken.
+ *
+ * <p>Replaces WPILib's {@link edu.wpi.first.math.interpolation.TimeInterpolatableBuffer} for poses.
+ * Samples are kept in parallel primitive arrays used as a ring buffer, so adding and sampling never
+ * allocate, and lookups are a binary search. Samples older than the window, or past the capacity,
+ * are dropped.
+ */
+public class PoseHistoryBuffer {
+  private final double windowSeconds;
+  private final int mask;
+
+  private final double[] timestamps;
+  private final double[] xs;
+  private final double[] ys;
+  private final double[] thetas;
+
+  private int head = 0; // Physical index of the oldest sample
+  private int size = 0;
+
+  /**
+   * Create a new buffer.
+   *
+   * @param windowSeconds How far back from the newest sample to keep samples, in seconds
+   * @param capacity Minimum number of samples the buffer can hold, rounded up to a power of two.
+   *     Should cover the window at the highest sample rate.
+   */
+  public PoseHistoryBuffer(double windowSeconds, int capacity) {
+    if (capacity < 1 || capacity > 1 << 20) {
+      throw new IllegalArgumentException("Pose history capacity must be between 1 and 2^20");
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) size <<= 1;
+
+    this.windowSeconds = windowSeconds;
+    mask = size - 1;
+    timestamps = new double[size];
+    xs = new double[size];
+    ys = new double[size];
+    thetas = new double[size];
+  }
+
+  /**
+   * Add a sample. Samples at or before the newest sample replace everything from that time on.
+   *
+   * @param timestampSeconds Time of the sample in seconds
+   * @param x X position in meters
+   * @param y Y position in meters
+   * @param theta Heading in radians
+   */
+  public void addSample(double timestampSeconds, double x, double y, double theta) {
+    // Keep samples in order, the same as replacing keys in a sorted map
+    while (size > 0 && timestamps[physical(size - 1)] >= timestampSeconds) {
+      size--;
+    }
+
+    if (size == timestamps.length) {
+      head = (head + 1) & mask;
+      size--;
+    }
+    int index = physical(size);
+    timestamps[index] = timestampSeconds;
+    xs[index] = x;
+    ys[index] = y;
+    thetas[index] = theta;
+    size++;
+
+    // Drop samples that fell out of the window, with the same comparison as WPILib's buffer
+    while (size > 1 && timestampSeconds - timestamps[head] >= windowSeconds) {
+      head = (head + 1) & mask;
+      size--;
+    }
+  }
+
+  /**
+   * Find the pose at the given time, interpolating between the samples around it. Times outside the
+   * buffer are clamped to the oldest or newest sample.
+   *
+   * @param timestampSeconds Time in seconds
+   * @param out Caller-owned array the pose is written to as (x, y, theta)
+   * @return False if the buffer is empty and nothing was written
+   */
+  public boolean sample(double timestampSeconds, double[] out) {
+    if (size == 0) {
+      return false;
+    }
+
+    int upper = upperBound(timestampSeconds);
+    if (upper == 0) {
+      write(0, out);
+    } else if (upper == size) {
+      write(size - 1, out);
+    } else {
+      int lowerIndex = physical(upper - 1);
+      int upperIndex = physical(upper);
+      double t =
+          (timestampSeconds - timestamps[lowerIndex])
+              / (timestamps[upperIndex] - timestamps[lowerIndex]);
+      PoseMath.interpolate(
+          xs[lowerIndex],
+          ys[lowerIndex],
+          thetas[lowerIndex],
+          xs[upperIndex],
+          ys[upperIndex],
+          thetas[upperIndex],
+          t,
+          out);
+    }
+    return true;
+  }
+
+  /** Remove all samples. */
+  public void clear() {
+    head = 0;
+    size = 0;
+  }
+
+  /** Returns whether the buffer has no samples. */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Returns the number of samples in the buffer. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the time of the oldest sample, or NaN if the buffer is empty. */
+  public double getOldestTimestamp() {
+    return size > 0 ? timestamps[head] : Double.NaN;
+  }
+
+  /** Returns the time of the newest sample, or NaN if the buffer is empty. */
+  public double getNewestTimestamp() {
+    return size > 0 ? timestamps[physical(size - 1)] : Double.NaN;
+  }
+
+  /** Returns the logical index of the first sample after the given time. */
+  private int upperBound(double timestampSeconds) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (timestamps[physical(middle)] <= timestampSeconds) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private int physical(int logicalIndex) {
+    return (head + logicalIndex) & mask;
+  }
+
+  private void write(int logicalIndex, double[] out) {
+    int index = physical(logicalIndex);
+    out[0] = xs[index];
+    out[1] = ys[index];
+    out[2] = thetas[index];
+  }
+}
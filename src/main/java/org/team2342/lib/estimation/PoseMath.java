@@ -0,0 +1,165 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.estimation;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Primitive versions of the {@link edu.wpi.first.math.geometry.Pose2d} operations used for pose
+ * estimation, so hot paths don't allocate. Poses and twists are passed as (x, y, theta) and results
+ * are written to a caller-owned array of length 3.
+ */
+public final class PoseMath {
+  private PoseMath() {}
+
+  /**
+   * Same as {@link edu.wpi.first.math.geometry.Pose2d#exp}: moves a pose along a robot-relative
+   * twist.
+   */
+  public static void exp(
+      double x, double y, double theta, double dx, double dy, double dtheta, double[] out) {
+    double sinTheta = Math.sin(dtheta);
+    double cosTheta = Math.cos(dtheta);
+    double s;
+    double c;
+    if (Math.abs(dtheta) < 1e-9) {
+      s = 1.0 - 1.0 / 6.0 * dtheta * dtheta;
+      c = 0.5 * dtheta;
+    } else {
+      s = sinTheta / dtheta;
+      c = (1 - cosTheta) / dtheta;
+    }
+    double arcX = dx * s - dy * c;
+    double arcY = dx * c + dy * s;
+
+    double cos = Math.cos(theta);
+    double sin = Math.sin(theta);
+    out[0] = x + arcX * cos - arcY * sin;
+    out[1] = y + arcX * sin + arcY * cos;
+    out[2] = MathUtil.angleModulus(theta + dtheta);
+  }
+
+  /**
+   * Same as {@link edu.wpi.first.math.geometry.Pose2d#log}: the twist that moves the start pose to
+   * the end pose.
+   */
+  public static void log(
+      double startX,
+      double startY,
+      double startTheta,
+      double endX,
+      double endY,
+      double endTheta,
+      double[] out) {
+    // End pose relative to the start
+    double cos = Math.cos(startTheta);
+    double sin = Math.sin(startTheta);
+    double translationX = (endX - startX) * cos + (endY - startY) * sin;
+    double translationY = -(endX - startX) * sin + (endY - startY) * cos;
+    double dtheta = MathUtil.angleModulus(endTheta - startTheta);
+
+    double halfDtheta = dtheta / 2.0;
+    double cosMinusOne = Math.cos(dtheta) - 1;
+    double halfThetaByTanOfHalfDtheta;
+    if (Math.abs(cosMinusOne) < 1e-9) {
+      halfThetaByTanOfHalfDtheta = 1.0 - 1.0 / 12.0 * dtheta * dtheta;
+    } else {
+      halfThetaByTanOfHalfDtheta = -(halfDtheta * Math.sin(dtheta)) / cosMinusOne;
+    }
+    out[0] = translationX * halfThetaByTanOfHalfDtheta + translationY * halfDtheta;
+    out[1] = -translationX * halfDtheta + translationY * halfThetaByTanOfHalfDtheta;
+    out[2] = dtheta;
+  }
+
+  /**
+   * Same as {@link edu.wpi.first.math.geometry.Pose2d#interpolate}: the pose a fraction of the way
+   * along the twist between two poses.
+   */
+  public static void interpolate(
+      double startX,
+      double startY,
+      double startTheta,
+      double endX,
+      double endY,
+      double endTheta,
+      double t,
+      double[] out) {
+    if (t <= 0.0) {
+      out[0] = startX;
+      out[1] = startY;
+      out[2] = startTheta;
+    } else if (t >= 1.0) {
+      out[0] = endX;
+      out[1] = endY;
+      out[2] = endTheta;
+    } else {
+      log(startX, startY, startTheta, endX, endY, endTheta, out);
+      exp(startX, startY, startTheta, out[0] * t, out[1] * t, out[2] * t, out);
+    }
+  }
+
+  /**
+   * Same as {@link edu.wpi.first.math.geometry.Pose2d#minus}: the transform from the start pose to
+   * the end pose, in the start pose's frame.
+   */
+  public static void minus(
+      double startX,
+      double startY,
+      double startTheta,
+      double endX,
+      double endY,
+      double endTheta,
+      double[] out) {
+    double cos = Math.cos(startTheta);
+    double sin = Math.sin(startTheta);
+    out[0] = (endX - startX) * cos + (endY - startY) * sin;
+    out[1] = -(endX - startX) * sin + (endY - startY) * cos;
+    out[2] = MathUtil.angleModulus(endTheta - startTheta);
+  }
+
+  /**
+   * Same as {@link edu.wpi.first.math.geometry.Pose2d#plus}: moves a pose by a transform in its own
+   * frame.
+   */
+  public static void plus(
+      double x, double y, double theta, double dx, double dy, double dtheta, double[] out) {
+    double cos = Math.cos(theta);
+    double sin = Math.sin(theta);
+    out[0] = x + dx * cos - dy * sin;
+    out[1] = y + dx * sin + dy * cos;
+    out[2] = MathUtil.angleModulus(theta + dtheta);
+  }
+
+  /**
+   * Applies the motion from one pose to another onto a third pose, the same as {@code
+   * base.plus(pose.minus(reference))}. Used to carry a vision correction forward by odometry.
+   */
+  public static void transformBy(
+      double baseX,
+      double baseY,
+      double baseTheta,
+      double referenceX,
+      double referenceY,
+      double referenceTheta,
+      double poseX,
+      double poseY,
+      double poseTheta,
+      double[] out) {
+    // Pose relative to the reference
+    double referenceCos = Math.cos(referenceTheta);
+    double referenceSin = Math.sin(referenceTheta);
+    double relativeX = (poseX - referenceX) * referenceCos + (poseY - referenceY) * referenceSin;
+    double relativeY = -(poseX - referenceX) * referenceSin + (poseY - referenceY) * referenceCos;
+    double relativeTheta = poseTheta - referenceTheta;
+
+    double baseCos = Math.cos(baseTheta);
+    double baseSin = Math.sin(baseTheta);
+    out[0] = baseX + relativeX * baseCos - relativeY * baseSin;
+    out[1] = baseY + relativeX * baseSin + relativeY * baseCos;
+    out[2] = MathUtil.angleModulus(baseTheta + relativeTheta);
+  }
+}
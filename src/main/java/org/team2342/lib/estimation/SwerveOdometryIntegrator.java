@@ -0,0 +1,164 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.estimation;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+
+/**
+ * Turns swerve module positions into robot twists, using only primitive math so high-frequency
+ * odometry doesn't allocate.
+ *
+ * <p>The twist is the same least-squares solution as {@link
+ * edu.wpi.first.math.kinematics.SwerveDriveKinematics#toTwist2d}, with the inverse of the
+ * kinematics normal matrix precomputed. The integrator also tracks the robot heading, from the gyro
+ * when there is one, or from the twists when there isn't.
+ */
+public class SwerveOdometryIntegrator {
+  private final int moduleCount;
+  private final double[] moduleX;
+  private final double[] moduleY;
+
+  // Inverse of the 3x3 kinematics normal matrix (A^T A), row major
+  private final double[] normalInverse = new double[9];
+
+  private final double[] lastDistances;
+  private double headingRad = 0.0;
+
+  // Result of the last update
+  private double dx = 0.0;
+  private double dy = 0.0;
+  private double dtheta = 0.0;
+  private double headingDeltaRad = 0.0;
+
+  /**
+   * Create a new integrator.
+   *
+   * @param moduleTranslations Position of each module relative to the robot center
+   */
+  public SwerveOdometryIntegrator(Translation2d[] moduleTranslations) {
+    moduleCount = moduleTranslations.length;
+    moduleX = new double[moduleCount];
+    moduleY = new double[moduleCount];
+    lastDistances = new double[moduleCount];
+
+    // Each module adds rows [1, 0, -y] and [0, 1, x] to A
+    double sumX = 0.0;
+    double sumY = 0.0;
+    double sumSquares = 0.0;
+    for (int i = 0; i < moduleCount; i++) {
+      moduleX[i] = moduleTranslations[i].getX();
+      moduleY[i] = moduleTranslations[i].getY();
+      sumX += moduleX[i];
+      sumY += moduleY[i];
+      sumSquares += moduleX[i] * moduleX[i] + moduleY[i] * moduleY[i];
+    }
+    invertSymmetric(moduleCount, 0.0, -sumY, moduleCount, sumX, sumSquares, normalInverse);
+  }
+
+  /**
+   * Set the wheel distances the next update measures deltas from, without producing a twist.
+   *
+   * @param distancesMeters Drive distance of each module in meters
+   */
+  public void resetWheelPositions(double[] distancesMeters) {
+    System.arraycopy(distancesMeters, 0, lastDistances, 0, moduleCount);
+  }
+
+  /**
+   * Set the current heading.
+   *
+   * @param headingRad Heading in radians
+   */
+  public void resetHeading(double headingRad) {
+    this.headingRad = headingRad;
+  }
+
+  /**
+   * Integrate one odometry sample.
+   *
+   * @param distancesMeters Drive distance of each module in meters
+   * @param anglesRad Turn angle of each module in radians
+   * @param gyroYawRad Gyro yaw in radians, or NaN to integrate the heading from the wheels instead
+   */
+  public void update(double[] distancesMeters, double[] anglesRad, double gyroYawRad) {
+    // A^T times the module displacements
+    double sumDx = 0.0;
+    double sumDy = 0.0;
+    double sumMoment = 0.0;
+    for (int i = 0; i < moduleCount; i++) {
+      double delta = distancesMeters[i] - lastDistances[i];
+      double moduleDx = delta * Math.cos(anglesRad[i]);
+      double moduleDy = delta * Math.sin(anglesRad[i]);
+      sumDx += moduleDx;
+      sumDy += moduleDy;
+      sumMoment += moduleX[i] * moduleDy - moduleY[i] * moduleDx;
+      lastDistances[i] = distancesMeters[i];
+    }
+
+    dx = normalInverse[0] * sumDx + normalInverse[1] * sumDy + normalInverse[2] * sumMoment;
+    dy = normalInverse[3] * sumDx + normalInverse[4] * sumDy + normalInverse[5] * sumMoment;
+    dtheta = normalInverse[6] * sumDx + normalInverse[7] * sumDy + normalInverse[8] * sumMoment;
+
+    if (Double.isNaN(gyroYawRad)) {
+      headingDeltaRad = dtheta;
+      headingRad += dtheta;
+    } else {
+      headingDeltaRad = MathUtil.angleModulus(gyroYawRad - headingRad);
+      headingRad = gyroYawRad;
+    }
+  }
+
+  /** Returns the robot-relative x displacement from the last update, in meters. */
+  public double getDx() {
+    return dx;
+  }
+
+  /** Returns the robot-relative y displacement from the last update, in meters. */
+  public double getDy() {
+    return dy;
+  }
+
+  /** Returns the rotation measured by the wheels in the last update, in radians. */
+  public double getWheelDtheta() {
+    return dtheta;
+  }
+
+  /** Returns the change in heading from the last update, in radians. */
+  public double getHeadingDeltaRad() {
+    return headingDeltaRad;
+  }
+
+  /** Returns the current heading in radians, not wrapped. */
+  public double getHeadingRad() {
+    return headingRad;
+  }
+
+  /** Inverts the symmetric matrix [[a, b, c], [b, d, e], [c, e, f]] into the given array. */
+  private static void invertSymmetric(
+      double a, double b, double c, double d, double e, double f, double[] result) {
+    double c00 = d * f - e * e;
+    double c01 = c * e - b * f;
+    double c02 = b * e - c * d;
+    double c11 = a * f - c * c;
+    double c12 = b * c - a * e;
+    double c22 = a * d - b * b;
+    double determinant = a * c00 + b * c01 + c * c02;
+    if (Math.abs(determinant) < 1e-12) {
+      throw new IllegalArgumentException("Module translations can't determine a twist");
+    }
+    result[0] = c00 / determinant;
+    result[1] = c01 / determinant;
+    result[2] = c02 / determinant;
+    result[3] = c01 / determinant;
+    result[4] = c11 / determinant;
+    result[5] = c12 / determinant;
+    result[6] = c02 / determinant;
+    result[7] = c12 / determinant;
+    result[8] = c22 / determinant;
+  }
+}
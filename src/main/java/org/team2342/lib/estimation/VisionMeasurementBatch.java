@@ -0,0 +1,154 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.estimation;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import java.util.Arrays;
+
+/**
+ * Vision measurements collected over one loop cycle, to be applied to a pose estimator together.
+ *
+ * <p>Measurements are stored in parallel primitive arrays that are reused between cycles, and can
+ * be added in any order. {@link #sort()} orders them by timestamp, so the estimator can apply them
+ * oldest first in a single pass.
+ */
+public class VisionMeasurementBatch {
+  private int size = 0;
+  private int[] order = new int[8];
+  private double[] timestamps = new double[8];
+  private double[] xs = new double[8];
+  private double[] ys = new double[8];
+  private double[] thetas = new double[8];
+  private double[] xStdDevs = new double[8];
+  private double[] yStdDevs = new double[8];
+  private double[] thetaStdDevs = new double[8];
+
+  /**
+   * Add a measurement.
+   *
+   * @param pose Robot pose measured by vision
+   * @param timestampSeconds Time the measurement was taken in seconds
+   * @param linearStdDev Standard deviation of the x and y position in meters
+   * @param angularStdDev Standard deviation of the heading in radians
+   */
+  public void add(Pose2d pose, double timestampSeconds, double linearStdDev, double angularStdDev) {
+    add(
+        timestampSeconds,
+        pose.getX(),
+        pose.getY(),
+        pose.getRotation().getRadians(),
+        linearStdDev,
+        linearStdDev,
+        angularStdDev);
+  }
+
+  /**
+   * Add a measurement.
+   *
+   * @param timestampSeconds Time the measurement was taken in seconds
+   * @param x X position in meters
+   * @param y Y position in meters
+   * @param theta Heading in radians
+   * @param xStdDev Standard deviation of the x position in meters
+   * @param yStdDev Standard deviation of the y position in meters
+   * @param thetaStdDev Standard deviation of the heading in radians
+   */
+  public void add(
+      double timestampSeconds,
+      double x,
+      double y,
+      double theta,
+      double xStdDev,
+      double yStdDev,
+      double thetaStdDev) {
+    if (size == timestamps.length) {
+      grow();
+    }
+    order[size] = size;
+    timestamps[size] = timestampSeconds;
+    xs[size] = x;
+    ys[size] = y;
+    thetas[size] = theta;
+    xStdDevs[size] = xStdDev;
+    yStdDevs[size] = yStdDev;
+    thetaStdDevs[size] = thetaStdDev;
+    size++;
+  }
+
+  /**
+   * Order the measurements by timestamp, oldest first. Insertion sort, since measurements from each
+   * camera are already in order and there are only a few per cycle.
+   */
+  public void sort() {
+    for (int i = 1; i < size; i++) {
+      int current = order[i];
+      int j = i - 1;
+      while (j >= 0 && timestamps[order[j]] > timestamps[current]) {
+        order[j + 1] = order[j];
+        j--;
+      }
+      order[j + 1] = current;
+    }
+  }
+
+  /** Remove all measurements, keeping the storage. */
+  public void clear() {
+    size = 0;
+  }
+
+  /** Returns the number of measurements. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the timestamp of the i-th measurement in seconds, in sorted order after sorting. */
+  public double getTimestamp(int i) {
+    return timestamps[order[i]];
+  }
+
+  /** Returns the x position of the i-th measurement in meters. */
+  public double getX(int i) {
+    return xs[order[i]];
+  }
+
+  /** Returns the y position of the i-th measurement in meters. */
+  public double getY(int i) {
+    return ys[order[i]];
+  }
+
+  /** Returns the heading of the i-th measurement in radians. */
+  public double getTheta(int i) {
+    return thetas[order[i]];
+  }
+
+  /** Returns the x standard deviation of the i-th measurement in meters. */
+  public double getXStdDev(int i) {
+    return xStdDevs[order[i]];
+  }
+
+  /** Returns the y standard deviation of the i-th measurement in meters. */
+  public double getYStdDev(int i) {
+    return yStdDevs[order[i]];
+  }
+
+  /** Returns the heading standard deviation of the i-th measurement in radians. */
+  public double getThetaStdDev(int i) {
+    return thetaStdDevs[order[i]];
+  }
+
+  private void grow() {
+    int capacity = timestamps.length * 2;
+    order = Arrays.copyOf(order, capacity);
+    timestamps = Arrays.copyOf(timestamps, capacity);
+    xs = Arrays.copyOf(xs, capacity);
+    ys = Arrays.copyOf(ys, capacity);
+    thetas = Arrays.copyOf(thetas, capacity);
+    xStdDevs = Arrays.copyOf(xStdDevs, capacity);
+    yStdDevs = Arrays.copyOf(yStdDevs, capacity);
+    thetaStdDevs = Arrays.copyOf(thetaStdDevs, capacity);
+  }
+}
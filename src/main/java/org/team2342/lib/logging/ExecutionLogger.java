@@ -9,18 +9,35 @@ package org.team2342.lib.logging;
 import edu.wpi.first.wpilibj.Timer;
 import org.littletonrobotics.junction.Logger;
 
-/** Class to log code execution times */
+/**
+ * Class to log code execution times.
+ *
+ * <p>Each thread times against its own instance, so robots stepped on different threads don't
+ * clobber each other's timings.
+ */
 public class ExecutionLogger {
+  private static final ThreadLocal<ExecutionLogger> current =
+      ThreadLocal.withInitial(ExecutionLogger::new);
 
-  private static double lastMS = 0.0;
+  private double lastMS = 0.0;
 
   /** Reset time. */
   public static void reset() {
-    lastMS = Timer.getFPGATimestamp() * 1000.0;
+    current.get().resetTime();
   }
 
   /** Log execution time under the given name. */
   public static void log(String name) {
+    current.get().logTime(name);
+  }
+
+  /** Reset time. */
+  private void resetTime() {
+    lastMS = Timer.getFPGATimestamp() * 1000.0;
+  }
+
+  /** Log execution time since the last reset or log under the given name. */
+  private void logTime(String name) {
     double currentMS = Timer.getFPGATimestamp() * 1000.0;
     Logger.recordOutput(String.format("ExecutionLogger/%sMS", name), currentMS - lastMS);
     lastMS = currentMS;
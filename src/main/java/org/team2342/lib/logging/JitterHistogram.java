@@ -0,0 +1,93 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.logging;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Histogram of how far a periodic loop's actual period is from its requested period.
+ *
+ * <p>One worker thread records periods while the main loop logs them, without locking. Bins are
+ * evenly spaced in microseconds of error, with the first and last bins catching everything past
+ * either end. The logged mean is approximate, since the total error and sample count aren't read
+ * together and can be one sample apart.
+ */
+public class JitterHistogram {
+  private final String countsKey;
+  private final String binWidthKey;
+  private final String maxErrorKey;
+  private final String meanAbsErrorKey;
+  private final double periodSeconds;
+  private final double binWidthMicros;
+  private final AtomicLongArray counts;
+
+  // Only written by the recording thread
+  private volatile double lastTimestamp = Double.NaN;
+  private volatile double maxErrorMicros = 0.0;
+  private volatile double totalAbsErrorMicros = 0.0;
+  private volatile long samples = 0;
+
+  // Reused when logging, only used from the main loop
+  private final long[] countSnapshot;
+
+  /**
+   * Create a new histogram.
+   *
+   * @param key Key to log under
+   * @param periodSeconds Requested loop period in seconds
+   * @param binWidthMicros Width of each bin in microseconds
+   * @param binCount Number of bins, centered on zero error. Must be odd.
+   */
+  public JitterHistogram(String key, double periodSeconds, double binWidthMicros, int binCount) {
+    if (binCount < 1 || binCount % 2 == 0) {
+      throw new IllegalArgumentException("Jitter histogram needs an odd, positive bin count");
+    }
+    countsKey = key + "/Counts";
+    binWidthKey = key + "/BinWidthMicros";
+    maxErrorKey = key + "/MaxErrorMicros";
+    meanAbsErrorKey = key + "/MeanAbsErrorMicros";
+    this.periodSeconds = periodSeconds;
+    this.binWidthMicros = binWidthMicros;
+    counts = new AtomicLongArray(binCount);
+    countSnapshot = new long[binCount];
+  }
+
+  /**
+   * Record the start of a loop iteration. The time since the previous call is counted as one
+   * period. Must only be called from one thread.
+   *
+   * @param timestampSeconds Current time in seconds
+   */
+  public void record(double timestampSeconds) {
+    double last = lastTimestamp;
+    lastTimestamp = timestampSeconds;
+    if (Double.isNaN(last)) return;
+
+    double errorMicros = (timestampSeconds - last - periodSeconds) * 1e6;
+    int center = counts.length() / 2;
+    int bin = center + (int) Math.round(errorMicros / binWidthMicros);
+    counts.incrementAndGet(Math.max(0, Math.min(counts.length() - 1, bin)));
+
+    maxErrorMicros = Math.max(maxErrorMicros, Math.abs(errorMicros));
+    totalAbsErrorMicros += Math.abs(errorMicros);
+    samples++;
+  }
+
+  /** Log the histogram and summary statistics. */
+  public void log() {
+    for (int i = 0; i < countSnapshot.length; i++) {
+      countSnapshot[i] = counts.get(i);
+    }
+    long currentSamples = samples;
+    Logger.recordOutput(countsKey, countSnapshot);
+    Logger.recordOutput(binWidthKey, binWidthMicros);
+    Logger.recordOutput(maxErrorKey, maxErrorMicros);
+    Logger.recordOutput(
+        meanAbsErrorKey, currentSamples > 0 ? totalAbsErrorMicros / currentSamples : 0.0);
+  }
+}
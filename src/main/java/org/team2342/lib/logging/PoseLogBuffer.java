@@ -0,0 +1,89 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.logging;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Reusable list of poses to log each loop cycle.
+ *
+ * <p>Logged arrays must be exactly as long as the number of poses, so the buffer keeps one array of
+ * each length it has needed and copies into it when logging. After the first few cycles, filling
+ * and logging the buffer doesn't allocate. Poses past the capacity are counted but not kept.
+ *
+ * <p>The number of poses is logged as well, under the key with "Count" appended, so the poses
+ * themselves can be left out to save logging time.
+ */
+public class PoseLogBuffer {
+  private final String key;
+  private final String countKey;
+  private final Pose3d[] poses;
+  private final Pose3d[][] exactArrays;
+  private int size = 0;
+  private int count = 0;
+
+  /**
+   * Create a new buffer.
+   *
+   * @param key Key to log the poses under
+   * @param capacity Most poses to keep each cycle
+   */
+  public PoseLogBuffer(String key, int capacity) {
+    this.key = key;
+    countKey = key + "Count";
+    poses = new Pose3d[capacity];
+    exactArrays = new Pose3d[capacity + 1][];
+  }
+
+  /** Add a pose, dropping it if the buffer is full. */
+  public void add(Pose3d pose) {
+    count++;
+    if (size < poses.length) {
+      poses[size++] = pose;
+    }
+  }
+
+  /** Add every pose kept by another buffer. */
+  public void addAll(PoseLogBuffer other) {
+    for (int i = 0; i < other.size; i++) {
+      add(other.poses[i]);
+    }
+    count += other.count - other.size;
+  }
+
+  /** Remove all poses, keeping the storage. */
+  public void clear() {
+    size = 0;
+    count = 0;
+  }
+
+  /** Returns the number of poses added since the last clear, including dropped ones. */
+  public int count() {
+    return count;
+  }
+
+  /**
+   * Log the pose count, and the poses unless only counts are wanted.
+   *
+   * @param countOnly Whether to only log the number of poses
+   */
+  public void log(boolean countOnly) {
+    Logger.recordOutput(countKey, count);
+    if (countOnly) {
+      return;
+    }
+
+    Pose3d[] array = exactArrays[size];
+    if (array == null) {
+      array = new Pose3d[size];
+      exactArrays[size] = array;
+    }
+    System.arraycopy(poses, 0, array, 0, size);
+    Logger.recordOutput(key, array);
+  }
+}
@@ -6,6 +6,7 @@
 
 package org.team2342.lib.util;
 
+import edu.wpi.first.apriltag.AprilTag;
 import edu.wpi.first.apriltag.AprilTagFieldLayout;
 import edu.wpi.first.apriltag.AprilTagFields;
 import edu.wpi.first.math.geometry.Pose2d;
@@ -18,23 +19,65 @@ import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
 import lombok.Getter;
-import lombok.Setter;
 
-/** Class with alliance-related utility functions */
+/**
+ * Class with alliance-related utility functions
+ *
+ * <p>Tag poses and field dimensions are copied out of the field layout whenever it changes, so
+ * looking them up is an array access that doesn't allocate.
+ */
 public class AllianceUtils {
+  private static final Rotation3d HALF_TURN = new Rotation3d(0.0, 0.0, Math.PI);
 
-  @Getter @Setter
+  @Getter
   private static AprilTagFieldLayout fieldLayout =
       AprilTagFieldLayout.loadField(AprilTagFields.k2026RebuiltAndymark);
 
+  // Replaced all at once, so readers always see tables from a single layout
+  private static volatile FieldTables tables = buildTables(fieldLayout);
+
+  public static void setFieldLayout(AprilTagFieldLayout layout) {
+    fieldLayout = layout;
+    tables = buildTables(layout);
+  }
+
   public static void loadFieldLayout(String resourcePath) {
     try {
-      fieldLayout = AprilTagFieldLayout.loadFromResource(resourcePath);
+      setFieldLayout(AprilTagFieldLayout.loadFromResource(resourcePath));
     } catch (Exception e) {
       DriverStation.reportError("Failed to load AprilTagFieldLayout from resource", false);
     }
   }
 
+  /** Returns the field length of the current layout in meters. */
+  public static double getFieldLength() {
+    return tables.fieldLength();
+  }
+
+  /** Returns the field width of the current layout in meters. */
+  public static double getFieldWidth() {
+    return tables.fieldWidth();
+  }
+
+  /**
+   * Returns the pose of a tag in the current layout, or null if the layout doesn't have it. Same as
+   * {@link AprilTagFieldLayout#getTagPose}, without the lookup or the optional.
+   */
+  public static Pose3d getTagPose(int id) {
+    Pose3d[] bluePoses = tables.bluePoses();
+    return id >= 0 && id < bluePoses.length ? bluePoses[id] : null;
+  }
+
+  /**
+   * Returns the pose of a tag flipped to the current alliance, or null if the layout doesn't have
+   * it. Same as {@code flipToAlliance(getTagPose(id))}.
+   */
+  public static Pose3d getTagPoseForAlliance(int id) {
+    FieldTables current = tables;
+    Pose3d[] poses = isRedAlliance() ? current.redPoses() : current.bluePoses();
+    return id >= 0 && id < poses.length ? poses[id] : null;
+  }
+
   public static boolean isRedAlliance() {
     var alliance = DriverStation.getAlliance();
 
@@ -62,11 +105,7 @@ public class AllianceUtils {
 
   public static Pose3d flipToAlliance(Pose3d bluePose, AprilTagFieldLayout field) {
     return isRedAlliance()
-        ? new Pose3d(
-            field.getFieldLength() - bluePose.getX(),
-            field.getFieldWidth() - bluePose.getY(),
-            bluePose.getZ(),
-            bluePose.getRotation().rotateBy(new Rotation3d(0.0, 0.0, Math.PI)))
+        ? flip(bluePose, field.getFieldLength(), field.getFieldWidth())
         : bluePose;
   }
 
@@ -90,18 +129,68 @@ public class AllianceUtils {
   }
 
   public static Pose2d flipToAlliance(Pose2d bluePose) {
-    return flipToAlliance(bluePose, fieldLayout);
+    FieldTables current = tables;
+    return isRedAlliance()
+        ? new Pose2d(
+            current.fieldLength() - bluePose.getX(),
+            current.fieldWidth() - bluePose.getY(),
+            bluePose.getRotation().rotateBy(Rotation2d.kPi))
+        : bluePose;
   }
 
   public static Pose3d flipToAlliance(Pose3d bluePose) {
-    return flipToAlliance(bluePose, fieldLayout);
+    FieldTables current = tables;
+    return isRedAlliance() ? flip(bluePose, current.fieldLength(), current.fieldWidth()) : bluePose;
   }
 
   public static Translation2d flipToAlliance(Translation2d blueTranslation) {
-    return flipToAlliance(blueTranslation, fieldLayout);
+    FieldTables current = tables;
+    return isRedAlliance()
+        ? new Translation2d(
+            current.fieldLength() - blueTranslation.getX(),
+            current.fieldWidth() - blueTranslation.getY())
+        : blueTranslation;
   }
 
   public static Translation3d flipToAlliance(Translation3d blueTranslation) {
-    return flipToAlliance(blueTranslation, fieldLayout);
+    FieldTables current = tables;
+    return isRedAlliance()
+        ? new Translation3d(
+            current.fieldLength() - blueTranslation.getX(),
+            current.fieldWidth() - blueTranslation.getY(),
+            blueTranslation.getZ())
+        : blueTranslation;
   }
+
+  private static Pose3d flip(Pose3d bluePose, double fieldLength, double fieldWidth) {
+    return new Pose3d(
+        fieldLength - bluePose.getX(),
+        fieldWidth - bluePose.getY(),
+        bluePose.getZ(),
+        bluePose.getRotation().rotateBy(HALF_TURN));
+  }
+
+  private static FieldTables buildTables(AprilTagFieldLayout layout) {
+    int maxId = -1;
+    for (AprilTag tag : layout.getTags()) {
+      maxId = Math.max(maxId, tag.ID);
+    }
+
+    double fieldLength = layout.getFieldLength();
+    double fieldWidth = layout.getFieldWidth();
+    Pose3d[] bluePoses = new Pose3d[maxId + 1];
+    Pose3d[] redPoses = new Pose3d[maxId + 1];
+    for (AprilTag tag : layout.getTags()) {
+      if (tag.ID < 0) continue;
+      bluePoses[tag.ID] = layout.getTagPose(tag.ID).orElse(null);
+      if (bluePoses[tag.ID] != null) {
+        redPoses[tag.ID] = flip(bluePoses[tag.ID], fieldLength, fieldWidth);
+      }
+    }
+    return new FieldTables(bluePoses, redPoses, fieldLength, fieldWidth);
+  }
+
+  /** Tag poses indexed by ID for each alliance, and the field size, from one layout. */
+  private static record FieldTables(
+      Pose3d[] bluePoses, Pose3d[] redPoses, double fieldLength, double fieldWidth) {}
 }
@@ -6,7 +6,9 @@
 
 package org.team2342.lib.util;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import edu.wpi.first.math.MatBuilder;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.Matrix;
@@ -19,22 +21,44 @@ import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.math.numbers.N8;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Filesystem;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.Getter;
 import lombok.Setter;
 
+/**
+ * Camera name, resolution, calibration and position on the robot.
+ *
+ * <p>Calibrations loaded with {@link #loadFromName} aren't read until they're first used. The
+ * calibration JSON is only parsed once, after which the intrinsics are kept in a small binary cache
+ * file that's read instead until the JSON changes. Cameras loaded from the same calibration share
+ * the same matrices, which must not be modified.
+ */
 public class CameraParameters {
+  private static final int CACHE_MAGIC = 0x43414c31; // "CAL1"
+  private static final String CACHE_DIRECTORY = "calibration-cache";
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  // Calibrations already loaded this run, by file and resolution
+  private static final Map<String, Calibration> loadedCalibrations = new ConcurrentHashMap<>();
 
   @Getter @Setter private String cameraName;
   @Getter @Setter private int resWidth, resHeight;
-  @Getter @Setter private Matrix<N3, N3> cameraMatrix;
-  @Getter @Setter private Matrix<N8, N1> distCoeffs;
-  @Getter @Setter private double avgErrorPx;
-  @Getter @Setter private double errorStdDevPx;
+  private Matrix<N3, N3> cameraMatrix;
+  private Matrix<N8, N1> distCoeffs;
+  private double avgErrorPx;
+  private double errorStdDevPx;
   @Getter @Setter private Transform3d transform;
 
+  // Calibration file to read on first use, null once the calibration is loaded
+  private volatile Path calibrationPath = null;
+
   public CameraParameters(
       String cameraName,
       int resWidth,
@@ -68,9 +92,112 @@ public class CameraParameters {
     this.cameraName = cameraName;
     this.resWidth = resWidth;
     this.resHeight = resHeight;
+    apply(basicCalibration(resWidth, resHeight, avgErrorPx, errorStdDevPx, fovDiag));
+  }
+
+  public CameraParameters(String cameraName, int resWidth, int resHeight, Path path)
+      throws IOException {
+    this.cameraName = cameraName;
+    this.resWidth = resWidth;
+    this.resHeight = resHeight;
+    apply(loadCalibration(path, resWidth, resHeight));
+  }
+
+  /**
+   * Returns parameters for a camera with a calibration in the deploy directory, named {@code
+   * calibrations/<camera name>_<width>.json}. The calibration is read on first use, and if it can't
+   * be, basic parameters with no distortion are used instead.
+   */
+  public static CameraParameters loadFromName(String cameraName, int resWidth, int resHeight) {
+    CameraParameters parameters =
+        new CameraParameters(cameraName, resWidth, resHeight, 0.02, 0.05, null, null, null);
+    parameters.calibrationPath =
+        Filesystem.getDeployDirectory()
+            .toPath()
+            .resolve("calibrations/" + cameraName + "_" + resWidth + ".json");
+    return parameters;
+  }
+
+  public CameraParameters withTransform(Transform3d transform) {
+    this.transform = transform;
+    return this;
+  }
+
+  /** Returns the camera matrix, shared with other cameras using the same calibration. */
+  public Matrix<N3, N3> getCameraMatrix() {
+    ensureLoaded();
+    return cameraMatrix;
+  }
+
+  public void setCameraMatrix(Matrix<N3, N3> cameraMatrix) {
+    ensureLoaded();
+    this.cameraMatrix = cameraMatrix;
+  }
+
+  /** Returns the distortion coefficients, shared with other cameras using the same calibration. */
+  public Matrix<N8, N1> getDistCoeffs() {
+    ensureLoaded();
+    return distCoeffs;
+  }
+
+  public void setDistCoeffs(Matrix<N8, N1> distCoeffs) {
+    ensureLoaded();
+    this.distCoeffs = distCoeffs;
+  }
+
+  public double getAvgErrorPx() {
+    ensureLoaded();
+    return avgErrorPx;
+  }
+
+  public void setAvgErrorPx(double avgErrorPx) {
+    ensureLoaded();
     this.avgErrorPx = avgErrorPx;
+  }
+
+  public double getErrorStdDevPx() {
+    ensureLoaded();
+    return errorStdDevPx;
+  }
+
+  public void setErrorStdDevPx(double errorStdDevPx) {
+    ensureLoaded();
     this.errorStdDevPx = errorStdDevPx;
+  }
+
+  /** Reads the calibration file if it hasn't been read yet. */
+  private void ensureLoaded() {
+    if (calibrationPath == null) return;
+    synchronized (this) {
+      Path path = calibrationPath;
+      if (path == null) return;
+
+      Calibration calibration;
+      try {
+        calibration = loadCalibration(path, resWidth, resHeight);
+      } catch (Exception e) {
+        System.out.println(e);
+        DriverStation.reportError(
+            "Error while loading camera " + cameraName + ". Resorting to basic parameters", false);
+        calibration = basicCalibration(resWidth, resHeight, 0.02, 0.05, Rotation2d.kCCW_90deg);
+      }
+      apply(calibration);
+      calibrationPath = null;
+    }
+  }
+
+  private void apply(Calibration calibration) {
+    resWidth = calibration.resWidth();
+    resHeight = calibration.resHeight();
+    cameraMatrix = calibration.cameraMatrix();
+    distCoeffs = calibration.distCoeffs();
+    avgErrorPx = calibration.avgErrorPx();
+    errorStdDevPx = calibration.errorStdDevPx();
+  }
 
+  /** Calibration with no distortion, a centered principal point and the given field of view. */
+  private static Calibration basicCalibration(
+      int resWidth, int resHeight, double avgErrorPx, double errorStdDevPx, Rotation2d fovDiag) {
     if (fovDiag.getDegrees() < 1 || fovDiag.getDegrees() > 179) {
       fovDiag = Rotation2d.fromDegrees(MathUtil.clamp(fovDiag.getDegrees(), 1, 179));
       DriverStation.reportError(
@@ -82,7 +209,7 @@ public class CameraParameters {
     var fovHeight = new Rotation2d(Math.atan(diagRatio * (resHeight / resDiag)) * 2);
 
     // assume no distortion
-    distCoeffs = VecBuilder.fill(0, 0, 0, 0, 0, 0, 0, 0);
+    Matrix<N8, N1> distCoeffs = VecBuilder.fill(0, 0, 0, 0, 0, 0, 0, 0);
 
     // assume centered principal point (pixels)
     double cx = resWidth / 2.0 - 0.5;
@@ -93,78 +220,175 @@ public class CameraParameters {
     double fy = cy / Math.tan(fovHeight.getRadians() / 2.0);
 
     // create camera intrinsics matrix
-    cameraMatrix = MatBuilder.fill(Nat.N3(), Nat.N3(), fx, 0, cx, 0, fy, cy, 0, 0, 1);
+    Matrix<N3, N3> cameraMatrix =
+        MatBuilder.fill(Nat.N3(), Nat.N3(), fx, 0, cx, 0, fy, cy, 0, 0, 1);
+    return new Calibration(
+        resWidth, resHeight, cameraMatrix, distCoeffs, avgErrorPx, errorStdDevPx);
   }
 
-  public CameraParameters(String cameraName, int resWidth, int resHeight, Path path)
+  /**
+   * Loads a calibration, from memory if it's already been loaded, then from the binary cache if
+   * it's up to date, and otherwise by parsing the JSON and updating the cache.
+   */
+  private static Calibration loadCalibration(Path path, int resWidth, int resHeight)
       throws IOException {
-    this.cameraName = cameraName;
-    var mapper = new ObjectMapper();
-    var json = mapper.readTree(path.toFile());
-    // json = json.get("calibrations");
-    boolean success = false;
-    try {
-      for (int i = 0; i < json.size() && !success; i++) {
-        // check if this calibration entry is our desired resolution
-        int jsonWidth = json.get("resolution").get("width").asInt();
-        int jsonHeight = json.get("resolution").get("height").asInt();
-        if (jsonWidth != resWidth || jsonHeight != resHeight) continue;
-        // get the relevant calibration values
-        var jsonIntrinsicsNode = json.get("cameraIntrinsics").get("data");
-        double[] jsonIntrinsics = new double[jsonIntrinsicsNode.size()];
-        for (int j = 0; j < jsonIntrinsicsNode.size(); j++) {
-          jsonIntrinsics[j] = jsonIntrinsicsNode.get(j).asDouble();
-        }
-        var jsonDistortNode = json.get("distCoeffs").get("data");
-        double[] jsonDistortion = new double[8];
-        Arrays.fill(jsonDistortion, 0);
-        for (int j = 0; j < jsonDistortNode.size(); j++) {
-          jsonDistortion[j] = jsonDistortNode.get(j).asDouble();
-        }
+    String key = path.toAbsolutePath() + ":" + resWidth + "x" + resHeight;
+    Calibration calibration = loadedCalibrations.get(key);
+    if (calibration != null) return calibration;
 
-        // not working
-        // var jsonViewErrors = json.get("perViewErrors");
-        // double jsonAvgError = 0;
-        // for (int j = 0; j < jsonViewErrors.size(); j++) {
-        //   jsonAvgError += jsonViewErrors.get(j).asDouble();
-        // }
-        // jsonAvgError /= jsonViewErrors.size();
-        // double jsonErrorStdDev = json.get("standardDeviation").asDouble();
-
-        // assign the read JSON values to this CameraProperties
-        this.resWidth = jsonWidth;
-        this.resHeight = jsonHeight;
-        this.cameraMatrix = MatBuilder.fill(Nat.N3(), Nat.N3(), jsonIntrinsics);
-        this.distCoeffs = MatBuilder.fill(Nat.N8(), Nat.N1(), jsonDistortion);
-        avgErrorPx = 0.02; // jsonAvgError;
-        errorStdDevPx = 0.05; // jsonErrorStdDev;
-        success = true;
-      }
-    } catch (Exception e) {
-      throw new IOException("Invalid calibration JSON");
+    long jsonModified = Files.getLastModifiedTime(path).toMillis();
+    long jsonSize = Files.size(path);
+    String fileName = path.getFileName().toString().replace(".json", "");
+    Path cachePath =
+        Filesystem.getOperatingDirectory()
+            .toPath()
+            .resolve(CACHE_DIRECTORY)
+            .resolve(fileName + "_" + resWidth + "x" + resHeight + ".bin");
+
+    calibration = readCache(cachePath, jsonModified, jsonSize, resWidth, resHeight);
+    if (calibration == null) {
+      calibration = parseCalibration(path, resWidth, resHeight);
+      writeCache(cachePath, jsonModified, jsonSize, calibration);
     }
-    if (!success) throw new IOException("Requested resolution not found in calibration");
+    loadedCalibrations.put(key, calibration);
+    return calibration;
   }
 
-  public static CameraParameters loadFromName(String cameraName, int resWidth, int resHeight) {
-    try {
-      return new CameraParameters(
-          cameraName,
+  /** Reads a cached calibration, or returns null if there isn't an up to date one. */
+  private static Calibration readCache(
+      Path cachePath, long jsonModified, long jsonSize, int resWidth, int resHeight) {
+    if (!Files.exists(cachePath)) return null;
+    try (var input = new DataInputStream(Files.newInputStream(cachePath))) {
+      if (input.readInt() != CACHE_MAGIC
+          || input.readLong() != jsonModified
+          || input.readLong() != jsonSize
+          || input.readInt() != resWidth
+          || input.readInt() != resHeight) {
+        return null;
+      }
+      double[] intrinsics = new double[9];
+      for (int i = 0; i < 9; i++) intrinsics[i] = input.readDouble();
+      double[] distortion = new double[8];
+      for (int i = 0; i < 8; i++) distortion[i] = input.readDouble();
+      return new Calibration(
           resWidth,
           resHeight,
-          Filesystem.getDeployDirectory()
-              .toPath()
-              .resolve("calibrations/" + cameraName + "_" + resWidth + ".json"));
+          MatBuilder.fill(Nat.N3(), Nat.N3(), intrinsics),
+          MatBuilder.fill(Nat.N8(), Nat.N1(), distortion),
+          input.readDouble(),
+          input.readDouble());
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /** Writes a calibration to the cache, warning instead of failing if it can't. */
+  private static void writeCache(
+      Path cachePath, long jsonModified, long jsonSize, Calibration calibration) {
+    try {
+      Files.createDirectories(cachePath.getParent());
+      Path temporary = cachePath.resolveSibling(cachePath.getFileName() + ".tmp");
+      try (var output = new DataOutputStream(Files.newOutputStream(temporary))) {
+        output.writeInt(CACHE_MAGIC);
+        output.writeLong(jsonModified);
+        output.writeLong(jsonSize);
+        output.writeInt(calibration.resWidth());
+        output.writeInt(calibration.resHeight());
+        for (int i = 0; i < 9; i++)
+          output.writeDouble(calibration.cameraMatrix().get(i / 3, i % 3));
+        for (int i = 0; i < 8; i++) output.writeDouble(calibration.distCoeffs().get(i, 0));
+        output.writeDouble(calibration.avgErrorPx());
+        output.writeDouble(calibration.errorStdDevPx());
+      }
+      Files.move(temporary, cachePath, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      DriverStation.reportWarning("Failed to cache camera calibration: " + e.getMessage(), false);
+    }
+  }
+
+  /**
+   * Parses a calibration JSON, streaming over it so the calibration observations it also contains
+   * are skipped instead of read into memory.
+   */
+  private static Calibration parseCalibration(Path path, int resWidth, int resHeight)
+      throws IOException {
+    int jsonWidth = -1;
+    int jsonHeight = -1;
+    double[] intrinsics = null;
+    double[] distortion = new double[8];
+
+    try (JsonParser parser = JSON_FACTORY.createParser(path.toFile())) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Invalid calibration JSON");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        parser.nextToken();
+        switch (field) {
+          case "resolution" -> {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+              String name = parser.currentName();
+              parser.nextToken();
+              if (name.equals("width")) jsonWidth = parser.getValueAsInt();
+              else if (name.equals("height")) jsonHeight = parser.getValueAsInt();
+              else parser.skipChildren();
+            }
+          }
+          case "cameraIntrinsics" -> {
+            intrinsics = new double[9];
+            if (readData(parser, intrinsics) != 9) {
+              throw new IOException("Invalid calibration JSON");
+            }
+          }
+          case "distCoeffs" -> readData(parser, distortion);
+          default -> parser.skipChildren();
+        }
+      }
+    } catch (IOException e) {
+      throw e;
     } catch (Exception e) {
-      System.out.println(e);
-      DriverStation.reportError(
-          "Error while loading camera " + cameraName + ". Resorting to basic parameters", false);
-      return new CameraParameters(cameraName, resWidth, resHeight);
+      throw new IOException("Invalid calibration JSON");
+    }
+
+    if (intrinsics == null) throw new IOException("Invalid calibration JSON");
+    if (jsonWidth != resWidth || jsonHeight != resHeight) {
+      throw new IOException("Requested resolution not found in calibration");
     }
+    return new Calibration(
+        jsonWidth,
+        jsonHeight,
+        MatBuilder.fill(Nat.N3(), Nat.N3(), intrinsics),
+        MatBuilder.fill(Nat.N8(), Nat.N1(), distortion),
+        0.02,
+        0.05);
   }
 
-  public CameraParameters withTransform(Transform3d transform) {
-    this.transform = transform;
-    return this;
+  /**
+   * Reads the "data" array of a matrix object into the array, ignoring any extra values. Returns
+   * how many values were read.
+   */
+  private static int readData(JsonParser parser, double[] values) throws IOException {
+    int count = 0;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.currentName();
+      parser.nextToken();
+      if (!name.equals("data")) {
+        parser.skipChildren();
+        continue;
+      }
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+        if (count < values.length) values[count++] = parser.getValueAsDouble();
+      }
+    }
+    return count;
   }
+
+  /** A calibration as read from a file. */
+  private static record Calibration(
+      int resWidth,
+      int resHeight,
+      Matrix<N3, N3> cameraMatrix,
+      Matrix<N8, N1> distCoeffs,
+      double avgErrorPx,
+      double errorStdDevPx) {}
 }
@@ -0,0 +1,258 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free ring buffer of primitive doubles, for handing samples from one producer thread to one
+ * consumer thread.
+ *
+ * <p>The buffer stores fixed-length records of {@code stride} values. A whole record becomes
+ * visible to the consumer at once, so a producer can publish several related values (e.g. one
+ * sample of every signal) atomically. With a stride of one, each record is a single sample.
+ *
+ * <p>Only one thread may call the {@code offer} methods, and only one (possibly different) thread
+ * may call {@link #drainTo(double[])} or {@link #clear()}. Values are never boxed, so steady-state
+ * use doesn't allocate.
+ */
+public class DoubleRingBuffer {
+  /** Largest capacity (in records) a buffer using {@link OverflowPolicy#GROW} will grow to. */
+  public static final int MAX_GROW_CAPACITY = 1 << 16;
+
+  /** What to do with a new record when the buffer is full. */
+  public enum OverflowPolicy {
+    /** Overwrite the oldest record in the buffer with the new one */
+    DROP_OLDEST,
+    /** Discard the new record */
+    DROP_NEWEST,
+    /** Double the capacity of the buffer, dropping the oldest record past the max capacity */
+    GROW
+  }
+
+  private final OverflowPolicy policy;
+  private final int stride;
+
+  // Only replaced by the producer when growing, capacity is always a power of two records
+  private volatile double[] buffer;
+
+  // Both indices count records and only ever increase, the slot is the index masked by the capacity
+  private final AtomicLong head = new AtomicLong(); // Next record to read
+  private final AtomicLong tail = new AtomicLong(); // Next record to write
+
+  // Statistics, only written by the producer
+  private volatile long droppedCount = 0;
+  private volatile int highWaterMark = 0;
+
+  // Statistics, only written by the consumer
+  private volatile long retryCount = 0;
+
+  /**
+   * Create a new ring buffer of single samples that drops new samples when full.
+   *
+   * @param capacity Minimum number of samples the buffer can hold. Rounded up to the next power of
+   *     two.
+   */
+  public DoubleRingBuffer(int capacity) {
+    this(capacity, OverflowPolicy.DROP_NEWEST);
+  }
+
+  /**
+   * Create a new ring buffer of single samples.
+   *
+   * @param capacity Minimum number of samples the buffer can hold. Rounded up to the next power of
+   *     two.
+   * @param policy What to do with new samples when the buffer is full
+   */
+  public DoubleRingBuffer(int capacity, OverflowPolicy policy) {
+    this(capacity, 1, policy);
+  }
+
+  /**
+   * Create a new ring buffer of fixed-length records.
+   *
+   * @param capacity Minimum number of records the buffer can hold. Rounded up to the next power of
+   *     two.
+   * @param stride Number of values in each record
+   * @param policy What to do with new records when the buffer is full
+   */
+  public DoubleRingBuffer(int capacity, int stride, OverflowPolicy policy) {
+    if (capacity < 1 || capacity > MAX_GROW_CAPACITY) {
+      throw new IllegalArgumentException(
+          "Ring buffer capacity must be between 1 and " + MAX_GROW_CAPACITY);
+    }
+    if (stride < 1) {
+      throw new IllegalArgumentException("Ring buffer stride must be positive");
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) size <<= 1;
+    buffer = new double[size * stride];
+    this.stride = stride;
+    this.policy = policy;
+  }
+
+  /**
+   * Add a sample to a buffer with a stride of one. Must only be called from the producer thread.
+   *
+   * @param value The sample to add
+   * @return False if the buffer was full and the new sample was dropped
+   */
+  public boolean offer(double value) {
+    if (stride != 1) {
+      throw new IllegalStateException("Single samples can only be added with a stride of one");
+    }
+    long index = claim();
+    if (index < 0) {
+      return false;
+    }
+    double[] current = buffer;
+    current[slot(index, current)] = value;
+    commit(index);
+    return true;
+  }
+
+  /**
+   * Add a record to the buffer. The whole record becomes visible to the consumer at once. Must only
+   * be called from the producer thread.
+   *
+   * @param record Array holding the record in its first {@code stride} values
+   * @return False if the buffer was full and the new record was dropped
+   */
+  public boolean offer(double[] record) {
+    long index = claim();
+    if (index < 0) {
+      return false;
+    }
+    double[] current = buffer;
+    System.arraycopy(record, 0, current, slot(index, current), stride);
+    commit(index);
+    return true;
+  }
+
+  /**
+   * Move as many records as will fit into the given array, oldest first. Must only be called from
+   * the consumer thread.
+   *
+   * @param destination Caller-owned array to copy records into back to back, starting at index 0
+   * @return The number of records copied
+   */
+  public int drainTo(double[] destination) {
+    while (true) {
+      long currentHead = head.get();
+      long currentTail = tail.get();
+      // Read after tail, so the array is at least as new as the records we can see
+      double[] current = buffer;
+      int count = (int) Math.min(currentTail - currentHead, destination.length / stride);
+      for (int i = 0; i < count; i++) {
+        System.arraycopy(current, slot(currentHead + i, current), destination, i * stride, stride);
+      }
+      // If the producer dropped the oldest records while we were copying, the copy may hold
+      // overwritten values, so start over
+      if (head.compareAndSet(currentHead, currentHead + count)) {
+        return count;
+      }
+      retryCount++;
+    }
+  }
+
+  /** Discard all records currently in the buffer. Must only be called from the consumer thread. */
+  public void clear() {
+    while (true) {
+      long currentHead = head.get();
+      long currentTail = tail.get();
+      if (currentHead >= currentTail || head.compareAndSet(currentHead, currentTail)) {
+        return;
+      }
+    }
+  }
+
+  /** Returns the number of records currently in the buffer. */
+  public int size() {
+    // Read head first, the producer can only move tail forward in the meantime
+    long currentHead = head.get();
+    return (int) (tail.get() - currentHead);
+  }
+
+  /** Returns the maximum number of records the buffer can currently hold. */
+  public int getCapacity() {
+    return buffer.length / stride;
+  }
+
+  /** Returns the number of values in each record. */
+  public int getStride() {
+    return stride;
+  }
+
+  /** Returns the overflow policy of the buffer. */
+  public OverflowPolicy getPolicy() {
+    return policy;
+  }
+
+  /** Returns the total number of records dropped because the buffer was full. */
+  public long getDroppedCount() {
+    return droppedCount;
+  }
+
+  /** Returns the largest number of records the buffer has held at once. */
+  public int getHighWaterMark() {
+    return highWaterMark;
+  }
+
+  /**
+   * Returns the number of times the consumer had to redo a drain because the producer overwrote
+   * records it was copying. Only nonzero with {@link OverflowPolicy#DROP_OLDEST}, or {@link
+   * OverflowPolicy#GROW} at its max capacity.
+   */
+  public long getRetryCount() {
+    return retryCount;
+  }
+
+  private int slot(long index, double[] current) {
+    int mask = current.length / stride - 1;
+    return ((int) index & mask) * stride;
+  }
+
+  /** Returns the index of the record to write, or -1 if the new record should be dropped. */
+  private long claim() {
+    long currentTail = tail.get();
+    double[] current = buffer;
+    int capacity = current.length / stride;
+    if (currentTail - head.get() >= capacity) {
+      if (policy == OverflowPolicy.DROP_NEWEST) {
+        droppedCount++;
+        return -1;
+      } else if (policy == OverflowPolicy.GROW && capacity < MAX_GROW_CAPACITY) {
+        grow(current, currentTail);
+      } else {
+        // The consumer can drain at the same time, so only count the drop if we moved head
+        long currentHead = head.get();
+        if (currentTail - currentHead >= capacity
+            && head.compareAndSet(currentHead, currentHead + 1)) {
+          droppedCount++;
+        }
+      }
+    }
+    return currentTail;
+  }
+
+  private void commit(long index) {
+    // Ordered write publishes the record before the new tail is visible
+    tail.lazySet(index + 1);
+
+    int size = (int) (index + 1 - head.get());
+    if (size > highWaterMark) highWaterMark = size;
+  }
+
+  private void grow(double[] current, long currentTail) {
+    double[] grown = new double[current.length * 2];
+    // Records the consumer drains while we copy stay valid in the old array
+    for (long i = head.get(); i < currentTail; i++) {
+      System.arraycopy(current, slot(i, current), grown, slot(i, grown), stride);
+    }
+    buffer = grown;
+  }
+}
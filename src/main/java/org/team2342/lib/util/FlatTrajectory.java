@@ -0,0 +1,159 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.util;
+
+import com.pathplanner.lib.trajectory.PathPlannerTrajectory;
+import com.pathplanner.lib.trajectory.PathPlannerTrajectoryState;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * A trajectory resampled at a fixed time step, stored as one primitive array per field.
+ *
+ * <p>Since samples are evenly spaced, sampling finds the two samples around a time by dividing by
+ * the time step instead of searching, then linearly interpolates between them into a reused {@link
+ * Sample}. Nothing is allocated after the trajectory is built. Rotations are unwrapped when built,
+ * so interpolation never goes the long way around.
+ */
+public class FlatTrajectory {
+  /** Time step used when none is given, in seconds. */
+  public static final double DEFAULT_PERIOD = 0.01;
+
+  private final double period;
+  private final double totalTime;
+  private final int length;
+
+  private final double[] x;
+  private final double[] y;
+  private final double[] rotation;
+  private final double[] velocity;
+
+  /** One point in a trajectory, overwritten by every call to {@link #sample(double, Sample)}. */
+  public static class Sample {
+    private double time = 0.0;
+    private double x = 0.0;
+    private double y = 0.0;
+    private double rotation = 0.0;
+    private double velocity = 0.0;
+
+    /** Returns the time since the start of the trajectory in seconds. */
+    public double getTime() {
+      return time;
+    }
+
+    /** Returns the x position in meters. */
+    public double getX() {
+      return x;
+    }
+
+    /** Returns the y position in meters. */
+    public double getY() {
+      return y;
+    }
+
+    /** Returns the robot rotation in radians, from -pi to pi. */
+    public double getRotation() {
+      return rotation;
+    }
+
+    /** Returns the linear velocity in meters per second. */
+    public double getVelocity() {
+      return velocity;
+    }
+  }
+
+  private FlatTrajectory(double period, double totalTime) {
+    this.period = period;
+    this.totalTime = totalTime;
+    length = (int) Math.ceil(totalTime / period) + 1;
+    x = new double[length];
+    y = new double[length];
+    rotation = new double[length];
+    velocity = new double[length];
+  }
+
+  /** Resamples a PathPlanner trajectory every {@link #DEFAULT_PERIOD} seconds. */
+  public static FlatTrajectory fromPathPlanner(PathPlannerTrajectory trajectory) {
+    return fromPathPlanner(trajectory, DEFAULT_PERIOD);
+  }
+
+  /**
+   * Resamples a PathPlanner trajectory.
+   *
+   * @param trajectory The trajectory to resample
+   * @param period Time step between samples in seconds
+   */
+  public static FlatTrajectory fromPathPlanner(PathPlannerTrajectory trajectory, double period) {
+    FlatTrajectory flat = new FlatTrajectory(period, trajectory.getTotalTimeSeconds());
+    for (int i = 0; i < flat.length; i++) {
+      PathPlannerTrajectoryState state = trajectory.sample(Math.min(i * period, flat.totalTime));
+      flat.x[i] = state.pose.getX();
+      flat.y[i] = state.pose.getY();
+      flat.velocity[i] = state.linearVelocity;
+
+      double angle = state.pose.getRotation().getRadians();
+      flat.rotation[i] =
+          i == 0
+              ? angle
+              : flat.rotation[i - 1] + MathUtil.angleModulus(angle - flat.rotation[i - 1]);
+    }
+    return flat;
+  }
+
+  /**
+   * Samples the trajectory, holding the first or last point outside of it.
+   *
+   * @param time Time since the start of the trajectory in seconds
+   * @param out Sample to write to
+   */
+  public void sample(double time, Sample out) {
+    time = MathUtil.clamp(time, 0.0, totalTime);
+    int i = Math.min((int) (time / period), length - 2);
+    out.time = time;
+    if (i < 0) {
+      // Only one sample
+      out.x = x[0];
+      out.y = y[0];
+      out.rotation = MathUtil.angleModulus(rotation[0]);
+      out.velocity = velocity[0];
+      return;
+    }
+
+    // The last sample is at the end time, so the last step can be shorter
+    double start = i * period;
+    double step = Math.min(start + period, totalTime) - start;
+    double t = step > 0.0 ? MathUtil.clamp((time - start) / step, 0.0, 1.0) : 1.0;
+    out.x = x[i] + (x[i + 1] - x[i]) * t;
+    out.y = y[i] + (y[i + 1] - y[i]) * t;
+    out.rotation = MathUtil.angleModulus(rotation[i] + (rotation[i + 1] - rotation[i]) * t);
+    out.velocity = velocity[i] + (velocity[i + 1] - velocity[i]) * t;
+  }
+
+  /** Returns the length of the trajectory in seconds. */
+  public double getTotalTime() {
+    return totalTime;
+  }
+
+  /** Returns the pose at the end of the trajectory. */
+  public Pose2d getEndPose() {
+    return getPose(length - 1);
+  }
+
+  /** Returns the pose of every sample, for logging. */
+  public Pose2d[] getPoses() {
+    Pose2d[] poses = new Pose2d[length];
+    for (int i = 0; i < length; i++) {
+      poses[i] = getPose(i);
+    }
+    return poses;
+  }
+
+  private Pose2d getPose(int i) {
+    return new Pose2d(x[i], y[i], new Rotation2d(rotation[i]));
+  }
+}
@@ -0,0 +1,490 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.util;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import org.team2342.lib.util.SwerveSetpointGenerator.ModuleLimits;
+
+/**
+ * {@link SwerveSetpointGenerator} on primitive arrays, which writes each new setpoint into a
+ * caller-owned {@link Setpoint} instead of allocating one.
+ *
+ * <p>The math is the same, step for step: the inverse kinematics (including remembering each
+ * module's last heading for when it stops, like {@link
+ * edu.wpi.first.math.kinematics.SwerveDriveKinematics} does), desaturation, steering and drive
+ * limits, root finding and discretization. The root finders are specialized for the steering and
+ * drive constraints instead of taking a function. Outputs match the original to within floating
+ * point rounding. Not thread safe.
+ */
+public class PrimitiveSwerveSetpointGenerator {
+  /** A setpoint for the whole drive, as chassis speeds and a speed and angle for each module. */
+  public static class Setpoint {
+    private double vx = 0.0;
+    private double vy = 0.0;
+    private double omega = 0.0;
+    private final double[] moduleSpeeds;
+    private final double[] moduleAngles;
+
+    /** Create a stopped setpoint with every module at zero degrees. */
+    public Setpoint(int moduleCount) {
+      moduleSpeeds = new double[moduleCount];
+      moduleAngles = new double[moduleCount];
+    }
+
+    /** Copy a setpoint. */
+    public void set(Setpoint other) {
+      vx = other.vx;
+      vy = other.vy;
+      omega = other.omega;
+      System.arraycopy(other.moduleSpeeds, 0, moduleSpeeds, 0, moduleSpeeds.length);
+      System.arraycopy(other.moduleAngles, 0, moduleAngles, 0, moduleAngles.length);
+    }
+
+    /** Copy chassis speeds and module states. */
+    public void set(ChassisSpeeds chassisSpeeds, SwerveModuleState[] moduleStates) {
+      vx = chassisSpeeds.vxMetersPerSecond;
+      vy = chassisSpeeds.vyMetersPerSecond;
+      omega = chassisSpeeds.omegaRadiansPerSecond;
+      for (int i = 0; i < moduleSpeeds.length; i++) {
+        setModule(i, moduleStates[i]);
+      }
+    }
+
+    /** Copy one module's state. */
+    public void setModule(int module, SwerveModuleState state) {
+      moduleSpeeds[module] = state.speedMetersPerSecond;
+      moduleAngles[module] = state.angle.getRadians();
+    }
+
+    /** Returns the number of modules. */
+    public int getModuleCount() {
+      return moduleSpeeds.length;
+    }
+
+    /** Returns the x velocity in meters per second. */
+    public double getVx() {
+      return vx;
+    }
+
+    /** Returns the y velocity in meters per second. */
+    public double getVy() {
+      return vy;
+    }
+
+    /** Returns the angular velocity in radians per second. */
+    public double getOmega() {
+      return omega;
+    }
+
+    /** Returns a module's speed in meters per second. */
+    public double getModuleSpeed(int module) {
+      return moduleSpeeds[module];
+    }
+
+    /** Returns a module's angle in radians. */
+    public double getModuleAngle(int module) {
+      return moduleAngles[module];
+    }
+
+    /** Write the chassis speeds into an existing object. */
+    public void getChassisSpeeds(ChassisSpeeds out) {
+      out.vxMetersPerSecond = vx;
+      out.vyMetersPerSecond = vy;
+      out.omegaRadiansPerSecond = omega;
+    }
+  }
+
+  private static final double EPSILON = 1e-9;
+  private static final int STEERING_MAX_ITERATIONS = 8;
+  private static final int DRIVE_MAX_ITERATIONS = 10;
+  private static final double DISCRETIZE_PERIOD = 0.02;
+
+  private final int moduleCount;
+  private final double[] moduleX;
+  private final double[] moduleY;
+
+  // Last heading of each module with a nonzero speed, the kinematics report it when stopped
+  private final double[] moduleHeadings;
+
+  // Scratch space, reused between calls
+  private final double[] desiredSpeeds;
+  private final double[] desiredAngles;
+  private final double[] prevVx;
+  private final double[] prevVy;
+  private final double[] prevHeadings;
+  private final double[] desiredVx;
+  private final double[] desiredVy;
+  private final double[] desiredHeadings;
+  private final boolean[] hasOverride;
+  private final double[] overrideAngles;
+  private final double[] retSpeeds;
+  private final double[] retAngles;
+
+  public PrimitiveSwerveSetpointGenerator(Translation2d[] moduleTranslations) {
+    moduleCount = moduleTranslations.length;
+    moduleX = new double[moduleCount];
+    moduleY = new double[moduleCount];
+    for (int i = 0; i < moduleCount; i++) {
+      moduleX[i] = moduleTranslations[i].getX();
+      moduleY[i] = moduleTranslations[i].getY();
+    }
+    moduleHeadings = new double[moduleCount];
+    desiredSpeeds = new double[moduleCount];
+    desiredAngles = new double[moduleCount];
+    prevVx = new double[moduleCount];
+    prevVy = new double[moduleCount];
+    prevHeadings = new double[moduleCount];
+    desiredVx = new double[moduleCount];
+    desiredVy = new double[moduleCount];
+    desiredHeadings = new double[moduleCount];
+    hasOverride = new boolean[moduleCount];
+    overrideAngles = new double[moduleCount];
+    retSpeeds = new double[moduleCount];
+    retAngles = new double[moduleCount];
+  }
+
+  /**
+   * Generate a new setpoint. See {@link SwerveSetpointGenerator#generateSetpoint}.
+   *
+   * @param limits The kinematic limits to respect for this setpoint.
+   * @param prevSetpoint The previous setpoint motion.
+   * @param vx Desired x velocity in meters per second
+   * @param vy Desired y velocity in meters per second
+   * @param omega Desired angular velocity in radians per second
+   * @param dt The loop time.
+   * @param out Setpoint to write the result to, which may be prevSetpoint
+   */
+  public void generateSetpoint(
+      ModuleLimits limits,
+      Setpoint prevSetpoint,
+      double vx,
+      double vy,
+      double omega,
+      double dt,
+      Setpoint out) {
+    toModuleStates(vx, vy, omega, desiredSpeeds, desiredAngles);
+    // Make sure the desired state respects velocity limits.
+    if (limits.maxDriveVelocity() > 0.0) {
+      double realMaxSpeed = 0.0;
+      for (int i = 0; i < moduleCount; i++) {
+        realMaxSpeed = Math.max(realMaxSpeed, Math.abs(desiredSpeeds[i]));
+      }
+      if (realMaxSpeed > limits.maxDriveVelocity()) {
+        for (int i = 0; i < moduleCount; i++) {
+          desiredSpeeds[i] = desiredSpeeds[i] / realMaxSpeed * limits.maxDriveVelocity();
+        }
+        vx = vx / realMaxSpeed * limits.maxDriveVelocity();
+        vy = vy / realMaxSpeed * limits.maxDriveVelocity();
+        omega = omega / realMaxSpeed * limits.maxDriveVelocity();
+      }
+    }
+
+    // Special case: the desired state is a complete stop. In this case, module angle is arbitrary,
+    // so just use the previous angle.
+    boolean needToSteer = true;
+    if (isZero(vx, vy, omega)) {
+      needToSteer = false;
+      for (int i = 0; i < moduleCount; i++) {
+        desiredAngles[i] = prevSetpoint.moduleAngles[i];
+        desiredSpeeds[i] = 0.0;
+      }
+    }
+
+    // For each module, compute local Vx and Vy vectors.
+    boolean allModulesShouldFlip = true;
+    for (int i = 0; i < moduleCount; i++) {
+      double prevSpeed = prevSetpoint.moduleSpeeds[i];
+      double prevAngle = prevSetpoint.moduleAngles[i];
+      prevVx[i] = Math.cos(prevAngle) * prevSpeed;
+      prevVy[i] = Math.sin(prevAngle) * prevSpeed;
+      prevHeadings[i] = prevSpeed < 0.0 ? MathUtil.angleModulus(prevAngle + Math.PI) : prevAngle;
+      desiredVx[i] = Math.cos(desiredAngles[i]) * desiredSpeeds[i];
+      desiredVy[i] = Math.sin(desiredAngles[i]) * desiredSpeeds[i];
+      desiredHeadings[i] =
+          desiredSpeeds[i] < 0.0
+              ? MathUtil.angleModulus(desiredAngles[i] + Math.PI)
+              : desiredAngles[i];
+      if (allModulesShouldFlip) {
+        double requiredRotation =
+            Math.abs(MathUtil.angleModulus(desiredHeadings[i] - prevHeadings[i]));
+        if (requiredRotation < Math.PI / 2.0) {
+          allModulesShouldFlip = false;
+        }
+      }
+    }
+    if (allModulesShouldFlip
+        && !isZero(prevSetpoint.vx, prevSetpoint.vy, prevSetpoint.omega)
+        && !isZero(vx, vy, omega)) {
+      // It will (likely) be faster to stop the robot, rotate the modules in place to the
+      // complement of the desired angle, and accelerate again.
+      generateSetpoint(limits, prevSetpoint, 0.0, 0.0, 0.0, dt, out);
+      return;
+    }
+
+    // Compute the deltas between start and goal, to find how far along from start to goal ('s')
+    // we can move this cycle without exceeding any kinematic limit.
+    double dx = vx - prevSetpoint.vx;
+    double dy = vy - prevSetpoint.vy;
+    double dtheta = omega - prevSetpoint.omega;
+    double minS = 1.0;
+
+    // Enforce steering velocity limits, remembering the steering angle of stopped modules.
+    final double maxThetaStep = dt * limits.maxSteeringVelocity();
+    for (int i = 0; i < moduleCount; i++) {
+      double prevAngle = prevSetpoint.moduleAngles[i];
+      hasOverride[i] = false;
+      if (!needToSteer) {
+        hasOverride[i] = true;
+        overrideAngles[i] = prevAngle;
+        continue;
+      }
+      if (epsilonEquals(prevSetpoint.moduleSpeeds[i], 0.0)) {
+        // If the module is stopped, limit based purely on rotation in place.
+        if (epsilonEquals(desiredSpeeds[i], 0.0)) {
+          // Goal angle doesn't matter. Just leave module at its current angle.
+          hasOverride[i] = true;
+          overrideAngles[i] = prevAngle;
+          continue;
+        }
+
+        double necessaryRotation = MathUtil.angleModulus(desiredAngles[i] - prevAngle);
+        if (Math.abs(necessaryRotation) > Math.PI / 2.0) {
+          necessaryRotation = MathUtil.angleModulus(necessaryRotation + Math.PI);
+        }
+        final double numStepsNeeded = Math.abs(necessaryRotation) / maxThetaStep;
+
+        hasOverride[i] = true;
+        if (numStepsNeeded <= 1.0) {
+          // Steer directly to goal angle, without limiting the global minS.
+          overrideAngles[i] = desiredAngles[i];
+        } else {
+          // Adjust steering by maxThetaStep.
+          overrideAngles[i] =
+              MathUtil.angleModulus(prevAngle + Math.signum(necessaryRotation) * maxThetaStep);
+          minS = 0.0;
+        }
+        continue;
+      }
+      if (minS == 0.0) {
+        // s can't get any lower. Save some CPU.
+        continue;
+      }
+
+      double s =
+          findSteeringMaxS(
+              prevVx[i],
+              prevVy[i],
+              prevHeadings[i],
+              desiredVx[i],
+              desiredVy[i],
+              desiredHeadings[i],
+              maxThetaStep);
+      minS = Math.min(minS, s);
+    }
+
+    // Enforce drive wheel acceleration limits.
+    final double maxVelStep = dt * limits.maxDriveAcceleration();
+    for (int i = 0; i < moduleCount; i++) {
+      if (minS == 0.0) {
+        break;
+      }
+      double vxMinS = minS == 1.0 ? desiredVx[i] : (desiredVx[i] - prevVx[i]) * minS + prevVx[i];
+      double vyMinS = minS == 1.0 ? desiredVy[i] : (desiredVy[i] - prevVy[i]) * minS + prevVy[i];
+      // Search on the interval between 0 and minS, since we can't go faster than that.
+      double s =
+          minS
+              * findDriveMaxS(
+                  prevVx[i],
+                  prevVy[i],
+                  Math.hypot(prevVx[i], prevVy[i]),
+                  vxMinS,
+                  vyMinS,
+                  Math.hypot(vxMinS, vyMinS),
+                  maxVelStep);
+      minS = Math.min(minS, s);
+    }
+
+    // Discretize the interpolated speeds, like ChassisSpeeds.discretize
+    double retVx = prevSetpoint.vx + minS * dx;
+    double retVy = prevSetpoint.vy + minS * dy;
+    double retOmega = prevSetpoint.omega + minS * dtheta;
+    double twistTheta = retOmega * DISCRETIZE_PERIOD;
+    double halfTheta = twistTheta / 2.0;
+    double cosMinusOne = Math.cos(twistTheta) - 1.0;
+    double halfThetaByTanOfHalfTheta =
+        Math.abs(cosMinusOne) < EPSILON
+            ? 1.0 - 1.0 / 12.0 * twistTheta * twistTheta
+            : -(halfTheta * Math.sin(twistTheta)) / cosMinusOne;
+    double scale = Math.hypot(halfThetaByTanOfHalfTheta, halfTheta);
+    double cos = halfThetaByTanOfHalfTheta / scale;
+    double sin = -halfTheta / scale;
+    double dxStep = retVx * DISCRETIZE_PERIOD;
+    double dyStep = retVy * DISCRETIZE_PERIOD;
+    retVx = (dxStep * cos - dyStep * sin) * scale / DISCRETIZE_PERIOD;
+    retVy = (dxStep * sin + dyStep * cos) * scale / DISCRETIZE_PERIOD;
+    retOmega = twistTheta / DISCRETIZE_PERIOD;
+
+    toModuleStates(retVx, retVy, retOmega, retSpeeds, retAngles);
+    for (int i = 0; i < moduleCount; i++) {
+      if (hasOverride[i]) {
+        if (Math.abs(MathUtil.angleModulus(overrideAngles[i] - retAngles[i])) > Math.PI / 2.0) {
+          retSpeeds[i] *= -1.0;
+        }
+        retAngles[i] = overrideAngles[i];
+      }
+      double deltaRotation = MathUtil.angleModulus(retAngles[i] - prevSetpoint.moduleAngles[i]);
+      if (Math.abs(deltaRotation) > Math.PI / 2.0) {
+        retAngles[i] = MathUtil.angleModulus(retAngles[i] + Math.PI);
+        retSpeeds[i] *= -1.0;
+      }
+    }
+
+    // Only written at the end, so out can be the previous setpoint
+    out.vx = retVx;
+    out.vy = retVy;
+    out.omega = retOmega;
+    System.arraycopy(retSpeeds, 0, out.moduleSpeeds, 0, moduleCount);
+    System.arraycopy(retAngles, 0, out.moduleAngles, 0, moduleCount);
+  }
+
+  /** Inverse kinematics about the robot center, keeping the last heading of stopped modules. */
+  private void toModuleStates(
+      double vx, double vy, double omega, double[] speeds, double[] angles) {
+    if (vx == 0.0 && vy == 0.0 && omega == 0.0) {
+      for (int i = 0; i < moduleCount; i++) {
+        speeds[i] = 0.0;
+        angles[i] = moduleHeadings[i];
+      }
+      return;
+    }
+    for (int i = 0; i < moduleCount; i++) {
+      double x = vx - omega * moduleY[i];
+      double y = vy + omega * moduleX[i];
+      double speed = Math.hypot(x, y);
+      if (speed > 1e-6) {
+        moduleHeadings[i] = Math.atan2(y, x);
+      }
+      speeds[i] = speed;
+      angles[i] = moduleHeadings[i];
+    }
+  }
+
+  private static double unwrapAngle(double ref, double angle) {
+    double diff = angle - ref;
+    if (diff > Math.PI) {
+      return angle - 2.0 * Math.PI;
+    } else if (diff < -Math.PI) {
+      return angle + 2.0 * Math.PI;
+    } else {
+      return angle;
+    }
+  }
+
+  private static double findSteeringMaxS(
+      double x_0,
+      double y_0,
+      double f_0,
+      double x_1,
+      double y_1,
+      double f_1,
+      double max_deviation) {
+    f_1 = unwrapAngle(f_0, f_1);
+    double diff = f_1 - f_0;
+    if (Math.abs(diff) <= max_deviation) {
+      // Can go all the way to s=1.
+      return 1.0;
+    }
+    double offset = f_0 + Math.signum(diff) * max_deviation;
+    return findSteeringRoot(
+        f_0, offset, x_0, y_0, f_0 - offset, x_1, y_1, f_1 - offset, STEERING_MAX_ITERATIONS);
+  }
+
+  /** Regula falsi on unwrapAngle(reference, atan2(y, x)) - offset. */
+  private static double findSteeringRoot(
+      double reference,
+      double offset,
+      double x_0,
+      double y_0,
+      double f_0,
+      double x_1,
+      double y_1,
+      double f_1,
+      int iterations_left) {
+    if (iterations_left < 0 || epsilonEquals(f_0, f_1)) {
+      return 1.0;
+    }
+    double s_guess = Math.max(0.0, Math.min(1.0, -f_0 / (f_1 - f_0)));
+    double x_guess = (x_1 - x_0) * s_guess + x_0;
+    double y_guess = (y_1 - y_0) * s_guess + y_0;
+    double f_guess = unwrapAngle(reference, Math.atan2(y_guess, x_guess)) - offset;
+    if (Math.signum(f_0) == Math.signum(f_guess)) {
+      // 0 and guess on same side of root, so use upper bracket.
+      return s_guess
+          + (1.0 - s_guess)
+              * findSteeringRoot(
+                  reference, offset, x_guess, y_guess, f_guess, x_1, y_1, f_1, iterations_left - 1);
+    } else {
+      // Use lower bracket.
+      return s_guess
+          * findSteeringRoot(
+              reference, offset, x_0, y_0, f_0, x_guess, y_guess, f_guess, iterations_left - 1);
+    }
+  }
+
+  private static double findDriveMaxS(
+      double x_0, double y_0, double f_0, double x_1, double y_1, double f_1, double max_vel_step) {
+    double diff = f_1 - f_0;
+    if (Math.abs(diff) <= max_vel_step) {
+      // Can go all the way to s=1.
+      return 1.0;
+    }
+    double offset = f_0 + Math.signum(diff) * max_vel_step;
+    return findDriveRoot(
+        offset, x_0, y_0, f_0 - offset, x_1, y_1, f_1 - offset, DRIVE_MAX_ITERATIONS);
+  }
+
+  /** Regula falsi on hypot(x, y) - offset. */
+  private static double findDriveRoot(
+      double offset,
+      double x_0,
+      double y_0,
+      double f_0,
+      double x_1,
+      double y_1,
+      double f_1,
+      int iterations_left) {
+    if (iterations_left < 0 || epsilonEquals(f_0, f_1)) {
+      return 1.0;
+    }
+    double s_guess = Math.max(0.0, Math.min(1.0, -f_0 / (f_1 - f_0)));
+    double x_guess = (x_1 - x_0) * s_guess + x_0;
+    double y_guess = (y_1 - y_0) * s_guess + y_0;
+    double f_guess = Math.hypot(x_guess, y_guess) - offset;
+    if (Math.signum(f_0) == Math.signum(f_guess)) {
+      // 0 and guess on same side of root, so use upper bracket.
+      return s_guess
+          + (1.0 - s_guess)
+              * findDriveRoot(
+                  offset, x_guess, y_guess, f_guess, x_1, y_1, f_1, iterations_left - 1);
+    } else {
+      // Use lower bracket.
+      return s_guess
+          * findDriveRoot(offset, x_0, y_0, f_0, x_guess, y_guess, f_guess, iterations_left - 1);
+    }
+  }
+
+  private static boolean epsilonEquals(double a, double b) {
+    return (a - EPSILON <= b) && (a + EPSILON >= b);
+  }
+
+  private static boolean isZero(double vx, double vy, double omega) {
+    return epsilonEquals(vx, 0.0) && epsilonEquals(vy, 0.0) && epsilonEquals(omega, 0.0);
+  }
+}
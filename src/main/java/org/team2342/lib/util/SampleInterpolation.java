@@ -0,0 +1,85 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.util;
+
+import edu.wpi.first.math.MathUtil;
+
+/** Utility functions for resampling timestamped measurements onto other timestamps. */
+public class SampleInterpolation {
+  /**
+   * Linearly interpolates sampled values at the given time. Times before the first sample are
+   * interpolated from the previous sample, and times past the last sample are extrapolated from the
+   * last two, by at most one sample period.
+   *
+   * @param timestamps Timestamps of the samples in seconds, in increasing order
+   * @param values Sampled values
+   * @param count Number of valid samples in the arrays
+   * @param previousTimestamp Timestamp of the sample before the first one, or NaN if there is none
+   * @param previousValue Value of the sample before the first one
+   * @param time Time to find the value at, in seconds
+   * @return The interpolated value, or the previous value if there are no samples at all
+   */
+  public static double interpolate(
+      double[] timestamps,
+      double[] values,
+      int count,
+      double previousTimestamp,
+      double previousValue,
+      double time) {
+    return interpolate(timestamps, values, count, previousTimestamp, previousValue, time, false);
+  }
+
+  /**
+   * Same as {@link #interpolate(double[], double[], int, double, double, double)}, but for angles
+   * in radians. Interpolates across the shortest path between samples, so the result isn't wrapped.
+   */
+  public static double interpolateAngle(
+      double[] timestamps,
+      double[] values,
+      int count,
+      double previousTimestamp,
+      double previousValue,
+      double time) {
+    return interpolate(timestamps, values, count, previousTimestamp, previousValue, time, true);
+  }
+
+  private static double interpolate(
+      double[] timestamps,
+      double[] values,
+      int count,
+      double previousTimestamp,
+      double previousValue,
+      double time,
+      boolean angle) {
+    // Treat the previous sample as index -1 when there is one
+    int first = Double.isNaN(previousTimestamp) ? 0 : -1;
+    if (count - first < 2) {
+      return count > 0 ? values[0] : previousValue;
+    }
+
+    // Find the pair of samples around the time, using the outermost pair when out of range
+    int lower = first;
+    while (lower < count - 2 && timestamps[lower + 1] <= time) {
+      lower++;
+    }
+    double lowerTimestamp = lower < 0 ? previousTimestamp : timestamps[lower];
+    double lowerValue = lower < 0 ? previousValue : values[lower];
+    double upperTimestamp = timestamps[lower + 1];
+    double upperValue = values[lower + 1];
+
+    double period = upperTimestamp - lowerTimestamp;
+    if (period <= 0.0) {
+      return upperValue;
+    }
+    double t = MathUtil.clamp((time - lowerTimestamp) / period, -1.0, 2.0);
+    double difference = upperValue - lowerValue;
+    if (angle) {
+      difference = MathUtil.angleModulus(difference);
+    }
+    return lowerValue + difference * t;
+  }
+}
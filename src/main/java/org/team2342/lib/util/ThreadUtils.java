@@ -0,0 +1,83 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.util;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Threads;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utility functions for scheduling library worker threads on the robot.
+ *
+ * <p>Everything here acts on the calling thread, so it must be called from the worker itself (at
+ * the top of {@link Thread#run()}, or from the first callback of a {@link
+ * edu.wpi.first.wpilibj.Notifier}). Only the real robot is changed, in simulation these do nothing
+ * and return false.
+ */
+public class ThreadUtils {
+  /** Highest real-time priority, matching the range used by {@link Threads}. */
+  public static final int MAX_REAL_TIME_PRIORITY = 99;
+
+  /**
+   * Switch the current thread to real-time (SCHED_FIFO) scheduling.
+   *
+   * @param priority Real-time priority, from 1 (lowest) to 99 (highest)
+   * @return True if the priority was applied
+   */
+  public static boolean setRealTimePriority(int priority) {
+    if (!RobotBase.isReal()) return false;
+    if (priority < 1 || priority > MAX_REAL_TIME_PRIORITY) {
+      throw new IllegalArgumentException(
+          "Real-time priority must be between 1 and " + MAX_REAL_TIME_PRIORITY);
+    }
+
+    if (!Threads.setCurrentThreadPriority(true, priority)) {
+      DriverStation.reportWarning(
+          "Failed to set real-time priority for thread " + Thread.currentThread().getName(), false);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Pin the current thread to a single CPU core. This is best effort, it uses {@code taskset} on
+   * the thread's kernel ID and gives up if either isn't available.
+   *
+   * @param cpu Index of the core to run on
+   * @return True if the thread was pinned
+   */
+  public static boolean setAffinity(int cpu) {
+    if (!RobotBase.isReal()) return false;
+    if (cpu < 0 || cpu >= Runtime.getRuntime().availableProcessors()) {
+      throw new IllegalArgumentException("No CPU core " + cpu);
+    }
+
+    try {
+      // Links to "<pid>/task/<tid>" for the calling thread
+      Path thread = Files.readSymbolicLink(Path.of("/proc/thread-self"));
+      String threadId = thread.getFileName().toString();
+
+      Process process =
+          new ProcessBuilder("taskset", "-p", "-c", Integer.toString(cpu), threadId)
+              .redirectErrorStream(true)
+              .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+              .start();
+      if (process.waitFor(1, TimeUnit.SECONDS) && process.exitValue() == 0) {
+        return true;
+      }
+      process.destroy();
+    } catch (Exception e) {
+      // Fall through to the warning
+    }
+    DriverStation.reportWarning(
+        "Failed to pin thread " + Thread.currentThread().getName() + " to CPU " + cpu, false);
+    return false;
+  }
+}
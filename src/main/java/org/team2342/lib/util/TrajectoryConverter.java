@@ -11,24 +11,17 @@ import com.pathplanner.lib.path.PathPlannerPath;
 import com.pathplanner.lib.trajectory.PathPlannerTrajectory;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.math.trajectory.Trajectory;
-import edu.wpi.first.math.trajectory.Trajectory.State;
-import java.util.List;
 import java.util.Optional;
 
 public class TrajectoryConverter {
 
-  public static Optional<Trajectory> fromPathplanner(
+  public static Optional<FlatTrajectory> fromPathplanner(
       String name, ChassisSpeeds startSpeeds, Rotation2d startRotation, RobotConfig config) {
     try {
       PathPlannerPath path = PathPlannerPath.fromPathFile(name);
       PathPlannerTrajectory traj =
           new PathPlannerTrajectory(path, startSpeeds, startRotation, config);
-      List<State> states =
-          traj.getStates().stream()
-              .map((x -> new State(x.timeSeconds, x.linearVelocity, 0.0, x.pose, 0)))
-              .toList();
-      return Optional.of(new Trajectory(states));
+      return Optional.of(FlatTrajectory.fromPathPlanner(traj));
     } catch (Exception e) {
       return Optional.empty();
     }
@@ -0,0 +1,51 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.estimation;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.function.DoubleSupplier;
+
+/** Checks that a hot path doesn't allocate, by measuring the test thread's allocated bytes. */
+final class AllocationAssertions {
+  private static final int RUNS = 100_000;
+  // Allow a little slack for the measurement itself
+  private static final long SLACK_BYTES = 1024;
+
+  private AllocationAssertions() {}
+
+  /**
+   * Runs the work enough times to be compiled, then fails if the thread allocated anything while
+   * running it again.
+   *
+   * @param name What the work is, for the failure message
+   * @param work Work to run, returning a result so it can't be optimized away
+   */
+  static void assertDoesNotAllocate(String name, DoubleSupplier work) {
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assertTrue(threads.isThreadAllocatedMemorySupported());
+    long threadId = Thread.currentThread().getId();
+
+    double result = 0.0;
+    for (int i = 0; i < RUNS; i++) {
+      result += work.getAsDouble();
+    }
+    long before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < RUNS; i++) {
+      result += work.getAsDouble();
+    }
+    long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+    assertFalse(Double.isNaN(result));
+    assertTrue(
+        allocated <= SLACK_BYTES,
+        name + " allocated " + allocated + " bytes over " + RUNS + " runs");
+  }
+}
@@ -0,0 +1,230 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.estimation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.team2342.frc.subsystems.drive.Drive;
+
+class DualTrackPoseEstimatorTest {
+  private static final double PERIOD = 0.004;
+  private static final double LOOP_PERIOD = 0.02;
+  private static final double TOLERANCE = 1e-9;
+
+  /**
+   * Feeds the same odometry and vision to this estimator and WPILib's, including late, out-of-order
+   * and too-old measurements and a pose reset, and checks the fused track matches WPILib's estimate
+   * and the raw track matches a WPILib estimator that never sees vision.
+   */
+  @Test
+  void matchesWpilibEstimator() {
+    Random random = new Random(2342);
+    SwerveDriveKinematics kinematics = new SwerveDriveKinematics(Drive.getModuleTranslations());
+    SwerveModulePosition[] positions = new SwerveModulePosition[4];
+    for (int i = 0; i < 4; i++) {
+      positions[i] = new SwerveModulePosition();
+    }
+    double gyroAngle = 0.2;
+    Pose2d initialPose = new Pose2d(2.0, 3.0, new Rotation2d(0.5));
+
+    DualTrackPoseEstimator estimator = new DualTrackPoseEstimator(initialPose, gyroAngle);
+    SwerveDrivePoseEstimator expected =
+        new SwerveDrivePoseEstimator(
+            kinematics,
+            new Rotation2d(gyroAngle),
+            positions,
+            initialPose,
+            VecBuilder.fill(0.1, 0.1, 0.1),
+            VecBuilder.fill(0.9, 0.9, 0.9));
+    SwerveDrivePoseEstimator expectedRaw =
+        new SwerveDrivePoseEstimator(
+            kinematics,
+            new Rotation2d(gyroAngle),
+            positions,
+            Pose2d.kZero,
+            VecBuilder.fill(0.1, 0.1, 0.1),
+            VecBuilder.fill(0.9, 0.9, 0.9));
+
+    double lastVisionTimestamp = 0.0;
+    for (int step = 1; step <= 1000; step++) {
+      double timestamp = step * LOOP_PERIOD;
+
+      // Drive the modules in random directions and turn the gyro
+      SwerveModulePosition[] newPositions = new SwerveModulePosition[4];
+      for (int i = 0; i < 4; i++) {
+        newPositions[i] =
+            new SwerveModulePosition(
+                positions[i].distanceMeters + random.nextDouble() * 0.08,
+                new Rotation2d(random.nextDouble() * 2.0 * Math.PI));
+      }
+      gyroAngle += (random.nextDouble() * 2.0 - 1.0) * 0.1;
+      Twist2d twist = kinematics.toTwist2d(positions, newPositions);
+      positions = newPositions;
+
+      estimator.update(timestamp, twist.dx, twist.dy, gyroAngle);
+      expected.updateWithTime(timestamp, new Rotation2d(gyroAngle), positions);
+      expectedRaw.updateWithTime(timestamp, new Rotation2d(gyroAngle), positions);
+
+      if (step == 500) {
+        Pose2d pose = new Pose2d(5.0, 1.0, new Rotation2d(-2.0));
+        estimator.resetPose(pose, gyroAngle);
+        expected.resetPose(pose);
+      }
+
+      if (random.nextDouble() < 0.4) {
+        // Usually a little late, sometimes older than the last one or the whole history
+        double choice = random.nextDouble();
+        double visionTimestamp;
+        if (choice < 0.1) {
+          visionTimestamp = timestamp - 2.0;
+        } else if (choice < 0.3) {
+          visionTimestamp = lastVisionTimestamp - random.nextDouble() * 0.2;
+        } else {
+          visionTimestamp = timestamp - random.nextDouble() * 0.15;
+        }
+        lastVisionTimestamp = Math.max(lastVisionTimestamp, visionTimestamp);
+
+        Pose2d visionPose =
+            expected
+                .getEstimatedPosition()
+                .plus(
+                    new Transform2d(
+                        random.nextGaussian() * 0.3,
+                        random.nextGaussian() * 0.3,
+                        new Rotation2d(random.nextGaussian() * 0.2)));
+        var stdDevs =
+            VecBuilder.fill(
+                0.05 + random.nextDouble(), 0.05 + random.nextDouble(), 0.05 + random.nextDouble());
+        estimator.addVisionMeasurement(visionPose, visionTimestamp, stdDevs);
+        expected.addVisionMeasurement(visionPose, visionTimestamp, stdDevs);
+      }
+
+      String message = "Step " + step;
+      assertPoseEquals(expected.getEstimatedPosition(), estimator.getEstimatedPosition(), message);
+      assertPoseEquals(expectedRaw.getEstimatedPosition(), estimator.getRawOdometryPose(), message);
+
+      double sampleTimestamp = timestamp - random.nextDouble() * 2.0;
+      Optional<Pose2d> expectedSample = expected.sampleAt(sampleTimestamp);
+      Optional<Pose2d> actualSample = estimator.sampleAt(sampleTimestamp);
+      assertEquals(expectedSample.isPresent(), actualSample.isPresent(), message);
+      if (expectedSample.isPresent()) {
+        assertPoseEquals(expectedSample.get(), actualSample.get(), message);
+      }
+    }
+  }
+
+  /**
+   * Adds each cycle's measurements as a shuffled batch with some older than the history, and checks
+   * the result matches adding them one at a time in timestamp order.
+   */
+  @Test
+  void batchMatchesSortedSingleMeasurements() {
+    Random random = new Random(2342);
+    DualTrackPoseEstimator batched = new DualTrackPoseEstimator(Pose2d.kZero, 0.0);
+    DualTrackPoseEstimator single = new DualTrackPoseEstimator(Pose2d.kZero, 0.0);
+    VisionMeasurementBatch batch = new VisionMeasurementBatch();
+    double gyroAngle = 0.0;
+
+    for (int step = 1; step <= 500; step++) {
+      double timestamp = step * LOOP_PERIOD;
+      double dx = random.nextDouble() * 0.05;
+      double dy = (random.nextDouble() * 2.0 - 1.0) * 0.05;
+      gyroAngle += (random.nextDouble() * 2.0 - 1.0) * 0.05;
+      batched.update(timestamp, dx, dy, gyroAngle);
+      single.update(timestamp, dx, dy, gyroAngle);
+
+      if (step % 3 != 0) {
+        continue;
+      }
+
+      // Batch in the order they came in, some from before the history and the rest from the last
+      // few cycles
+      int count = 1 + random.nextInt(6);
+      double[][] measurements = new double[count][];
+      batch.clear();
+      for (int i = 0; i < count; i++) {
+        measurements[i] =
+            new double[] {
+              random.nextDouble() < 0.2
+                  ? timestamp - 1.6 - random.nextDouble()
+                  : timestamp - random.nextDouble() * 0.1,
+              random.nextGaussian(),
+              random.nextGaussian(),
+              random.nextGaussian(),
+              0.05 + random.nextDouble(),
+              0.05 + random.nextDouble(),
+              0.05 + random.nextDouble()
+            };
+        double[] m = measurements[i];
+        batch.add(m[0], m[1], m[2], m[3], m[4], m[5], m[6]);
+      }
+      batched.addVisionMeasurements(batch);
+
+      // One at a time, oldest first
+      Arrays.sort(measurements, (a, b) -> Double.compare(a[0], b[0]));
+      for (double[] m : measurements) {
+        single.addVisionMeasurement(
+            new Pose2d(m[1], m[2], new Rotation2d(m[3])), m[0], VecBuilder.fill(m[4], m[5], m[6]));
+      }
+
+      String message = "Step " + step;
+      assertPoseEquals(single.getEstimatedPosition(), batched.getEstimatedPosition(), message);
+      double sampleTimestamp = timestamp - random.nextDouble() * 1.5;
+      assertPoseEquals(
+          single.sampleAt(sampleTimestamp).get(), batched.sampleAt(sampleTimestamp).get(), message);
+    }
+  }
+
+  /**
+   * Runs odometry updates and estimate lookups with a vision update applied, the path Drive takes
+   * every sample, and fails if they allocate.
+   */
+  @Test
+  void updateAndSampleDoNotAllocate() {
+    DualTrackPoseEstimator estimator = new DualTrackPoseEstimator(Pose2d.kZero, 0.0);
+    double[] out = new double[3];
+    for (int i = 0; i < 100; i++) {
+      estimator.update(i * PERIOD, 0.01, 0.0, 0.001 * i);
+    }
+    estimator.addVisionMeasurement(
+        new Pose2d(1.1, 0.1, new Rotation2d(0.1)), 50 * PERIOD, VecBuilder.fill(0.5, 0.5, 0.5));
+
+    int[] sample = {100};
+    AllocationAssertions.assertDoesNotAllocate(
+        "Pose estimation",
+        () -> {
+          double timestamp = sample[0]++ * PERIOD;
+          estimator.update(timestamp, 0.01, 0.0, 0.001 * sample[0]);
+          estimator.sampleAt(timestamp - 0.1, out);
+          return out[0] + out[1] + out[2];
+        });
+  }
+
+  private static void assertPoseEquals(Pose2d expected, Pose2d actual, String message) {
+    assertEquals(expected.getX(), actual.getX(), TOLERANCE, message);
+    assertEquals(expected.getY(), actual.getY(), TOLERANCE, message);
+    assertEquals(
+        0.0,
+        MathUtil.angleModulus(
+            expected.getRotation().getRadians() - actual.getRotation().getRadians()),
+        TOLERANCE,
+        message);
+  }
+}
@@ -0,0 +1,111 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.estimation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.team2342.frc.subsystems.drive.Drive;
+
+class SwerveOdometryIntegratorTest {
+  private static final int MODULES = 4;
+  private static final double TOLERANCE = 1e-9;
+  private static final Translation2d[] MODULE_TRANSLATIONS = Drive.getModuleTranslations();
+
+  private final SwerveOdometryIntegrator integrator =
+      new SwerveOdometryIntegrator(MODULE_TRANSLATIONS);
+  private final double[] distances = new double[MODULES];
+  private final double[] angles = new double[MODULES];
+
+  /** Checks the twist against WPILib's kinematics for random module motion. */
+  @Test
+  void matchesKinematicsTwist() {
+    Random random = new Random(2342);
+    SwerveDriveKinematics kinematics = new SwerveDriveKinematics(MODULE_TRANSLATIONS);
+    double[] startDistances = new double[MODULES];
+    SwerveModulePosition[] start = new SwerveModulePosition[MODULES];
+    SwerveModulePosition[] end = new SwerveModulePosition[MODULES];
+
+    for (int step = 0; step < 1000; step++) {
+      for (int module = 0; module < MODULES; module++) {
+        startDistances[module] = (random.nextDouble() * 2.0 - 1.0) * 100.0;
+        distances[module] = startDistances[module] + (random.nextDouble() * 2.0 - 1.0) * 0.1;
+        angles[module] = (random.nextDouble() * 2.0 - 1.0) * 4.0 * Math.PI;
+        start[module] = new SwerveModulePosition(startDistances[module], new Rotation2d());
+        end[module] = new SwerveModulePosition(distances[module], new Rotation2d(angles[module]));
+      }
+      integrator.resetWheelPositions(startDistances);
+      integrator.update(distances, angles, 0.0);
+
+      Twist2d expected = kinematics.toTwist2d(start, end);
+      String message = "Step " + step;
+      assertEquals(expected.dx, integrator.getDx(), TOLERANCE, message);
+      assertEquals(expected.dy, integrator.getDy(), TOLERANCE, message);
+      assertEquals(expected.dtheta, integrator.getWheelDtheta(), TOLERANCE, message);
+    }
+  }
+
+  /**
+   * Checks the heading follows the gyro, falls back to the wheels while the gyro reads NaN, then
+   * picks the gyro back up.
+   */
+  @Test
+  void headingFallsBackToWheelsWithoutGyro() {
+    integrator.resetHeading(1.0);
+
+    // Gyro
+    integrator.update(distances, angles, 1.2);
+    assertEquals(0.2, integrator.getHeadingDeltaRad(), TOLERANCE);
+    assertEquals(1.2, integrator.getHeadingRad(), TOLERANCE);
+
+    // No gyro, so spin in place and take the heading from the wheels
+    double heading = 1.2;
+    for (int step = 0; step < 10; step++) {
+      for (int module = 0; module < MODULES; module++) {
+        distances[module] += 0.05;
+        angles[module] = MODULE_TRANSLATIONS[module].getAngle().getRadians() + Math.PI / 2.0;
+      }
+      integrator.update(distances, angles, Double.NaN);
+      assertEquals(integrator.getWheelDtheta(), integrator.getHeadingDeltaRad(), TOLERANCE);
+      heading += integrator.getWheelDtheta();
+      assertEquals(heading, integrator.getHeadingRad(), TOLERANCE);
+    }
+    assertEquals(10 * 0.05 / MODULE_TRANSLATIONS[0].getNorm(), heading - 1.2, TOLERANCE);
+
+    // Gyro again, a turn away from the integrated heading
+    integrator.update(distances, angles, heading - 2.0 * Math.PI + 0.1);
+    assertEquals(0.1, integrator.getHeadingDeltaRad(), TOLERANCE);
+    assertEquals(heading - 2.0 * Math.PI + 0.1, integrator.getHeadingRad(), TOLERANCE);
+  }
+
+  /**
+   * Integrates samples of the robot driving and turning, the per-sample path Drive uses, and fails
+   * if it allocates. {@code OdometryIntegrationBenchmark} times the same path along with resampling
+   * the modules onto a common time.
+   */
+  @Test
+  void integrationDoesNotAllocate() {
+    int[] sample = {0};
+    AllocationAssertions.assertDoesNotAllocate(
+        "Odometry integration",
+        () -> {
+          double time = (sample[0]++ % 1000) * 0.004;
+          for (int module = 0; module < MODULES; module++) {
+            distances[module] = 4.0 * time;
+            angles[module] = 0.3 + module + 2.0 * time;
+          }
+          integrator.update(distances, angles, 1.5 * time);
+          return integrator.getHeadingRad() + integrator.getDx() + integrator.getDy();
+        });
+  }
+}
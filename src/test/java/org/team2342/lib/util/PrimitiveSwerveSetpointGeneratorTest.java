@@ -0,0 +1,108 @@
+// Copyright (c) 2026 Team 2342
+// https://github.com/FRCTeamPhoenix
+//
+// This source code is licensed under the MIT License.
+// See the LICENSE file in the root directory of this project.
+
+package org.team2342.lib.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.team2342.frc.Constants.DriveConstants;
+import org.team2342.frc.subsystems.drive.Drive;
+import org.team2342.lib.util.PrimitiveSwerveSetpointGenerator.Setpoint;
+import org.team2342.lib.util.SwerveSetpointGenerator.ModuleLimits;
+import org.team2342.lib.util.SwerveSetpointGenerator.SwerveSetpoint;
+
+class PrimitiveSwerveSetpointGeneratorTest {
+  private static final double DT = 0.02;
+  private static final double MAX_SPEED = DriveConstants.MAX_LINEAR_SPEED;
+  private static final double TOLERANCE = 1e-6;
+
+  /**
+   * Drives both generators with the same random desired speeds, including stops and reversals. Each
+   * step starts both from the original generator's previous setpoint, so rounding differences can't
+   * build up. Some steps optimize the module states against a random module angle first, flipping
+   * and scaling them like Drive feeds them back.
+   */
+  @Test
+  void matchesOriginalGenerator() {
+    Random random = new Random(2342);
+    ModuleLimits limits =
+        new ModuleLimits(
+            MAX_SPEED,
+            DriveConstants.MAX_LINEAR_ACCELERATION,
+            DriveConstants.MAX_MODULE_VELOCITY_RAD);
+    SwerveSetpointGenerator reference =
+        new SwerveSetpointGenerator(new SwerveDriveKinematics(Drive.getModuleTranslations()));
+    PrimitiveSwerveSetpointGenerator primitive =
+        new PrimitiveSwerveSetpointGenerator(Drive.getModuleTranslations());
+    Setpoint previous = new Setpoint(4);
+    Setpoint actual = new Setpoint(4);
+
+    SwerveSetpoint expected =
+        new SwerveSetpoint(
+            new ChassisSpeeds(),
+            new SwerveModuleState[] {
+              new SwerveModuleState(),
+              new SwerveModuleState(),
+              new SwerveModuleState(),
+              new SwerveModuleState()
+            });
+    ChassisSpeeds desired = new ChassisSpeeds();
+    for (int step = 0; step < 20_000; step++) {
+      double choice = random.nextDouble();
+      if (choice < 0.1) {
+        desired = new ChassisSpeeds();
+      } else if (choice < 0.2) {
+        desired = desired.unaryMinus();
+      } else if (choice < 0.6) {
+        desired =
+            new ChassisSpeeds(
+                (random.nextDouble() * 2.0 - 1.0) * MAX_SPEED * 1.5,
+                (random.nextDouble() * 2.0 - 1.0) * MAX_SPEED * 1.5,
+                (random.nextDouble() * 2.0 - 1.0) * 2.0 * Math.PI);
+      }
+
+      if (random.nextDouble() < 0.5) {
+        for (SwerveModuleState state : expected.moduleStates()) {
+          Rotation2d moduleAngle = new Rotation2d((random.nextDouble() * 2.0 - 1.0) * Math.PI);
+          state.optimize(moduleAngle);
+          state.cosineScale(moduleAngle);
+        }
+      }
+      previous.set(expected.chassisSpeeds(), expected.moduleStates());
+      primitive.generateSetpoint(
+          limits,
+          previous,
+          desired.vxMetersPerSecond,
+          desired.vyMetersPerSecond,
+          desired.omegaRadiansPerSecond,
+          DT,
+          actual);
+      expected = reference.generateSetpoint(limits, expected, desired, DT);
+
+      String message = "Step " + step + " for " + desired;
+      assertEquals(expected.chassisSpeeds().vxMetersPerSecond, actual.getVx(), TOLERANCE, message);
+      assertEquals(expected.chassisSpeeds().vyMetersPerSecond, actual.getVy(), TOLERANCE, message);
+      assertEquals(
+          expected.chassisSpeeds().omegaRadiansPerSecond, actual.getOmega(), TOLERANCE, message);
+      for (int i = 0; i < 4; i++) {
+        SwerveModuleState state = expected.moduleStates()[i];
+        assertEquals(state.speedMetersPerSecond, actual.getModuleSpeed(i), TOLERANCE, message);
+        assertEquals(
+            0.0,
+            MathUtil.angleModulus(state.angle.getRadians() - actual.getModuleAngle(i)),
+            TOLERANCE,
+            message);
+      }
+    }
+  }
+}